@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "ai-agent")
@@ -11,9 +14,71 @@ public class AiAgentConfig {
     private int wsPort = 8080;
     private String wsPath = "/audio";
     private String processor = "echoProcessor";
+    /** uuid_audio_stream start/stop 命令（bgapi）等待结果的超时（毫秒） */
     private int timeout = 5000;
     private String freeswitchExtension = "9000";
 
     /** FreeSWITCH audio_stream 连接的 WebSocket 地址（Python AI 后端） */
     private String wsUrl = "ws://172.28.0.10:8080/";
+
+    /** 是否在本服务内提供 WebSocket 音频端点（wsPath 及 wsPath/{callId}，与 HTTP 共用端口和 context-path） */
+    private boolean embeddedServer = true;
+
+    /** 启动 uuid_audio_stream 时把通话 UUID 追加到 wsUrl 末尾，内置端点据此区分通话 */
+    private boolean appendCallIdToWsUrl = false;
+
+    /** 单个音频帧的最大字节数（16 kHz 16 bit 单声道 20 ms 为 640 字节），超过的帧丢弃 */
+    private int maxFrameBytes = 4096;
+
+    /** 音频帧缓冲池中直接内存缓冲区的个数，所有通话共享，耗尽时新帧丢弃 */
+    private int bufferPoolSize = 2048;
+
+    /** 每路通话待处理帧队列长度，处理跟不上时丢弃新帧而不阻塞接收线程 */
+    private int streamQueueFrames = 50;
+
+    /** uuid_audio_stream 的采样率（8000 或 16000），也是流水线的输入采样率 */
+    private int sampleRate = 16000;
+
+    /** processor=pipelineProcessor 时依次执行的阶段：resample、vad、gain、echo、forward */
+    private List<String> pipeline = new ArrayList<>(List.of("vad", "gain", "echo"));
+
+    /** resample 阶段的目标采样率 */
+    private int resampleRate = 8000;
+
+    /** vad 阶段进入语音的能量门限（帧 RMS 幅度，16 bit 样本） */
+    private int vadStartThreshold = 500;
+
+    /** 语音中帧 RMS 低于该值视为静音，低于 vadStartThreshold 形成迟滞，避免在门限附近反复切换 */
+    private int vadStopThreshold = 300;
+
+    /** 连续多少帧超过门限才判定语音开始，过滤咔哒声等短促噪声；确认前的帧暂存，开始时一并转发 */
+    private int vadStartFrames = 2;
+
+    /** 语音中静音持续超过该时长（毫秒）才判定语音结束，期间的帧照常转发 */
+    private int vadHangoverMillis = 400;
+
+    /** 进入语音的门限至少为背景噪声 RMS 的倍数（噪声底在静音帧上自适应估计），0 表示只用固定门限 */
+    private double vadNoiseMultiplier = 3.0;
+
+    /** gain 阶段的线性增益倍数 */
+    private double gain = 1.0;
+
+    /** 回放节拍（毫秒），AI 返回的音频按该间隔逐帧发回 FreeSWITCH */
+    private int playoutFrameMillis = 20;
+
+    /** 每路通话回放环形缓冲区的容量（毫秒，按 sampleRate 换算成样本数），写满时丢弃最旧的音频 */
+    private int playoutBufferMillis = 3000;
+
+    /** 抖动缓冲目标延迟的下限和上限（毫秒），欠载时逐帧上调，平稳后逐帧回落 */
+    private int jitterMinMillis = 60;
+    private int jitterMaxMillis = 300;
+
+    /** vad 检测到来电方开始说话时清空尚未播放的 AI 音频 */
+    private boolean bargeIn = true;
+
+    /** uuid_audio_stream start 失败（含超时）后的重试次数 */
+    private int streamStartRetries = 2;
+
+    /** 启动重试的基础间隔（毫秒），第 n 次重试等待 n 倍 */
+    private int streamRetryDelayMillis = 500;
 }
\ No newline at end of file
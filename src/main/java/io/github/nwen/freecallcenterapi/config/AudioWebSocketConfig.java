@@ -0,0 +1,32 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import io.github.nwen.freecallcenterapi.service.AudioStreamServer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * 注册内置 AI 音频 WebSocket 端点，FreeSWITCH 的 uuid_audio_stream 直接连到本服务（见 TomcatConfig 的 Host 头说明）
+ */
+@Slf4j
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class AudioWebSocketConfig implements WebSocketConfigurer {
+
+    private final AiAgentConfig aiAgentConfig;
+    private final AudioStreamServer audioStreamServer;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        if (!aiAgentConfig.isEmbeddedServer()) {
+            return;
+        }
+        String path = aiAgentConfig.getWsPath();
+        registry.addHandler(audioStreamServer, path, path + "/*").setAllowedOrigins("*");
+        log.info("AI 音频 WebSocket 端点已注册: path={}, processor={}", path, aiAgentConfig.getProcessor());
+    }
+}
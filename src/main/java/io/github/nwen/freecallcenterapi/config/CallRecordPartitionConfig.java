@@ -0,0 +1,35 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * call_record 月度分区维护配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.partition")
+public class CallRecordPartitionConfig {
+
+    /** 是否在后台维护分区（预建、归档），call_record 未分区时自动跳过 */
+    private boolean enabled = true;
+
+    /**
+     * 已有库的 call_record 尚未分区时，是否在启动时执行 sql/002-partition-call-record.sql（迁移期间锁表）；
+     * 关闭时须先手动执行该脚本，否则启动失败
+     */
+    private boolean migrateOnStartup = false;
+
+    /** 预建当前月之后的分区个数 */
+    private int premakeMonths = 3;
+
+    /** 保留最近几个月的分区（含当前月），更早的分区卸载并归档；0 表示不归档 */
+    private int retentionMonths = 0;
+
+    /** 归档文件目录，每个分区一个 gzip 压缩的 CSV 文件 */
+    private String archiveDirectory = "data/call-record-archive";
+
+    /** 维护间隔（毫秒） */
+    private long maintenanceIntervalMs = 3600000;
+}
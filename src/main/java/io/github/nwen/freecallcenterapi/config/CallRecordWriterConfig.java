@@ -0,0 +1,29 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 通话记录异步批量写入（write-behind）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.writer")
+public class CallRecordWriterConfig {
+
+    /** 待写入队列容量，满了之后对 ESL 事件线程施加背压 */
+    private int queueCapacity = 10000;
+
+    /** 单批最大写入条数，达到即刷盘 */
+    private int batchSize = 200;
+
+    /** 刷盘时间间隔（毫秒），批次未满时到时间也会刷盘 */
+    private long flushIntervalMs = 200;
+
+    /** 队列满时入队的最长等待时间（毫秒），超时则丢弃并计数 */
+    private long offerTimeoutMs = 50;
+
+    /** 应用关闭时等待队列排空的最长时间（毫秒） */
+    private long shutdownTimeoutMs = 10000;
+}
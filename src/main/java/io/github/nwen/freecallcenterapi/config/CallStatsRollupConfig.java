@@ -0,0 +1,23 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 通话统计小时汇总配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.stats-rollup")
+public class CallStatsRollupConfig {
+
+    /** 启动时若 call_record 中有早于汇总表的历史记录，自动在后台补建 */
+    private boolean backfillOnStartup = true;
+
+    /** 补建时每个事务处理的小时数，事务期间 call_record 的写入会被阻塞 */
+    private int backfillChunkHours = 24;
+
+    /** 把触发器追加的增量合并进小时汇总表的间隔（毫秒），合并前的增量在查询时同样计入 */
+    private long foldIntervalMs = 5000;
+}
@@ -0,0 +1,20 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * CDR 批量导入（NDJSON / JSON 数组）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.cdr-bulk")
+public class CdrBulkConfig {
+
+    /** 每批通过 COPY 写入的记录数，每批一个事务 */
+    private int batchSize = 5000;
+
+    /** 响应中最多返回的拒绝明细条数，超出部分只计数 */
+    private int maxRejectDetails = 100;
+}
@@ -0,0 +1,41 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * CDR 本地落盘队列（spool）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.cdr-spool")
+public class CdrSpoolConfig {
+
+    /** 是否启用；关闭时 CDR 接口同步写库 */
+    private boolean enabled = true;
+
+    /** spool 目录 */
+    private String directory = "data/cdr-spool";
+
+    /** 单个分段文件大小（字节） */
+    private int segmentBytes = 64 * 1024 * 1024;
+
+    /** 单条记录最大字节数 */
+    private int maxRecordBytes = 64 * 1024;
+
+    /** spool 最大占用磁盘（字节），超出后拒绝写入，CDR 接口返回 500 由 FreeSWITCH 重试 */
+    private long maxSpoolBytes = 2L * 1024 * 1024 * 1024;
+
+    /** 每条记录写入后是否 msync 到磁盘；关闭后只能保证进程崩溃不丢，机器掉电可能丢失最近的记录 */
+    private boolean forceOnAppend = true;
+
+    /** 后台入库每批最大条数 */
+    private int drainBatchSize = 1000;
+
+    /** spool 为空时后台入库的轮询间隔（毫秒） */
+    private long drainIntervalMs = 200;
+
+    /** 入库失败后的最大重试间隔（毫秒），从 drainIntervalMs 开始指数增长 */
+    private long retryMaxDelayMs = 30000;
+}
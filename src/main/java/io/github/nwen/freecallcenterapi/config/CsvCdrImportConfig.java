@@ -0,0 +1,53 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * mod_cdr_csv 输出目录导入配置
+ * 列序号从 0 开始，默认值对应 cdr_csv.conf.xml 的 example 模板
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.csv-import")
+public class CsvCdrImportConfig {
+
+    /** 是否启用后台增量导入（追踪文件增长）；关闭时仍可通过接口手动触发 */
+    private boolean enabled = false;
+
+    /** mod_cdr_csv 输出目录 */
+    private String directory = "/var/log/freeswitch/cdr-csv";
+
+    /** 文件名匹配（glob），默认同时匹配 rotate 后带时间戳后缀的文件 */
+    private String glob = "*.csv*";
+
+    /** 各文件已导入偏移量的保存位置 */
+    private String stateFile = "data/cdr-csv-offsets.properties";
+
+    /** 后台扫描间隔（毫秒） */
+    private long scanIntervalMs = 5000;
+
+    /** 解析线程数，0 表示 CPU 核数 */
+    private int parallelism = 0;
+
+    /** fork-join 拆分到的最小分块大小（字节） */
+    private int chunkBytes = 1024 * 1024;
+
+    /** 单次内存映射的最大窗口（字节） */
+    private int windowBytes = 256 * 1024 * 1024;
+
+    /** 每批入库条数 */
+    private int batchSize = 5000;
+
+    private int uuidColumn = 10;
+    private int callerNumberColumn = 1;
+    private int destinationNumberColumn = 2;
+    private int startStampColumn = 4;
+    private int answerStampColumn = 5;
+    private int endStampColumn = 6;
+    private int durationColumn = 7;
+
+    /** 通话方向列，-1 表示模板中没有该列 */
+    private int directionColumn = -1;
+}
@@ -4,12 +4,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StreamUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 @Slf4j
@@ -21,12 +27,20 @@ public class DatabaseInitializer {
     private static final Pattern BLANK_LINE_PATTERN = Pattern.compile("^\\s*$", Pattern.MULTILINE);
 
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final CallRecordPartitionConfig partitionConfig;
 
+    /**
+     * 先于其他 ApplicationReadyEvent 监听器执行，分区维护、汇总补建等启动任务都依赖表结构
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     @EventListener(ApplicationReadyEvent.class)
     public void initialize() {
         log.info("Checking database tables...");
         if (tableExists("extension")) {
             log.info("Database tables already exist, skipping initialization");
+            upgradeSchema();
+            migrateCallRecordPartitioning();
             return;
         }
         log.info("Tables not found, initializing database...");
@@ -34,6 +48,56 @@ public class DatabaseInitializer {
         log.info("Database initialization completed");
     }
 
+    /**
+     * 已有库每次启动都执行 sql/upgrade-schema.sql 中的幂等语句，补齐建库之后新增的列和索引。
+     * 失败时直接中止启动，否则后续写入会因缺列全部失败
+     */
+    private void upgradeSchema() {
+        try {
+            String sql = normalizeSql(StreamUtils.copyToString(
+                    new ClassPathResource("sql/upgrade-schema.sql").getInputStream(), StandardCharsets.UTF_8));
+            for (String statement : splitStatements(sql)) {
+                if (!statement.trim().isEmpty()) {
+                    jdbcTemplate.execute(statement.trim());
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Database schema upgrade failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 已有库的 call_record 仍是普通表时，按配置在一个事务内执行分区迁移脚本。
+     * 所有写入语句都依赖迁移创建的 call_record_key，未迁移或迁移失败时中止启动，不带着全部写入失败的状态运行
+     */
+    private void migrateCallRecordPartitioning() {
+        Boolean plain = jdbcTemplate.queryForObject(
+                "SELECT relkind = 'r' FROM pg_class WHERE oid = to_regclass('call_record')", Boolean.class);
+        if (!Boolean.TRUE.equals(plain)) {
+            return;
+        }
+        if (!partitionConfig.isMigrateOnStartup()) {
+            throw new IllegalStateException("call_record is not partitioned and call-record writes depend on it; "
+                    + "run sql/002-partition-call-record.sql or set call-record.partition.migrate-on-startup=true");
+        }
+        log.info("Migrating call_record to monthly partitions...");
+        long start = System.nanoTime();
+        try {
+            String sql = normalizeSql(StreamUtils.copyToString(
+                    new ClassPathResource("sql/002-partition-call-record.sql").getInputStream(), StandardCharsets.UTF_8));
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (String statement : splitStatements(sql)) {
+                    if (!statement.trim().isEmpty()) {
+                        jdbcTemplate.execute(statement.trim());
+                    }
+                }
+            });
+            log.info("call_record partition migration completed in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            throw new IllegalStateException("call_record partition migration failed and was rolled back: " + e.getMessage(), e);
+        }
+    }
+
     private boolean tableExists(String tableName) {
         String sql = "SELECT EXISTS (SELECT FROM information_schema.tables WHERE table_name = ?)";
         try {
@@ -50,7 +114,7 @@ public class DatabaseInitializer {
             ClassPathResource resource = new ClassPathResource(resourcePath);
             String sql = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
             String normalizedSql = normalizeSql(sql);
-            String[] statements = normalizedSql.split(";");
+            List<String> statements = splitStatements(normalizedSql);
             int executed = 0;
             for (String statement : statements) {
                 String trimmed = statement.trim();
@@ -69,6 +133,26 @@ public class DatabaseInitializer {
         }
     }
 
+    /**
+     * 按分号拆分语句，$$ 包裹的函数体内的分号不拆分
+     */
+    private List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        int start = 0;
+        boolean dollarQuoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.startsWith("$$", i)) {
+                dollarQuoted = !dollarQuoted;
+                i++;
+            } else if (sql.charAt(i) == ';' && !dollarQuoted) {
+                statements.add(sql.substring(start, i));
+                start = i + 1;
+            }
+        }
+        statements.add(sql.substring(start));
+        return statements;
+    }
+
     private String normalizeSql(String sql) {
         String cleaned = SQL_COMMENT_PATTERN.matcher(sql).replaceAll("");
         cleaned = BLANK_LINE_PATTERN.matcher(cleaned).replaceAll("");
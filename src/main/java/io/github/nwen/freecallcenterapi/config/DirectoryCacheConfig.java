@@ -0,0 +1,25 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * FreeSWITCH 目录（/fs/directory）缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "freeswitch.directory.cache")
+public class DirectoryCacheConfig {
+
+    private boolean enabled = true;
+
+    /** 已存在分机的缓存时间（毫秒），分机增删改时会主动失效，TTL 只是兜底 */
+    private long ttlMs = 300000;
+
+    /** 不存在或已禁用分机（负缓存）的缓存时间（毫秒） */
+    private long negativeTtlMs = 30000;
+
+    /** 最大缓存条数，超出后先清理过期条目，仍超出则随机淘汰约 10% */
+    private int maxEntries = 50000;
+}
@@ -0,0 +1,17 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * FreeSWITCH 目录（/fs/directory）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "freeswitch.directory")
+public class DirectoryConfig {
+
+    /** 不带 user 的域级请求是否返回域下全部启用的分机（user_exists、群组呼叫等可一次取全），默认只返回空的 users */
+    private boolean streamFullDomain = false;
+}
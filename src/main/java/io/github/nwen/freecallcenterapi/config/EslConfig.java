@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "freeswitch.esl")
@@ -13,4 +16,42 @@ public class EslConfig {
     private int port = 8021;
     private String password = "ClueCon";
     private int timeout = 5000;
+    /** bgapi 异步命令等待 BACKGROUND_JOB 结果的超时（毫秒），需大于 originate 振铃超时 */
+    private long backgroundJobTimeout = 90000;
+    /** 连接健康检查间隔（毫秒） */
+    private long healthCheckInterval = 5000;
+    /** 超过该时间（毫秒）未收到任何事件（HEARTBEAT 默认 20 秒一次）即视为连接已失效 */
+    private long heartbeatTimeout = 60000;
+    /** 重连退避的初始间隔与上限（毫秒），实际等待时间在 [当前间隔/2, 当前间隔] 内随机抖动 */
+    private long reconnectInitialDelay = 1000;
+    private long reconnectMaxDelay = 30000;
+    /** 仅用于发送命令的 ESL 连接数，事件订阅使用独立的一条连接；为 0 时命令也走事件连接 */
+    private int commandPoolSize = 4;
+    /**
+     * 多个 FreeSWITCH 节点，每个节点有独立的事件连接和命令连接池；
+     * 为空时按上面的 host / port / password 作为名为 default 的单节点
+     */
+    private List<Node> nodes = new ArrayList<>();
+
+    public List<Node> resolveNodes() {
+        if (nodes == null || nodes.isEmpty()) {
+            Node node = new Node();
+            node.setName("default");
+            node.setHost(host);
+            node.setPort(port);
+            node.setPassword(password);
+            return List.of(node);
+        }
+        return nodes;
+    }
+
+    @Data
+    public static class Node {
+        private String name;
+        private String host = "127.0.0.1";
+        private int port = 8021;
+        private String password = "ClueCon";
+        /** originate 分配权重，按 在线通话数 / weight 选择负载最低的节点 */
+        private int weight = 1;
+    }
 }
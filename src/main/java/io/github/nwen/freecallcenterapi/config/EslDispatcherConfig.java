@@ -0,0 +1,23 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * ESL 事件分发配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "freeswitch.esl.dispatcher")
+public class EslDispatcherConfig {
+
+    /** 分发通道数，同一通话（Unique-ID）的事件固定落在同一通道，默认取 CPU 核数 */
+    private int lanes = Runtime.getRuntime().availableProcessors();
+
+    /** 每个通道的队列深度，满了之后阻塞 ESL 回调线程形成背压 */
+    private int queueCapacity = 1024;
+
+    /** 应用关闭时等待通道排空的最长时间（毫秒） */
+    private long shutdownTimeoutMs = 5000;
+}
@@ -0,0 +1,23 @@
+package io.github.nwen.freecallcenterapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 实时通话指标（内存滑动窗口）配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "call-record.realtime")
+public class RealtimeCallMetricsConfig {
+
+    /** 滑动窗口保留的秒数（环形缓冲区槽数），查询窗口不能超过该值 */
+    private int maxWindowSeconds = 900;
+
+    /** 未指定时的默认查询窗口（秒） */
+    private int defaultWindowSeconds = 60;
+
+    /** 分机/方向维度在没有进行中通话且超过该时间（秒）无活动后回收 */
+    private int idleSeriesSeconds = 3600;
+}
@@ -0,0 +1,37 @@
+package io.github.nwen.freecallcenterapi.controller;
+
+import io.github.nwen.freecallcenterapi.common.Result;
+import io.github.nwen.freecallcenterapi.dto.AiAudioSessionInfo;
+import io.github.nwen.freecallcenterapi.service.AiAudioSessionRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/ai-agent")
+public class AiAgentController {
+
+    private final AiAudioSessionRegistry aiAudioSessionRegistry;
+
+    /**
+     * 当前登记的 AI 通话音频流（含等待接通、启动中、失败的）
+     */
+    @GetMapping("/streams")
+    public Result<List<AiAudioSessionInfo>> streams() {
+        return Result.success(aiAudioSessionRegistry.list());
+    }
+
+    /**
+     * 终止一路 AI 音频流（uuid_audio_stream stop），通话本身不挂断
+     */
+    @DeleteMapping("/streams/{callId}")
+    public Result<AiAudioSessionInfo> kill(@PathVariable String callId) {
+        return Result.success(aiAudioSessionRegistry.kill(callId));
+    }
+}
@@ -1,17 +1,27 @@
 package io.github.nwen.freecallcenterapi.controller;
 
 import io.github.nwen.freecallcenterapi.common.Result;
+import io.github.nwen.freecallcenterapi.dto.CdrBulkResponse;
+import io.github.nwen.freecallcenterapi.dto.CsvCdrImportResult;
 import io.github.nwen.freecallcenterapi.entity.CallRecord;
 import io.github.nwen.freecallcenterapi.service.CallRecordService;
+import io.github.nwen.freecallcenterapi.service.CdrBulkImporter;
+import io.github.nwen.freecallcenterapi.service.CdrParser;
+import io.github.nwen.freecallcenterapi.service.CdrSpool;
+import io.github.nwen.freecallcenterapi.service.CsvCdrImporter;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
 import java.util.Map;
 
 @Slf4j
@@ -21,114 +31,87 @@ import java.util.Map;
 public class CallRecordCdrController {
 
     private final CallRecordService callRecordService;
+    private final CdrParser cdrParser;
+    private final CdrBulkImporter cdrBulkImporter;
+    private final CdrSpool cdrSpool;
+    private final CsvCdrImporter csvCdrImporter;
 
     @PostMapping("/cdr")
     public Result<Void> receiveCdr(@RequestBody Map<String, Object> cdrData) {
         try {
             log.info("Received CDR data: {}", cdrData);
 
-            CallRecord record = parseCdr(cdrData);
-            if (record != null) {
-                callRecordService.createCallRecord(record);
-                return Result.success();
+            CallRecord record = cdrParser.parse(cdrData);
+            String reason = record == null ? "Invalid CDR data" : CdrBulkImporter.validate(record);
+            if (reason != null) {
+                return Result.error(400, reason);
             }
-            return Result.error(400, "Invalid CDR data");
+            store(record);
+            return Result.success();
         } catch (Exception e) {
             log.error("Failed to process CDR", e);
             return Result.error(500, "Failed to process CDR: " + e.getMessage());
         }
     }
 
-    private CallRecord parseCdr(Map<String, Object> cdrData) {
+    /**
+     * mod_xml_cdr 推送入口（xml_cdr.conf.xml 中 encode=base64 时表单字段 cdr 为 base64 编码的 XML）。
+     * mod_xml_cdr 只看 HTTP 状态码：数据错误返回 400，写入失败返回 500 让 FreeSWITCH 按 retries 重试，
+     * 只有记录已写入本地 spool（未启用时为已落库）后才返回 200。
+     */
+    @PostMapping(value = "/cdr/xml", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Result<Void>> receiveXmlCdr(@RequestParam("cdr") String cdr) {
+        CallRecord record = cdrParser.parseXml(cdrParser.decodeFormField(cdr));
+        String reason = record == null ? "Invalid CDR data" : CdrBulkImporter.validate(record);
+        if (reason != null) {
+            return ResponseEntity.badRequest().body(Result.error(400, reason));
+        }
         try {
-            Map<String, Object> variables = (Map<String, Object>) cdrData.get("variables");
-            if (variables == null) {
-                variables = (Map<String, Object>) cdrData.get("fields");
-            }
-
-            if (variables == null) {
-                log.warn("No variables in CDR data");
-                return null;
-            }
-
-            String callId = getString(variables, "uuid");
-            if (callId == null) {
-                callId = getString(variables, "call_uuid");
-            }
-
-            String callerNumber = getString(variables, "caller_number");
-            if (callerNumber == null) {
-                callerNumber = getString(variables, "sip_from_user");
-            }
-
-            String calleeNumber = getString(variables, "destination_number");
-            if (calleeNumber == null) {
-                calleeNumber = getString(variables, "sip_to_user");
-            }
-
-            if (callerNumber == null || calleeNumber == null) {
-                log.warn("Missing caller or callee number in CDR");
-                return null;
-            }
-
-            String startTimeStr = getString(variables, "start_stamp");
-            String answerTimeStr = getString(variables, "answer_stamp");
-            String endTimeStr = getString(variables, "end_stamp");
-
-            LocalDateTime startTime = parseTime(startTimeStr);
-            LocalDateTime answerTime = parseTime(answerTimeStr);
-            LocalDateTime endTime = parseTime(endTimeStr);
-
-            Integer duration = getInt(variables, "duration");
-            Integer billableSeconds = getInt(variables, "billsec");
-
-            String direction = getString(variables, "call_direction");
-
-            return CallRecord.builder()
-                    .callId(callId)
-                    .callerNumber(callerNumber)
-                    .calleeNumber(calleeNumber)
-                    .direction(direction != null ? direction : "outbound")
-                    .status(duration != null && duration > 0 ? "ANSWERED" : "NO_ANSWER")
-                    .startTime(startTime)
-                    .answerTime(answerTime)
-                    .endTime(endTime)
-                    .durationSeconds(duration)
-                    .build();
+            store(record);
+            log.debug("XML CDR 已接收: callId={}", record.getCallId());
+            return ResponseEntity.ok(Result.success());
         } catch (Exception e) {
-            log.error("Failed to parse CDR data", e);
-            return null;
+            log.error("Failed to process XML CDR: callId={}", record.getCallId(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Result.error(500, "Failed to process CDR: " + e.getMessage()));
         }
     }
 
-    private String getString(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        return value != null ? value.toString() : null;
+    /**
+     * CDR 批量导入：请求体为 NDJSON 或 JSON 数组，每个元素与 /cdr 的请求体格式相同。
+     * 单条记录无效只计入 rejected，不影响其他记录；返回各记录的接收 / 拒绝计数。
+     */
+    @PostMapping(value = "/cdr/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Result<CdrBulkResponse> receiveBulkCdr(HttpServletRequest request) throws IOException {
+        CdrBulkResponse response = cdrBulkImporter.importStream(request.getInputStream());
+        if (response.getError() != null) {
+            return new Result<>(400, response.getError(), response);
+        }
+        return Result.success(response);
     }
 
-    private Integer getInt(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value == null) return null;
+    /**
+     * 立即导入 mod_cdr_csv 目录中新增的记录（与后台增量导入串行执行），返回本次行数和 rows/sec
+     */
+    @PostMapping("/cdr/csv/import")
+    public Result<CsvCdrImportResult> importCsvCdr() {
         try {
-            return Integer.parseInt(value.toString());
-        } catch (NumberFormatException e) {
-            return null;
+            return Result.success(csvCdrImporter.importNow());
+        } catch (Exception e) {
+            log.error("Failed to import CSV CDR", e);
+            return Result.error(500, "Failed to import CSV CDR: " + e.getMessage());
         }
     }
 
-    private LocalDateTime parseTime(String timeStr) {
-        if (timeStr == null || timeStr.isEmpty()) {
-            return null;
-        }
-        try {
-            return LocalDateTime.parse(timeStr, DateTimeFormatter.ISO_DATE_TIME);
-        } catch (Exception e) {
-            try {
-                return LocalDateTime.parse(timeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            } catch (Exception ex) {
-                log.debug("Failed to parse time: {}", timeStr);
-                return null;
-            }
+    /**
+     * 启用 spool 时写入本地落盘队列后即返回，由后台线程入库；否则同步写库。
+     * 调用前必须已通过 CdrBulkImporter.validate，数据库必然拒绝的记录不进入 spool
+     */
+    private void store(CallRecord record) throws IOException {
+        if (cdrSpool.isEnabled()) {
+            cdrSpool.append(record);
+        } else {
+            callRecordService.upsertCdrRecord(record);
         }
     }
 }
@@ -1,15 +1,26 @@
 package io.github.nwen.freecallcenterapi.controller;
 
 import io.github.nwen.freecallcenterapi.common.Result;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPage;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPartitionStats;
 import io.github.nwen.freecallcenterapi.dto.CallRecordQuery;
 import io.github.nwen.freecallcenterapi.dto.CallRecordResponse;
 import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
+import io.github.nwen.freecallcenterapi.dto.RealtimeCallStats;
+import io.github.nwen.freecallcenterapi.service.CallRecordExportService;
+import io.github.nwen.freecallcenterapi.service.CallRecordPartitionService;
 import io.github.nwen.freecallcenterapi.service.CallRecordService;
+import io.github.nwen.freecallcenterapi.service.CallStatsRollupService;
+import io.github.nwen.freecallcenterapi.service.RealtimeCallMetrics;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,11 +32,16 @@ import java.util.List;
 public class CallRecordController {
 
     private final CallRecordService callRecordService;
+    private final CallRecordExportService callRecordExportService;
+    private final CallStatsRollupService callStatsRollupService;
+    private final RealtimeCallMetrics realtimeCallMetrics;
+    private final CallRecordPartitionService callRecordPartitionService;
 
     @GetMapping
-    public Result<List<CallRecordResponse>> list(
-            @RequestParam(defaultValue = "1") int page,
+    public Result<CallRecordPage> list(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal,
             @RequestParam(required = false) Long extensionId,
             @RequestParam(required = false) String callerNumber,
             @RequestParam(required = false) String calleeNumber,
@@ -42,8 +58,37 @@ public class CallRecordController {
                 .endTime(endTime)
                 .build();
 
-        List<CallRecordResponse> records = callRecordService.query(query, page, size);
-        return Result.success(records);
+        return Result.success(callRecordService.query(query, cursor, size, withTotal));
+    }
+
+    /**
+     * 导出通话记录（CSV 或 NDJSON），筛选条件与列表接口相同，结果边查边写，不在内存中缓存
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Long extensionId,
+            @RequestParam(required = false) String callerNumber,
+            @RequestParam(required = false) String calleeNumber,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime endTime
+    ) {
+        CallRecordExportService.Format exportFormat = CallRecordExportService.Format.of(format);
+        CallRecordQuery query = CallRecordQuery.builder()
+                .extensionId(extensionId)
+                .callerNumber(callerNumber)
+                .calleeNumber(calleeNumber)
+                .status(status)
+                .startTime(startTime)
+                .endTime(endTime)
+                .build();
+
+        StreamingResponseBody body = out -> callRecordExportService.export(query, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"call-records." + exportFormat.extension() + "\"")
+                .body(body);
     }
 
     @GetMapping("/{id}")
@@ -55,18 +100,67 @@ public class CallRecordController {
         return Result.success(record);
     }
 
+    /**
+     * 通话统计。默认读小时汇总；detailed=true 或指定 groupBy（extension / hour / direction）时
+     * 单次扫描原始记录，额外返回时长分位数和分组结果
+     */
     @GetMapping("/stats")
     public Result<CallStatsResponse> getStats(
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime startTime,
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime endTime,
-            @RequestParam(required = false) Long extensionId
+            @RequestParam(required = false) Long extensionId,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(defaultValue = "false") boolean detailed
     ) {
         CallStatsResponse stats;
-        if (extensionId != null) {
+        if (detailed || groupBy != null) {
+            stats = callRecordService.getDetailedStats(startTime, endTime, extensionId, groupBy);
+        } else if (extensionId != null) {
             stats = callRecordService.getExtensionStats(extensionId, startTime, endTime);
         } else {
             stats = callRecordService.getStats(startTime, endTime);
         }
         return Result.success(stats);
     }
+
+    /**
+     * 重建通话统计小时汇总（不传时间范围时重建全部历史），返回写入的汇总桶数
+     */
+    @PostMapping("/stats/rollup/backfill")
+    public Result<Integer> backfillStatsRollup(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime endTime
+    ) {
+        if (startTime == null || endTime == null) {
+            return Result.success(callStatsRollupService.backfillAll());
+        }
+        return Result.success(callStatsRollupService.backfill(startTime, endTime));
+    }
+
+    /**
+     * 实时通话指标（内存中，由 ESL 事件驱动，不查询数据库），windowSeconds 为统计窗口
+     */
+    @GetMapping("/stats/realtime")
+    public Result<RealtimeCallStats> realtimeStats(@RequestParam(required = false) Integer windowSeconds) {
+        return Result.success(realtimeCallMetrics.overall(windowSeconds));
+    }
+
+    @GetMapping("/stats/realtime/extensions")
+    public Result<List<RealtimeCallStats>> realtimeExtensionStats(@RequestParam(required = false) Integer windowSeconds) {
+        return Result.success(realtimeCallMetrics.extensions(windowSeconds));
+    }
+
+    @GetMapping("/stats/realtime/extensions/{extension}")
+    public Result<RealtimeCallStats> realtimeExtensionStats(@PathVariable String extension,
+                                                            @RequestParam(required = false) Integer windowSeconds) {
+        return Result.success(realtimeCallMetrics.extension(extension, windowSeconds));
+    }
+
+    /**
+     * 立即执行一次分区维护（预建分区、归档超出保留期的分区）
+     */
+    @PostMapping("/partitions/maintain")
+    public Result<CallRecordPartitionStats> maintainPartitions() {
+        return Result.success(callRecordPartitionService.maintain());
+    }
 }
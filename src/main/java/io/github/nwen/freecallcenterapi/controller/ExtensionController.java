@@ -2,6 +2,7 @@ package io.github.nwen.freecallcenterapi.controller;
 
 import io.github.nwen.freecallcenterapi.common.Result;
 import io.github.nwen.freecallcenterapi.dto.DialRequest;
+import io.github.nwen.freecallcenterapi.dto.DialResponse;
 import io.github.nwen.freecallcenterapi.dto.ExtensionRequest;
 import io.github.nwen.freecallcenterapi.dto.ExtensionResponse;
 import io.github.nwen.freecallcenterapi.service.ExtensionService;
@@ -74,10 +75,10 @@ public class ExtensionController {
     }
 
     @PostMapping("/dial")
-    public Result<Void> dial(@Valid @RequestBody DialRequest request) {
+    public Result<DialResponse> dial(@Valid @RequestBody DialRequest request) {
         try {
-            extensionService.dial(request);
-            return Result.success();
+            String jobId = extensionService.dial(request);
+            return Result.success(DialResponse.builder().jobId(jobId).build());
         } catch (IllegalArgumentException e) {
             return Result.error(404, e.getMessage());
         } catch (IllegalStateException e) {
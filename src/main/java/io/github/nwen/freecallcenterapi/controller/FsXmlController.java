@@ -1,127 +1,94 @@
 package io.github.nwen.freecallcenterapi.controller;
 
-import io.github.nwen.freecallcenterapi.entity.Extension;
-import io.github.nwen.freecallcenterapi.repository.ExtensionRepository;
+import io.github.nwen.freecallcenterapi.config.DirectoryConfig;
+import io.github.nwen.freecallcenterapi.service.DirectoryService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.Optional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
 public class FsXmlController {
 
-    private final ExtensionRepository extensionRepository;
+    private final DirectoryService directoryService;
+    private final DirectoryConfig directoryConfig;
 
-    public FsXmlController(ExtensionRepository extensionRepository) {
-        this.extensionRepository = extensionRepository;
+    public FsXmlController(DirectoryService directoryService, DirectoryConfig directoryConfig) {
+        this.directoryService = directoryService;
+        this.directoryConfig = directoryConfig;
     }
 
+    /**
+     * 返回预渲染的 UTF-8 字节，命中缓存时不查询数据库、不重新拼接 XML
+     */
     @PostMapping(
             value = "/fs/directory",
             consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE,
             produces = MediaType.APPLICATION_XML_VALUE
     )
-    public String directory(
+    public ResponseEntity<?> directory(
             @RequestParam(value = "user", required = false) String user,
             @RequestParam(value = "domain", required = false) String domain,
-            @RequestParam(value = "action", required = false, defaultValue = "") String action
+            @RequestParam(value = "action", required = false, defaultValue = "") String action,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
         String effectiveDomain = (domain != null && !domain.isEmpty()) ? domain : "default";
-        log.info("FreeSWITCH directory request: user={}, domain={}, action={}", user, effectiveDomain, action);
+        log.debug("FreeSWITCH directory request: user={}, domain={}, action={}", user, effectiveDomain, action);
 
         if (user == null || user.isEmpty()) {
+            if (directoryConfig.isStreamFullDomain()) {
+                return fullDomain(effectiveDomain, ifNoneMatch);
+            }
             log.debug("No user specified, returning domain-level config");
-            return buildDomainXml(effectiveDomain);
-        }
-        // 目前分机没有存储domain，所以这里直接使用effectiveDomain即可
-        Optional<Extension> extensionOpt = extensionRepository.findByExtensionNumber(user);
-
-        if (extensionOpt.isEmpty()) {
-            log.warn("Extension not found: {}", user);
-            return buildNotFoundResponse(effectiveDomain, user);
-        }
-
-        Extension extension = extensionOpt.get();
-        if (!Boolean.TRUE.equals(extension.getEnabled())) {
-            log.warn("Extension {} is disabled, not returning dialstring", user);
-            return buildNotFoundResponse(effectiveDomain, user);
+            return ResponseEntity.ok(directoryService.domainXml(effectiveDomain));
         }
-        log.info("Found extension: {} for domain {}", extension.getExtensionNumber(), effectiveDomain);
-        return buildDirectoryXml(effectiveDomain, extension);
+        return ResponseEntity.ok(directoryService.userXml(effectiveDomain, user));
     }
 
-    private String buildDirectoryXml(String domain, Extension extension) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        xml.append("<document type=\"freeswitch/xml\">\n");
-        xml.append("  <section name=\"directory\">\n");
-        xml.append("    <domain name=\"").append(domain).append("\">\n");
-        xml.append("      <params>\n");
-        xml.append("        <param name=\"dial-string\" value=\"{presence_id=${dialed_user}@${dialed_domain}}${sofia_contact(${dialed_user}@${dialed_domain})}\"/>\n");
-        xml.append("      </params>\n");
-        xml.append("      <groups>\n");
-        xml.append("        <group name=\"default\">\n");
-        xml.append("          <users>\n");
-        xml.append("            <user id=\"").append(extension.getExtensionNumber()).append("\">\n");
-        xml.append("              <params>\n");
-        xml.append("                <param name=\"password\" value=\"").append(extension.getPassword()).append("\"/>\n");
-        xml.append("              </params>\n");
-        xml.append("              <variables>\n");
-        xml.append("                <variable name=\"user_context\" value=\"").append(extension.getContext()).append("\"/>\n");
-        xml.append("                <variable name=\"effective_caller_id_name\" value=\"").append(extension.getDisplayName()).append("\"/>\n");
-        xml.append("                <variable name=\"effective_caller_id_number\" value=\"").append(extension.getExtensionNumber()).append("\"/>\n");
-        xml.append("                <variable name=\"domain_name\" value=\"").append(domain).append("\"/>\n");
-        xml.append("              </variables>\n");
-        xml.append("            </user>\n");
-        xml.append("          </users>\n");
-        xml.append("        </group>\n");
-        xml.append("      </groups>\n");
-        xml.append("    </domain>\n");
-        xml.append("  </section>\n");
-        xml.append("</document>\n");
-        return xml.toString();
+    /**
+     * 域下全部启用分机的目录，供 sidecar / 反向代理拉取缓存，内容未变化时返回 304
+     */
+    @GetMapping(value = "/fs/directory/full", produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<?> fullDirectory(
+            @RequestParam(value = "domain", required = false, defaultValue = "default") String domain,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return fullDomain(domain, ifNoneMatch);
     }
 
-    private String buildDomainXml(String domain) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        xml.append("<document type=\"freeswitch/xml\">\n");
-        xml.append("  <section name=\"directory\">\n");
-        xml.append("    <domain name=\"").append(domain).append("\">\n");
-        xml.append("      <params>\n");
-        xml.append("        <param name=\"dial-string\" value=\"{presence_id=${dialed_user}@${dialed_domain}}${sofia_contact(${dialed_user}@${dialed_domain})}\"/>\n");
-        xml.append("      </params>\n");
-        xml.append("      <groups>\n");
-        xml.append("        <group name=\"default\">\n");
-        xml.append("          <users>\n");
-        xml.append("          </users>\n");
-        xml.append("        </group>\n");
-        xml.append("      </groups>\n");
-        xml.append("    </domain>\n");
-        xml.append("  </section>\n");
-        xml.append("</document>\n");
-        return xml.toString();
+    private ResponseEntity<?> fullDomain(String domain, String ifNoneMatch) {
+        String etag = directoryService.domainEtag(domain);
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        StreamingResponseBody body = out -> directoryService.writeDomainXml(domain, out);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_XML)
+                .body(body);
     }
 
-    private String buildNotFoundResponse(String domain, String user) {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        xml.append("<document type=\"freeswitch/xml\">\n");
-        xml.append("  <section name=\"directory\">\n");
-        xml.append("    <domain name=\"").append(domain).append("\">\n");
-        xml.append("      <groups>\n");
-        xml.append("        <group name=\"default\">\n");
-        xml.append("          <users>\n");
-        xml.append("          </users>\n");
-        xml.append("        </group>\n");
-        xml.append("      </groups>\n");
-        xml.append("    </domain>\n");
-        xml.append("  </section>\n");
-        xml.append("</document>\n");
-        return xml.toString();
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
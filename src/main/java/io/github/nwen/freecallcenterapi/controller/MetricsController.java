@@ -0,0 +1,96 @@
+package io.github.nwen.freecallcenterapi.controller;
+
+import io.github.nwen.freecallcenterapi.common.Result;
+import io.github.nwen.freecallcenterapi.dto.AiAudioSessionStats;
+import io.github.nwen.freecallcenterapi.dto.AudioServerStats;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPartitionStats;
+import io.github.nwen.freecallcenterapi.dto.CallRecordWriterStats;
+import io.github.nwen.freecallcenterapi.dto.CdrSpoolStats;
+import io.github.nwen.freecallcenterapi.dto.CsvCdrImportStats;
+import io.github.nwen.freecallcenterapi.dto.DirectoryCacheStats;
+import io.github.nwen.freecallcenterapi.dto.EslConnectionStats;
+import io.github.nwen.freecallcenterapi.dto.EslDispatcherStats;
+import io.github.nwen.freecallcenterapi.dto.EslEventStats;
+import io.github.nwen.freecallcenterapi.service.AiAudioSessionRegistry;
+import io.github.nwen.freecallcenterapi.service.AudioStreamServer;
+import io.github.nwen.freecallcenterapi.service.CallRecordPartitionService;
+import io.github.nwen.freecallcenterapi.service.CallRecordWriter;
+import io.github.nwen.freecallcenterapi.service.CdrSpool;
+import io.github.nwen.freecallcenterapi.service.CsvCdrImporter;
+import io.github.nwen.freecallcenterapi.service.DirectoryService;
+import io.github.nwen.freecallcenterapi.service.EslEventDispatcher;
+import io.github.nwen.freecallcenterapi.service.EslEventListenerService;
+import io.github.nwen.freecallcenterapi.service.impl.EslConnectionManagerImpl;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    private final CallRecordWriter callRecordWriter;
+    private final EslEventListenerService eslEventListenerService;
+    private final EslEventDispatcher eslEventDispatcher;
+    private final EslConnectionManagerImpl eslConnectionManager;
+    private final DirectoryService directoryService;
+    private final CdrSpool cdrSpool;
+    private final CsvCdrImporter csvCdrImporter;
+    private final CallRecordPartitionService callRecordPartitionService;
+    private final AudioStreamServer audioStreamServer;
+    private final AiAudioSessionRegistry aiAudioSessionRegistry;
+
+    @GetMapping("/call-record-writer")
+    public Result<CallRecordWriterStats> callRecordWriter() {
+        return Result.success(callRecordWriter.getStats());
+    }
+
+    @GetMapping("/esl-events")
+    public Result<EslEventStats> eslEvents() {
+        return Result.success(eslEventListenerService.getEventStats());
+    }
+
+    @GetMapping("/esl-dispatcher")
+    public Result<EslDispatcherStats> eslDispatcher() {
+        return Result.success(eslEventDispatcher.getStats());
+    }
+
+    @GetMapping("/esl-connection")
+    public Result<List<EslConnectionStats>> eslConnection() {
+        return Result.success(eslConnectionManager.getStats());
+    }
+
+    @GetMapping("/directory-cache")
+    public Result<DirectoryCacheStats> directoryCache() {
+        return Result.success(directoryService.getStats());
+    }
+
+    @GetMapping("/cdr-spool")
+    public Result<CdrSpoolStats> cdrSpool() {
+        return Result.success(cdrSpool.getStats());
+    }
+
+    @GetMapping("/cdr-csv-import")
+    public Result<CsvCdrImportStats> cdrCsvImport() {
+        return Result.success(csvCdrImporter.getStats());
+    }
+
+    @GetMapping("/call-record-partitions")
+    public Result<CallRecordPartitionStats> callRecordPartitions() {
+        return Result.success(callRecordPartitionService.getStats());
+    }
+
+    @GetMapping("/audio-streams")
+    public Result<AudioServerStats> audioStreams() {
+        return Result.success(audioStreamServer.getStats());
+    }
+
+    @GetMapping("/ai-audio-sessions")
+    public Result<AiAudioSessionStats> aiAudioSessions() {
+        return Result.success(aiAudioSessionRegistry.getStats());
+    }
+}
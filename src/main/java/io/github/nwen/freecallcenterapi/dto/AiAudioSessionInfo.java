@@ -0,0 +1,25 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiAudioSessionInfo {
+
+    private String callId;
+    /** PENDING / STARTING / STREAMING / STOPPING / FAILED */
+    private String state;
+    /** 本轮启动已尝试的次数 */
+    private int attempts;
+    private LocalDateTime createdAt;
+    private LocalDateTime streamingAt;
+    private long streamingSeconds;
+    private String lastError;
+}
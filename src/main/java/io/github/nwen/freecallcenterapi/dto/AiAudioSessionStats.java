@@ -0,0 +1,30 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiAudioSessionStats {
+
+    private long active;
+    private Map<String, Long> byState;
+    private long started;
+    /** 每次启动失败都计数（含之后重试成功的） */
+    private long startFailures;
+    private long retries;
+    /** 重试用尽仍未启动的会话数 */
+    private long failed;
+    private long killed;
+    /** 已结束的音频流（曾进入 STREAMING）及其时长 */
+    private long completedStreams;
+    private long totalStreamSeconds;
+    private double avgStreamSeconds;
+    private long maxStreamSeconds;
+}
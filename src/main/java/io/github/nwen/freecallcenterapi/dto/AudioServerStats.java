@@ -0,0 +1,34 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AudioServerStats {
+
+    private String processor;
+    private int activeStreams;
+    private long totalStreams;
+    private int frameBytes;
+    private int bufferPoolCapacity;
+    private int buffersAvailable;
+    /** 自启动以来所有流累计 */
+    private long framesReceived;
+    private long framesDropped;
+    private long vadFrames;
+    private long suppressedFrames;
+    private double suppressedRatio;
+    private long playoutUnderruns;
+    private long playoutOverruns;
+    /** 回放节拍线程的节拍数及落后过多而重新计时的次数 */
+    private long playoutTicks;
+    private long playoutLateTicks;
+    private List<AudioStreamStats> streams;
+}
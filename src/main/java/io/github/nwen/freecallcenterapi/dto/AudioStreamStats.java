@@ -0,0 +1,51 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AudioStreamStats {
+
+    private String callId;
+    private String sessionId;
+    private LocalDateTime startedAt;
+    private long framesReceived;
+    private long bytesReceived;
+    private long framesProcessed;
+    private long framesSent;
+    private long framesDropped;
+    /** 处理跟不上、通话队列已满 */
+    private long droppedQueueFull;
+    /** 缓冲池耗尽 */
+    private long droppedNoBuffer;
+    /** 帧超过 maxFrameBytes */
+    private long droppedOversize;
+    private long processErrors;
+    private int queuedFrames;
+    /** 帧从接收完成到处理完成的耗时 */
+    private long avgLatencyMicros;
+    private long maxLatencyMicros;
+    /** 经过 vad 阶段的帧数及其中被判为静音、未转发的帧数 */
+    private long vadFrames;
+    private long suppressedFrames;
+    private double suppressedRatio;
+    private long speechSegments;
+    private boolean speaking;
+    /** 回放抖动缓冲：当前缓冲时长、自适应目标延迟、已发出帧数、欠载/过载次数、barge-in 清空次数 */
+    private int playoutBufferedMillis;
+    private int playoutTargetMillis;
+    private long playoutFrames;
+    private long playoutUnderruns;
+    private long playoutOverruns;
+    private long bargeIns;
+    /** 上一帧仍在发送（对端接收慢）而跳过的回放帧数，以及发送出错次数 */
+    private long playoutBusyFrames;
+    private long playoutSendErrors;
+}
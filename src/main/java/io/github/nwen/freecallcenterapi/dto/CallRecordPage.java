@@ -0,0 +1,25 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CallRecordPage {
+
+    private List<CallRecordResponse> items;
+
+    /** 下一页游标，原样传回 cursor 参数即可；没有更多数据时为 null */
+    private String nextCursor;
+
+    private boolean hasMore;
+
+    /** 满足筛选条件的总数，仅在 withTotal=true 时返回 */
+    private Long total;
+}
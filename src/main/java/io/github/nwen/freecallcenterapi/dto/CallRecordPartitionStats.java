@@ -0,0 +1,46 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CallRecordPartitionStats {
+
+    /** call_record 是否为分区表 */
+    private boolean partitioned;
+
+    /** 当前挂载的分区，按名称排序 */
+    private List<Partition> partitions;
+
+    /** 本次运行以来预建的分区数 */
+    private long created;
+
+    /** 本次运行以来归档的分区数 */
+    private long archived;
+
+    private LocalDateTime lastMaintenanceAt;
+
+    private String lastError;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Partition {
+
+        private String name;
+
+        /** 分区范围，默认分区为 DEFAULT */
+        private String bound;
+
+        /** 按统计信息估算的行数，未 ANALYZE 时为 0 */
+        private long estimatedRows;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CallRecordWriterStats {
+
+    private int queueDepth;
+    private int queueCapacity;
+    private int queueHighWatermark;
+    private long enqueued;
+    private long written;
+    private long failed;
+    private long dropped;
+    private long backpressureWaits;
+    private long batches;
+    private long lastFlushMillis;
+    private long maxFlushMillis;
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -17,4 +19,18 @@ public class CallStatsResponse {
     private double answerRate;
     private long totalDuration;
     private long avgDuration;
+
+    /** 已应答通话时长的分位数与最大值（秒），只有明细统计返回 */
+    private Double p50Duration;
+    private Double p90Duration;
+    private Double p99Duration;
+    private Long maxDuration;
+
+    /** 分组维度：extension / hour / direction，未分组时为空 */
+    private String groupBy;
+
+    /** 分组值：分机 ID（0 表示未关联分机）、小时（yyyy-MM-dd HH:00）或方向；汇总行为空 */
+    private String groupKey;
+
+    private List<CallStatsResponse> groups;
 }
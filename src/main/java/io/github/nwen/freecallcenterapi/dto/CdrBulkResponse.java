@@ -0,0 +1,46 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CdrBulkResponse {
+
+    /** 读到的记录数 */
+    private long received;
+
+    /** 已入库的记录数 */
+    private long accepted;
+
+    /** 被拒绝的记录数（解析失败、字段缺失或所在批次入库失败） */
+    private long rejected;
+
+    /** 写入批次数 */
+    private int batches;
+
+    private long elapsedMs;
+
+    /** 请求体在中途出现 JSON 语法错误时的错误信息，之前读到的记录照常入库 */
+    private String error;
+
+    /** 拒绝明细，最多 maxRejectDetails 条 */
+    private List<Reject> rejects;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Reject {
+
+        /** 记录在请求体中的序号（从 0 开始） */
+        private long index;
+
+        private String reason;
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CdrSpoolStats {
+
+    private boolean enabled;
+
+    /** 本次启动以来写入 spool 的记录数 */
+    private long appended;
+
+    /** 写入 spool 失败（磁盘满、超出大小等）的次数 */
+    private long appendFailures;
+
+    /** 已入库并推进 checkpoint 的记录数 */
+    private long drained;
+
+    /** 入库失败的批次数 */
+    private long drainFailures;
+
+    /** 被数据库拒绝、移入死信文件的记录数 */
+    private long deadLettered;
+
+    /** 启动时从 checkpoint 之后恢复的未入库记录数 */
+    private long replayed;
+
+    /** 尚未入库的记录数 */
+    private long pending;
+
+    /** 当前占用的分段文件数 */
+    private long segments;
+
+    private long writeSegment;
+    private int writePosition;
+    private long checkpointSegment;
+    private int checkpointPosition;
+
+    private String lastDrainError;
+    private LocalDateTime lastDrainAt;
+}
@@ -0,0 +1,33 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvCdrImportResult {
+
+    /** 本次有新内容的文件数 */
+    private int files;
+
+    /** 本次读取的字节数 */
+    private long bytes;
+
+    /** 入库的行数 */
+    private long rows;
+
+    /** 解析失败或字段缺失被跳过的行数 */
+    private long rejected;
+
+    private long elapsedMs;
+
+    private long rowsPerSecond;
+
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,29 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvCdrImportStats {
+
+    private boolean enabled;
+    private String directory;
+
+    /** 正在追踪偏移量的文件数 */
+    private int trackedFiles;
+
+    private long scans;
+    private long totalRows;
+    private long totalRejected;
+    private long totalBytes;
+
+    /** 最近一次有新数据的扫描结果 */
+    private CsvCdrImportResult lastImport;
+
+    private String lastError;
+}
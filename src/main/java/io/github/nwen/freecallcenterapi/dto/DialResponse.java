@@ -0,0 +1,16 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DialResponse {
+
+    /** bgapi originate 的 Job-UUID，呼叫结果通过 BACKGROUND_JOB 事件异步返回 */
+    private String jobId;
+}
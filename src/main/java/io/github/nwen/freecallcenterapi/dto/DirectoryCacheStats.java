@@ -0,0 +1,25 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectoryCacheStats {
+
+    private int size;
+    private int maxEntries;
+    private long hits;
+    /** 命中的负缓存（不存在或已禁用的分机） */
+    private long negativeHits;
+    private long misses;
+    /** 实际查询数据库的次数，并发未命中同一分机时只查一次 */
+    private long loads;
+    private long evictions;
+    private long invalidations;
+    private double hitRatio;
+}
@@ -0,0 +1,22 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslCommandConnectionStats {
+
+    private int index;
+    private boolean connected;
+    private int inFlight;
+    private long commands;
+    private long failures;
+    private long connects;
+    private long avgLatencyMicros;
+    private long maxLatencyMicros;
+}
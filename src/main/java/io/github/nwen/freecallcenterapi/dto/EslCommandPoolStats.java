@@ -0,0 +1,22 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslCommandPoolStats {
+
+    private int size;
+    private int connected;
+    private int inFlight;
+    /** 命令连接全部不可用时退回事件连接执行的命令数 */
+    private long fallbacks;
+    private List<EslCommandConnectionStats> connections;
+}
@@ -0,0 +1,29 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslConnectionStats {
+
+    private String node;
+    private int weight;
+    /** 该节点当前在线的通道数（按 CHANNEL_CREATE / CHANNEL_HANGUP 统计） */
+    private int liveChannels;
+    private int pendingOriginates;
+    private boolean connected;
+    private long connects;
+    private long connectFailures;
+    private int consecutiveFailures;
+    private LocalDateTime lastConnectedAt;
+    /** 距最近一次收到事件（含 HEARTBEAT）的毫秒数，-1 表示当前连接尚未收到事件 */
+    private long lastEventAgeMs;
+    private EslCommandPoolStats commandPool;
+}
@@ -0,0 +1,19 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslDispatcherStats {
+
+    private int lanes;
+    private int queueCapacity;
+    private List<EslLaneStats> laneStats;
+}
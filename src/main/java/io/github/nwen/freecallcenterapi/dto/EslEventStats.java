@@ -0,0 +1,21 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslEventStats {
+
+    private String subscription;
+    private long received;
+    private long handled;
+    private long ignored;
+    private Map<String, Long> handledByEvent;
+}
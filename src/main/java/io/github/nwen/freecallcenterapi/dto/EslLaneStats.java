@@ -0,0 +1,21 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EslLaneStats {
+
+    private int lane;
+    private int depth;
+    private long processed;
+    private long failed;
+    private long fullWaits;
+    private long avgLatencyMicros;
+    private long maxLatencyMicros;
+}
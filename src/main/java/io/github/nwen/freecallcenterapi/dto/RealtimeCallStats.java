@@ -0,0 +1,34 @@
+package io.github.nwen.freecallcenterapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RealtimeCallStats {
+
+    /** 分机号，汇总统计时为空 */
+    private String extension;
+    /** 通话方向，汇总多个方向时为空 */
+    private String direction;
+    private int windowSeconds;
+    private long concurrentCalls;
+    private long callsInWindow;
+    private double callsPerSecond;
+    private long completedInWindow;
+    private long answeredInWindow;
+    /** 应答率（ASR）：窗口内结束的通话中被应答的百分比 */
+    private double asr;
+    /** 窗口内结束的已应答通话的平均通话时长（秒） */
+    private double avgTalkSeconds;
+    private long totalCreated;
+    private long totalAnswered;
+    private long totalEnded;
+    private Map<String, RealtimeCallStats> byDirection;
+}
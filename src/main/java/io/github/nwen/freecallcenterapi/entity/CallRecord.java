@@ -33,6 +33,8 @@ public class CallRecord {
     private Integer durationSeconds;
     private Long extensionId;
     private String recordingUrl;
+    /** 通话所在的 FreeSWITCH 节点 */
+    private String node;
 
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime createdAt;
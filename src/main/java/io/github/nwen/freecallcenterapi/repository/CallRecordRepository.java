@@ -1,10 +1,18 @@
 package io.github.nwen.freecallcenterapi.repository;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
 import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -12,10 +20,13 @@ import java.util.List;
 @Mapper
 public interface CallRecordRepository extends BaseMapper<CallRecord> {
 
+    /**
+     * 按 start_time（分区键）过滤，只扫描时间范围覆盖的月度分区
+     */
     @Select("""
         SELECT * FROM call_record
-        WHERE created_at BETWEEN #{startTime} AND #{endTime}
-        ORDER BY created_at DESC
+        WHERE start_time BETWEEN #{startTime} AND #{endTime}
+        ORDER BY start_time DESC
         """)
     List<CallRecord> findByTimeRange(
             @Param("startTime") LocalDateTime startTime,
@@ -29,33 +40,124 @@ public interface CallRecordRepository extends BaseMapper<CallRecord> {
         """)
     List<CallRecord> findByExtensionId(@Param("extensionId") Long extensionId);
 
+    /**
+     * 一次扫描得到总数、应答、未接、总时长、平均时长和已应答通话时长的分位数。
+     * groupExpr 不为空时用 GROUPING SETS 在同一次扫描中同时给出汇总行（排在第一行，group_key 为空）和各分组行；
+     * groupExpr 只能取 CallRecordService.StatsGroup 中的固定表达式
+     */
     @Select("""
-        SELECT COUNT(*) FROM call_record
-        WHERE status = 'ANSWERED'
-        AND created_at BETWEEN #{startTime} AND #{endTime}
+        <script>
+        SELECT <choose><when test="groupExpr != null">${groupExpr}</when><otherwise>NULL</otherwise></choose> AS group_key,
+               COUNT(*) AS total_calls,
+               COUNT(*) FILTER (WHERE status = 'ANSWERED') AS answered_calls,
+               COUNT(*) FILTER (WHERE status != 'ANSWERED') AS missed_calls,
+               COALESCE(SUM(duration_seconds), 0) AS total_duration,
+               COALESCE(SUM(duration_seconds) / NULLIF(COUNT(*) FILTER (WHERE status = 'ANSWERED'), 0), 0) AS avg_duration,
+               COALESCE(ROUND(100.0 * COUNT(*) FILTER (WHERE status = 'ANSWERED') / NULLIF(COUNT(*), 0), 2), 0) AS answer_rate,
+               percentile_cont(0.5) WITHIN GROUP (ORDER BY duration_seconds) FILTER (WHERE status = 'ANSWERED') AS p50_duration,
+               percentile_cont(0.9) WITHIN GROUP (ORDER BY duration_seconds) FILTER (WHERE status = 'ANSWERED') AS p90_duration,
+               percentile_cont(0.99) WITHIN GROUP (ORDER BY duration_seconds) FILTER (WHERE status = 'ANSWERED') AS p99_duration,
+               MAX(duration_seconds) FILTER (WHERE status = 'ANSWERED') AS max_duration
+        FROM call_record
+        WHERE start_time BETWEEN #{startTime} AND #{endTime}
+        <if test="extensionId != null">AND extension_id = #{extensionId}</if>
+        <if test="groupExpr != null">
+        GROUP BY GROUPING SETS ((), (${groupExpr}))
+        ORDER BY GROUPING(${groupExpr}) DESC, 1
+        </if>
+        </script>
         """)
-    long countAnsweredCalls(
-            @Param("startTime") LocalDateTime startTime,
-            @Param("endTime") LocalDateTime endTime
-    );
+    List<CallStatsResponse> aggregateStats(@Param("startTime") LocalDateTime startTime,
+                                           @Param("endTime") LocalDateTime endTime,
+                                           @Param("extensionId") Long extensionId,
+                                           @Param("groupExpr") String groupExpr);
 
-    @Select("""
-        SELECT COUNT(*) FROM call_record
-        WHERE created_at BETWEEN #{startTime} AND #{endTime}
+    /**
+     * ESL 通话创建：已存在同 call_id 的记录（如 CDR 先到）时不做任何修改。
+     * 分区表上没有 call_id 唯一索引，不能用 ON CONFLICT，改为查 call_record_key；
+     * 与并发插入同一 call_id 竞争时由登记触发器报唯一约束冲突，调用方按已存在处理
+     */
+    @Insert("""
+        INSERT INTO call_record (call_id, caller_number, callee_number, direction, status, start_time, extension_id, node)
+        SELECT #{callId}, #{callerNumber}, #{calleeNumber}, #{direction}, #{status}, #{startTime}, #{extensionId}, #{node}
+        WHERE NOT EXISTS (SELECT 1 FROM call_record_key WHERE call_id = #{callId})
         """)
-    long countTotalCalls(
-            @Param("startTime") LocalDateTime startTime,
-            @Param("endTime") LocalDateTime endTime
-    );
+    int insertIfAbsent(CallRecord record);
 
-    @Select("""
-        SELECT COALESCE(SUM(duration_seconds), 0) FROM call_record
-        WHERE extension_id = #{extensionId}
-        AND created_at BETWEEN #{startTime} AND #{endTime}
+    /**
+     * 通话接通：重复事件不会覆盖首次接通时间
+     */
+    @Update("""
+        UPDATE call_record
+        SET answer_time = COALESCE(answer_time, #{answerTime}),
+            status = 'ANSWERED',
+            updated_at = CURRENT_TIMESTAMP
+        WHERE call_id = #{callId}
+          AND start_time = (SELECT start_time FROM call_record_key WHERE call_id = #{callId})
         """)
-    long sumDurationByExtension(
-            @Param("extensionId") Long extensionId,
-            @Param("startTime") LocalDateTime startTime,
-            @Param("endTime") LocalDateTime endTime
-    );
+    int markAnswered(@Param("callId") String callId, @Param("answerTime") LocalDateTime answerTime);
+
+    /**
+     * 通话挂断：在 SQL 中根据接通时间计算通话时长，重复事件不会覆盖首次挂断时间
+     */
+    @Update("""
+        UPDATE call_record
+        SET end_time = COALESCE(end_time, #{endTime}),
+            duration_seconds = CASE WHEN answer_time IS NULL THEN duration_seconds
+                ELSE CAST(EXTRACT(EPOCH FROM (COALESCE(end_time, #{endTime}) - answer_time)) AS INT) END,
+            updated_at = CURRENT_TIMESTAMP
+        WHERE call_id = #{callId}
+          AND start_time = (SELECT start_time FROM call_record_key WHERE call_id = #{callId})
+        """)
+    int markHangup(@Param("callId") String callId, @Param("endTime") LocalDateTime endTime);
+
+    @Update("""
+        UPDATE call_record SET status = #{status}, updated_at = CURRENT_TIMESTAMP
+        WHERE call_id = #{callId}
+          AND start_time = (SELECT start_time FROM call_record_key WHERE call_id = #{callId})
+        """)
+    int updateStatusByCallId(@Param("callId") String callId, @Param("status") String status);
+
+    /**
+     * CDR 入库：与 ESL 事件写入的同一通话记录合并。
+     * CDR 是 FreeSWITCH 在通话结束后给出的最终结果，时间与时长以 CDR 为准，缺失的字段保留已有值。
+     * start_time 变化跨月时 PostgreSQL 会把记录移动到对应分区。
+     */
+    @Update("""
+        UPDATE call_record SET
+            caller_number = #{callerNumber},
+            callee_number = #{calleeNumber},
+            status = #{status},
+            start_time = COALESCE(#{startTime}, start_time),
+            answer_time = COALESCE(#{answerTime}, answer_time),
+            end_time = COALESCE(#{endTime}, end_time),
+            duration_seconds = COALESCE(#{durationSeconds}, duration_seconds),
+            extension_id = COALESCE(extension_id, #{extensionId}),
+            recording_url = COALESCE(#{recordingUrl}, recording_url),
+            node = COALESCE(node, #{node}),
+            updated_at = CURRENT_TIMESTAMP
+        WHERE call_id = #{callId}
+          AND start_time = (SELECT start_time FROM call_record_key WHERE call_id = #{callId})
+        """)
+    int updateFromCdr(CallRecord record);
+
+    /**
+     * CDR 先于 ESL 事件到达时插入完整记录，同 call_id 已存在时不插入。
+     * 与并发插入同一 call_id 竞争时由登记触发器报唯一约束冲突，在事务中调用须包在保存点内，见 CallRecordService.upsertCdrRecord
+     */
+    @Insert("""
+        INSERT INTO call_record (call_id, caller_number, callee_number, direction, status,
+                                 start_time, answer_time, end_time, duration_seconds, extension_id, recording_url, node)
+        SELECT #{callId}, #{callerNumber}, #{calleeNumber}, #{direction}, #{status},
+               #{startTime}, #{answerTime}, #{endTime}, #{durationSeconds}, #{extensionId}, #{recordingUrl}, #{node}
+        WHERE NOT EXISTS (SELECT 1 FROM call_record_key WHERE call_id = #{callId})
+        """)
+    int insertFromCdrIfAbsent(CallRecord record);
+
+    /**
+     * 按条件逐行读取通话记录，须在事务中使用（PostgreSQL 只有在关闭自动提交时才按 fetchSize 分批拉取）
+     */
+    @Select("SELECT * FROM call_record ${ew.customSqlSegment}")
+    @Options(fetchSize = 2000, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<CallRecord> streamByWrapper(@Param(Constants.WRAPPER) Wrapper<CallRecord> wrapper);
 }
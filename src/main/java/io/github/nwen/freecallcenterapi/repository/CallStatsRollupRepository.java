@@ -0,0 +1,121 @@
+package io.github.nwen.freecallcenterapi.repository;
+
+import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+
+/**
+ * call_stats_hourly 小时汇总表：call_record 上的触发器只向 call_stats_hourly_delta 追加增量（见 001-create-tables.sql），
+ * 由 foldDeltas 合并进汇总表；查询时两表相加，尚未合并的增量同样计入
+ */
+@Mapper
+public interface CallStatsRollupRepository {
+
+    @Select("SELECT to_regclass('call_stats_hourly') IS NOT NULL AND to_regclass('call_stats_hourly_delta') IS NOT NULL")
+    boolean rollupTableExists();
+
+    /**
+     * 整点区间 [fullStart, fullEnd) 从汇总表读取，[startTime, endTime] 中不足一小时的首尾部分从 call_record 按 start_time 补齐（只扫描首尾所在的分区），
+     * 结果与直接在 call_record 上按 start_time BETWEEN 统计一致
+     */
+    @Select("""
+        SELECT COALESCE(SUM(calls), 0) AS total_calls,
+               COALESCE(SUM(calls) FILTER (WHERE status = 'ANSWERED'), 0) AS answered_calls,
+               COALESCE(SUM(duration), 0) AS total_duration
+        FROM (
+            SELECT status, calls, total_duration AS duration
+            FROM call_stats_hourly
+            WHERE bucket >= #{fullStart} AND bucket < #{fullEnd}
+              AND (CAST(#{extensionId} AS BIGINT) IS NULL OR extension_id = #{extensionId})
+            UNION ALL
+            SELECT status, calls, total_duration
+            FROM call_stats_hourly_delta
+            WHERE bucket >= #{fullStart} AND bucket < #{fullEnd}
+              AND (CAST(#{extensionId} AS BIGINT) IS NULL OR extension_id = #{extensionId})
+            UNION ALL
+            SELECT status, 1, COALESCE(duration_seconds, 0)
+            FROM call_record
+            WHERE start_time BETWEEN #{startTime} AND #{endTime}
+              AND (start_time < #{fullStart} OR start_time >= #{fullEnd})
+              AND (CAST(#{extensionId} AS BIGINT) IS NULL OR extension_id = #{extensionId})
+        ) t
+        """)
+    CallStatsResponse sumStats(@Param("startTime") LocalDateTime startTime,
+                               @Param("endTime") LocalDateTime endTime,
+                               @Param("fullStart") LocalDateTime fullStart,
+                               @Param("fullEnd") LocalDateTime fullEnd,
+                               @Param("extensionId") Long extensionId);
+
+    /**
+     * 汇总表不可用时直接扫描 call_record，单次查询同时得到各项计数
+     */
+    @Select("""
+        SELECT COUNT(*) AS total_calls,
+               COUNT(*) FILTER (WHERE status = 'ANSWERED') AS answered_calls,
+               COALESCE(SUM(duration_seconds), 0) AS total_duration
+        FROM call_record
+        WHERE start_time BETWEEN #{startTime} AND #{endTime}
+          AND (CAST(#{extensionId} AS BIGINT) IS NULL OR extension_id = #{extensionId})
+        """)
+    CallStatsResponse sumStatsFromRecords(@Param("startTime") LocalDateTime startTime,
+                                          @Param("endTime") LocalDateTime endTime,
+                                          @Param("extensionId") Long extensionId);
+
+    @Select("SELECT MIN(start_time) FROM call_record")
+    LocalDateTime earliestCallStartTime();
+
+    @Select("SELECT LEAST((SELECT MIN(bucket) FROM call_stats_hourly), (SELECT MIN(bucket) FROM call_stats_hourly_delta))")
+    LocalDateTime earliestBucket();
+
+    /**
+     * 在一条语句内删除当前可见的增量并按桶累加进汇总表，合并期间新提交的增量留到下一次；返回更新的桶数
+     */
+    @Insert("""
+        WITH folded AS (
+            DELETE FROM call_stats_hourly_delta
+            RETURNING bucket, extension_id, direction, status, calls, total_duration
+        )
+        INSERT INTO call_stats_hourly AS s (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT bucket, extension_id, direction, status, SUM(calls), SUM(total_duration)
+        FROM folded
+        GROUP BY 1, 2, 3, 4
+        HAVING SUM(calls) <> 0 OR SUM(total_duration) <> 0
+        ON CONFLICT (bucket, extension_id, direction, status) DO UPDATE
+            SET calls = s.calls + EXCLUDED.calls, total_duration = s.total_duration + EXCLUDED.total_duration
+        """)
+    int foldDeltas();
+
+    /**
+     * 阻塞 foldDeltas 和触发器的追加直到事务结束，不阻塞查询
+     */
+    @Update("LOCK TABLE call_stats_hourly_delta IN EXCLUSIVE MODE")
+    void lockDeltas();
+
+    /**
+     * 阻塞 call_record 的写入直到事务结束，使重建区间期间触发器不会产生增量
+     */
+    @Update("LOCK TABLE call_record IN SHARE MODE")
+    void lockCallRecord();
+
+    @Delete("DELETE FROM call_stats_hourly WHERE bucket >= #{from} AND bucket < #{to}")
+    int deleteBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Delete("DELETE FROM call_stats_hourly_delta WHERE bucket >= #{from} AND bucket < #{to}")
+    int deleteDeltas(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Insert("""
+        INSERT INTO call_stats_hourly (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+               COUNT(*), COALESCE(SUM(duration_seconds), 0)
+        FROM call_record
+        WHERE start_time >= #{from} AND start_time < #{to}
+        GROUP BY 1, 2, 3, 4
+        """)
+    int rebuildBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
@@ -3,7 +3,10 @@ package io.github.nwen.freecallcenterapi.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import io.github.nwen.freecallcenterapi.entity.Extension;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
 import java.util.Optional;
 
@@ -12,4 +15,22 @@ public interface ExtensionRepository extends BaseMapper<Extension> {
 
     @Select("SELECT * FROM extension WHERE extension_number = #{extensionNumber} LIMIT 1")
     Optional<Extension> findByExtensionNumber(String extensionNumber);
+
+    /**
+     * 逐行读取全部启用的分机，须在事务中使用（PostgreSQL 只有在关闭自动提交时才按 fetchSize 分批拉取）
+     */
+    @Select("SELECT * FROM extension WHERE enabled = TRUE ORDER BY extension_number")
+    @Options(fetchSize = 1000, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<Extension> streamEnabled();
+
+    /**
+     * 启用分机的内容指纹：行数 + 各行哈希之和（与顺序无关），任何增删改、启停都会改变结果，用作目录 ETag
+     */
+    @Select("""
+        SELECT COUNT(*) || '-' || COALESCE(SUM(hashtextextended(
+            id || ':' || extension_number || ':' || password || ':'
+                || COALESCE(display_name, '') || ':' || COALESCE(context, ''), 0)), 0)
+        FROM extension WHERE enabled = TRUE
+        """)
+    String enabledFingerprint();
 }
@@ -0,0 +1,315 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import io.github.nwen.freecallcenterapi.dto.AiAudioSessionInfo;
+import io.github.nwen.freecallcenterapi.dto.AiAudioSessionStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI 智能体通话的 uuid_audio_stream 会话登记：呼叫 AI 分机的通道在创建时登记，接通后通过 bgapi 启动音频流，
+ * 按 AiAgentConfig.timeout 等待结果，失败按 streamStartRetries / streamRetryDelayMillis 退避重试，挂断时停止并移除。
+ * 状态迁移在各会话自身上同步，ESL 分发线程与 bgapi 回调之间互不阻塞
+ */
+@Slf4j
+@Service
+public class AiAudioSessionRegistry {
+
+    public enum State {
+        /** 已登记，等待接通 */
+        PENDING,
+        STARTING,
+        STREAMING,
+        STOPPING,
+        /** 启动重试用尽或终止失败 */
+        FAILED
+    }
+
+    private final EslService eslService;
+    private final AiAgentConfig config;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder startFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder killed = new LongAdder();
+    private final LongAdder completedStreams = new LongAdder();
+    private final LongAdder streamMillis = new LongAdder();
+    private final AtomicLong maxStreamMillis = new AtomicLong();
+
+    public AiAudioSessionRegistry(EslService eslService, AiAgentConfig config) {
+        this.eslService = eslService;
+        this.config = config;
+    }
+
+    public void track(String callId) {
+        if (sessions.putIfAbsent(callId, new Session(callId)) == null) {
+            log.info("AI 智能体通话已标记: callId={}, extension={}", callId, config.getFreeswitchExtension());
+        }
+    }
+
+    public boolean isTracked(String callId) {
+        return sessions.containsKey(callId);
+    }
+
+    /**
+     * 通话接通：启动音频流，结果异步返回，不占用 ESL 事件处理线程
+     */
+    public void start(String callId) {
+        Session session = sessions.get(callId);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            if (session.state != State.PENDING && session.state != State.FAILED) {
+                return;
+            }
+            session.state = State.STARTING;
+            session.attempts = 0;
+        }
+        sendStart(session);
+    }
+
+    private void sendStart(Session session) {
+        int attempt;
+        synchronized (session) {
+            if (session.closed || session.state != State.STARTING) {
+                return;
+            }
+            attempt = ++session.attempts;
+        }
+        String command = startCommand(session.callId);
+        log.info("启动 AI audio stream: callId={}, attempt={}, command={}", session.callId, attempt, command);
+        eslService.sendBackgroundCommand(command, Duration.ofMillis(config.getTimeout())).result()
+                .whenComplete((result, error) -> onStartResult(session, attempt, result, error));
+    }
+
+    private void onStartResult(Session session, int attempt, String result, Throwable error) {
+        String failure = error != null ? errorMessage(error) : failureOf(result);
+        boolean retry = false;
+        synchronized (session) {
+            if (session.closed || session.state != State.STARTING || session.attempts != attempt) {
+                return;
+            }
+            if (failure == null) {
+                session.state = State.STREAMING;
+                session.streamingAt = LocalDateTime.now();
+                session.streamingNanos = System.nanoTime();
+                session.lastError = null;
+                started.increment();
+                log.info("AI audio stream 已启动: callId={}, attempt={}", session.callId, attempt);
+                return;
+            }
+            startFailures.increment();
+            session.lastError = failure;
+            if (attempt <= config.getStreamStartRetries()) {
+                retry = true;
+            } else {
+                session.state = State.FAILED;
+                failed.increment();
+            }
+        }
+        if (retry) {
+            long delay = (long) config.getStreamRetryDelayMillis() * attempt;
+            retries.increment();
+            log.warn("启动 AI audio stream 失败，{} ms 后重试: callId={}, attempt={}, error={}",
+                    delay, session.callId, attempt, failure);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> sendStart(session));
+        } else {
+            log.error("启动 AI audio stream 失败，不再重试: callId={}, attempts={}, error={}", session.callId, attempt, failure);
+        }
+    }
+
+    /**
+     * 通话挂断：移除会话，音频流已启动或正在启动时发送 stop
+     */
+    public void stop(String callId) {
+        Session session = sessions.remove(callId);
+        if (session == null) {
+            return;
+        }
+        State previous;
+        synchronized (session) {
+            previous = session.state;
+            session.state = State.STOPPING;
+        }
+        finish(session);
+        if (previous == State.STARTING || previous == State.STREAMING) {
+            sendStop(session.callId).whenComplete((result, error) -> {
+                if (error != null) {
+                    log.debug("停止 AI audio stream 失败（通道可能已销毁）: callId={}, error={}", callId, errorMessage(error));
+                }
+            });
+        }
+    }
+
+    /**
+     * 通道已不存在（如断线期间挂断），只移除会话，不再发送命令
+     */
+    public void release(String callId) {
+        Session session = sessions.remove(callId);
+        if (session != null) {
+            finish(session);
+            log.info("AI 通话挂断清理: callId={}", callId);
+        }
+    }
+
+    /**
+     * 人工终止一路正在启动或进行中的音频流，通话本身不挂断
+     */
+    public AiAudioSessionInfo kill(String callId) {
+        Session session = sessions.get(callId);
+        if (session == null) {
+            throw new IllegalArgumentException("AI 音频流不存在: " + callId);
+        }
+        synchronized (session) {
+            if (session.state != State.STARTING && session.state != State.STREAMING) {
+                throw new IllegalStateException("AI 音频流当前状态不能终止: " + session.state);
+            }
+            session.state = State.STOPPING;
+        }
+        log.info("终止 AI audio stream: callId={}", callId);
+        sendStop(callId).whenComplete((result, error) -> {
+            String failure = error != null ? errorMessage(error) : failureOf(result);
+            if (failure == null) {
+                if (sessions.remove(callId, session)) {
+                    killed.increment();
+                    finish(session);
+                }
+                return;
+            }
+            synchronized (session) {
+                if (session.state == State.STOPPING && !session.closed) {
+                    session.state = State.FAILED;
+                    session.lastError = failure;
+                }
+            }
+            log.warn("终止 AI audio stream 失败: callId={}, error={}", callId, failure);
+        });
+        return session.toInfo();
+    }
+
+    public List<AiAudioSessionInfo> list() {
+        List<AiAudioSessionInfo> list = new ArrayList<>(sessions.size());
+        for (Session session : sessions.values()) {
+            list.add(session.toInfo());
+        }
+        list.sort(Comparator.comparing(AiAudioSessionInfo::getCreatedAt));
+        return list;
+    }
+
+    public AiAudioSessionStats getStats() {
+        Map<String, Long> byState = new TreeMap<>();
+        for (Session session : sessions.values()) {
+            byState.merge(session.state.name(), 1L, Long::sum);
+        }
+        long completed = completedStreams.sum();
+        return AiAudioSessionStats.builder()
+                .active(byState.values().stream().mapToLong(Long::longValue).sum())
+                .byState(byState)
+                .started(started.sum())
+                .startFailures(startFailures.sum())
+                .retries(retries.sum())
+                .failed(failed.sum())
+                .killed(killed.sum())
+                .completedStreams(completed)
+                .totalStreamSeconds(streamMillis.sum() / 1000)
+                .avgStreamSeconds(completed == 0 ? 0 : Math.round(streamMillis.sum() / 10.0 / completed) / 100.0)
+                .maxStreamSeconds(maxStreamMillis.get() / 1000)
+                .build();
+    }
+
+    /**
+     * 会话结束：只记录一次，曾进入 STREAMING 的计入流时长统计
+     */
+    private void finish(Session session) {
+        long streamingNanos;
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            session.closed = true;
+            streamingNanos = session.streamingNanos;
+        }
+        if (streamingNanos != 0) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - streamingNanos);
+            completedStreams.increment();
+            streamMillis.add(millis);
+            maxStreamMillis.accumulateAndGet(millis, Math::max);
+        }
+    }
+
+    /**
+     * mod_audio_stream 要求 start 命令至少 4 个参数: <uuid> start <url> <mode> [sampling]
+     * mode: mixed(双向)|mono(仅上行)|stereo, sampling: 8000|16000
+     */
+    private String startCommand(String callId) {
+        String wsUrl = config.getWsUrl();
+        if (config.isAppendCallIdToWsUrl()) {
+            wsUrl = (wsUrl.endsWith("/") ? wsUrl : wsUrl + "/") + callId;
+        }
+        return String.format("uuid_audio_stream %s start %s mixed %d", callId, wsUrl, config.getSampleRate());
+    }
+
+    private CompletableFuture<String> sendStop(String callId) {
+        return eslService.sendBackgroundCommand(String.format("uuid_audio_stream %s stop", callId),
+                Duration.ofMillis(config.getTimeout())).result();
+    }
+
+    private static String failureOf(String result) {
+        if (result != null && result.startsWith("+OK")) {
+            return null;
+        }
+        return result == null || result.isBlank() ? "empty response" : result.trim();
+    }
+
+    private static String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static final class Session {
+
+        final String callId;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        /** 只在持有会话锁时修改，getStats 不加锁直接读取 */
+        volatile State state = State.PENDING;
+        int attempts;
+        String lastError;
+        LocalDateTime streamingAt;
+        long streamingNanos;
+        boolean closed;
+
+        Session(String callId) {
+            this.callId = callId;
+        }
+
+        synchronized AiAudioSessionInfo toInfo() {
+            return AiAudioSessionInfo.builder()
+                    .callId(callId)
+                    .state(state.name())
+                    .attempts(attempts)
+                    .createdAt(createdAt)
+                    .streamingAt(streamingAt)
+                    .streamingSeconds(streamingNanos == 0 ? 0
+                            : TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - streamingNanos))
+                    .lastError(lastError)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 音频帧缓冲池：启动时分配一整块直接内存并切成等长的帧缓冲区，所有通话共享。
+ * 接收到的帧直接写入池中的缓冲区，处理完归还，稳定运行时不再为每帧分配内存；
+ * 池耗尽时 acquire 返回 null，由调用方丢弃该帧而不是等待
+ */
+class AudioBufferPool {
+
+    private final int frameBytes;
+    private final int capacity;
+    private final ArrayBlockingQueue<AudioFrame> free;
+
+    AudioBufferPool(int capacity, int frameBytes) {
+        this.capacity = capacity;
+        this.frameBytes = frameBytes;
+        this.free = new ArrayBlockingQueue<>(capacity);
+        ByteBuffer block = ByteBuffer.allocateDirect(capacity * frameBytes);
+        for (int i = 0; i < capacity; i++) {
+            free.add(new AudioFrame(block.slice(i * frameBytes, frameBytes)));
+        }
+    }
+
+    AudioFrame acquire() {
+        return free.poll();
+    }
+
+    void release(AudioFrame frame) {
+        frame.reset();
+        free.offer(frame);
+    }
+
+    int frameBytes() {
+        return frameBytes;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int available() {
+        return free.size();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * 一帧 16 bit 小端 PCM 音频。缓冲区来自 AudioBufferPool，只读的字节视图和样本视图在创建时建好，
+ * 每帧只重置 position/limit，处理器拿到视图不产生新对象；帧在 AudioProcessor.process 返回后回收复用
+ */
+public final class AudioFrame {
+
+    /** 可写缓冲区，只由接收线程写入 */
+    final ByteBuffer buffer;
+    private final ByteBuffer bytes;
+    private final ShortBuffer samples;
+    private int length;
+    long receivedNanos;
+
+    AudioFrame(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.bytes = buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        this.samples = buffer.duplicate().clear().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * 包装一段已有的 PCM 数据（position 到 limit）为独立的帧，不经过缓冲池，用于离线处理和基准测试
+     */
+    public static AudioFrame of(ByteBuffer data) {
+        AudioFrame frame = new AudioFrame(data.slice());
+        frame.buffer.position(frame.buffer.limit());
+        frame.complete(System.nanoTime());
+        return frame;
+    }
+
+    /** 帧的原始字节（只读，position 为 0） */
+    public ByteBuffer bytes() {
+        return bytes.clear().limit(length);
+    }
+
+    /** 帧的样本（只读，position 为 0，奇数字节的末尾半个样本忽略） */
+    public ShortBuffer samples() {
+        return samples.clear().limit(length / 2);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public long receivedNanos() {
+        return receivedNanos;
+    }
+
+    /** 接收完成：已写入的内容成为当前帧 */
+    void complete(long nanos) {
+        buffer.flip();
+        length = buffer.limit();
+        receivedNanos = nanos;
+    }
+
+    void reset() {
+        buffer.clear();
+        length = 0;
+    }
+}
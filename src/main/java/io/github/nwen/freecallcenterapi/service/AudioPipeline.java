@@ -0,0 +1,84 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 由多个 AudioStage 串联的音频处理器，AiAgentConfig.processor=pipelineProcessor 时启用，阶段顺序取自 AiAgentConfig.pipeline。
+ * 每路通话在 onStart 时创建各阶段实例并挂在 AudioStream 上，之后每帧只在预分配的缓冲区间传递只读视图，预热后不再分配内存
+ */
+@Component("pipelineProcessor")
+public class AudioPipeline implements AudioProcessor {
+
+    private final AudioStage.Format input;
+    private final List<AudioStage.Factory> factories;
+
+    @Autowired
+    public AudioPipeline(AiAgentConfig config, ObjectProvider<AudioSink> sinks,
+                         ObjectProvider<VoiceActivityListener> listeners) {
+        this(config.getSampleRate(), config.getMaxFrameBytes(),
+                factories(config, sinks.orderedStream().toList(), listeners.orderedStream().toList()));
+    }
+
+    public AudioPipeline(int sampleRate, int maxFrameBytes, List<AudioStage.Factory> factories) {
+        this.input = new AudioStage.Format(sampleRate, maxFrameBytes / 2);
+        this.factories = List.copyOf(factories);
+    }
+
+    private static List<AudioStage.Factory> factories(AiAgentConfig config, List<AudioSink> sinks,
+                                                      List<VoiceActivityListener> listeners) {
+        List<AudioStage.Factory> factories = new ArrayList<>(config.getPipeline().size());
+        for (String name : config.getPipeline()) {
+            factories.add(AudioStages.of(name, config, sinks, listeners));
+        }
+        return factories;
+    }
+
+    @Override
+    public void onStart(AudioStream stream) {
+        stream.attach(open(stream));
+    }
+
+    @Override
+    public void process(AudioStream stream, AudioFrame frame) throws Exception {
+        AudioStage[] stages = stream.attachment();
+        if (stages == null) {
+            stages = open(stream);
+            stream.attach(stages);
+        }
+        ShortBuffer samples = frame.samples();
+        for (AudioStage stage : stages) {
+            samples = stage.process(stream, samples);
+            if (samples == null) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onStop(AudioStream stream) {
+        AudioStage[] stages = stream.attachment();
+        if (stages != null) {
+            for (AudioStage stage : stages) {
+                stage.close();
+            }
+        }
+    }
+
+    private AudioStage[] open(AudioStream stream) {
+        AudioStage[] stages = new AudioStage[factories.size()];
+        AudioStage.Format format = input;
+        for (int i = 0; i < stages.length; i++) {
+            AudioStage.Factory factory = factories.get(i);
+            stages[i] = factory.create(stream, format);
+            format = factory.output(format);
+        }
+        return stages;
+    }
+}
@@ -0,0 +1,272 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一路 AI 通话的回放抖动缓冲：AI 后端成段写入的 TTS 音频先进环形缓冲区，
+ * 由 AudioPlayoutScheduler 每 frameMillis 取一帧匀速发回 FreeSWITCH。
+ * 开始回放前先攒够目标延迟；回放中缓冲区被取空记一次欠载并把目标延迟加一帧，
+ * 连续 ADAPT_TICKS 帧平稳回放后减一帧，在 [minMillis, maxMillis] 间自适应。
+ * 缓冲区写满时丢弃最旧的样本（记过载），保证回放延迟有上限；来电方开口说话（barge-in）时整体清空
+ */
+public final class AudioPlayout {
+
+    /** 连续平稳回放多少帧后尝试降低目标延迟 */
+    static final int ADAPT_TICKS = 250;
+
+    /**
+     * 帧的发送方式，在回放节拍线程上调用，不能阻塞；frame 只在调用期间有效，需要异步发送时先拷贝。
+     * 返回 false 表示本次没有发出（如上一帧仍在发送）
+     */
+    @FunctionalInterface
+    public interface Sender {
+        boolean trySend(ByteBuffer frame) throws Exception;
+    }
+
+    private final Sender sender;
+    private final int sampleRate;
+    private final int frameSamples;
+    private final int minSamples;
+    private final int maxSamples;
+    private final short[] ring;
+    private final ByteBuffer out;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** 累计写入和读出的样本序号，差值即缓冲的样本数 */
+    private long writeIndex;
+    private long readIndex;
+    private boolean playing;
+    private boolean finished;
+    private int targetSamples;
+    private int stableTicks;
+
+    private volatile long framesPlayed;
+    private volatile long underruns;
+    private volatile long overruns;
+    private volatile long overrunSamples;
+    private volatile long bargeIns;
+    private volatile long flushedSamples;
+    private volatile long sendFailures;
+
+    public AudioPlayout(Sender sender, int sampleRate, int frameMillis, int bufferMillis, int minMillis, int maxMillis) {
+        this.sender = sender;
+        this.sampleRate = sampleRate;
+        this.frameSamples = sampleRate * frameMillis / 1000;
+        this.minSamples = Math.max(frameSamples, sampleRate * minMillis / 1000);
+        this.maxSamples = Math.max(minSamples, sampleRate * maxMillis / 1000);
+        this.ring = new short[Math.max(maxSamples + frameSamples, sampleRate * bufferMillis / 1000)];
+        this.out = ByteBuffer.allocateDirect(frameSamples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        this.targetSamples = minSamples;
+    }
+
+    /**
+     * 写入一段回放音频（16 bit 样本），超出缓冲区容量时丢弃最旧的样本
+     */
+    public void write(ShortBuffer samples) {
+        lock.lock();
+        try {
+            int skip = reserve(samples.remaining());
+            int n = samples.remaining() - skip;
+            int offset = samples.position() + skip;
+            int start = (int) (writeIndex % ring.length);
+            int first = Math.min(n, ring.length - start);
+            samples.get(offset, ring, start, first);
+            samples.get(offset + first, ring, 0, n - first);
+            writeIndex += n;
+            finished = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入一段小端 PCM 字节（TTS 返回的原始格式），奇数字节的末尾半个样本忽略
+     */
+    public void write(ByteBuffer pcm) {
+        lock.lock();
+        try {
+            int skip = reserve(pcm.remaining() / 2);
+            int n = pcm.remaining() / 2 - skip;
+            int base = pcm.position() + skip * 2;
+            boolean little = pcm.order() == ByteOrder.LITTLE_ENDIAN;
+            for (int i = 0; i < n; i++) {
+                short sample = pcm.getShort(base + i * 2);
+                ring[(int) ((writeIndex + i) % ring.length)] = little ? sample : Short.reverseBytes(sample);
+            }
+            writeIndex += n;
+            finished = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前这段回放已全部写入：剩余样本（含不足一帧的尾巴）照常放完，放空时不计欠载
+     */
+    public void finish() {
+        lock.lock();
+        try {
+            finished = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * barge-in：丢弃所有尚未回放的音频，回到缓冲状态
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long buffered = writeIndex - readIndex;
+            if (buffered > 0 || playing) {
+                bargeIns++;
+                flushedSamples += buffered;
+            }
+            readIndex = writeIndex;
+            playing = false;
+            finished = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 由调度线程每帧调用一次，有可回放的数据时发送一帧
+     */
+    boolean tick() throws Exception {
+        lock.lock();
+        try {
+            int count = nextFrame();
+            if (count == 0) {
+                return false;
+            }
+            out.clear();
+            for (int i = 0; i < count; i++) {
+                out.putShort(ring[(int) ((readIndex + i) % ring.length)]);
+            }
+            out.flip();
+            readIndex += count;
+            framesPlayed++;
+        } finally {
+            lock.unlock();
+        }
+        // 交付在锁外；out 只由调度线程使用
+        if (!sender.trySend(out)) {
+            sendFailures++;
+        }
+        return true;
+    }
+
+    /**
+     * 推进回放状态，返回本帧要发送的样本数，0 表示本帧不发送
+     */
+    private int nextFrame() {
+        long buffered = writeIndex - readIndex;
+        if (!playing) {
+            if (buffered >= targetSamples || (finished && buffered > 0)) {
+                playing = true;
+            } else {
+                return 0;
+            }
+        }
+        if (buffered >= frameSamples) {
+            if (++stableTicks >= ADAPT_TICKS && targetSamples > minSamples) {
+                targetSamples = Math.max(minSamples, targetSamples - frameSamples);
+                stableTicks = 0;
+            }
+            return frameSamples;
+        }
+        if (finished) {
+            // 一段回放正常结束
+            playing = false;
+            finished = false;
+            return (int) buffered;
+        }
+        // 数据没跟上：回到缓冲状态并提高目标延迟，不足一帧的样本留到下次
+        underruns++;
+        playing = false;
+        stableTicks = 0;
+        targetSamples = Math.min(maxSamples, targetSamples + frameSamples);
+        return 0;
+    }
+
+    /**
+     * 为 requested 个样本腾出空间：缓冲区放不下时丢弃最旧的样本，单段超过容量时只保留其最后 ring.length 个样本，
+     * 返回需要跳过的新样本数
+     */
+    private int reserve(int requested) {
+        int skip = Math.max(0, requested - ring.length);
+        long overflow = writeIndex - readIndex + requested - skip - ring.length;
+        if (overflow > 0) {
+            readIndex += overflow;
+        }
+        if (skip > 0 || overflow > 0) {
+            overruns++;
+            overrunSamples += skip + Math.max(0, overflow);
+        }
+        return skip;
+    }
+
+    public int bufferedMillis() {
+        lock.lock();
+        try {
+            return (int) ((writeIndex - readIndex) * 1000 / sampleRate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int targetMillis() {
+        lock.lock();
+        try {
+            return targetSamples * 1000 / sampleRate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPlaying() {
+        lock.lock();
+        try {
+            return playing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacityMillis() {
+        return (int) ((long) ring.length * 1000 / sampleRate);
+    }
+
+    public long framesPlayed() {
+        return framesPlayed;
+    }
+
+    public long underruns() {
+        return underruns;
+    }
+
+    public long overruns() {
+        return overruns;
+    }
+
+    public long overrunSamples() {
+        return overrunSamples;
+    }
+
+    public long bargeIns() {
+        return bargeIns;
+    }
+
+    public long flushedSamples() {
+        return flushedSamples;
+    }
+
+    public long sendFailures() {
+        return sendFailures;
+    }
+}
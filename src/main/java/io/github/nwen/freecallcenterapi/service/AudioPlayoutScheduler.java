@@ -0,0 +1,122 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 所有 AI 通话共用的回放节拍：一个平台线程按绝对时间点每 playoutFrameMillis 唤醒一次，
+ * 依次让各通话的 AudioPlayout 交出一帧，节拍不随处理耗时漂移，也不必为每路通话各开一个定时线程。
+ * 这个线程只负责计时和拷贝，实际的网络发送在各通话自己的虚拟线程上（见 AudioStream.trySend），一路对端卡住不影响其他通话的节拍。
+ * 同时作为 VoiceActivityListener，来电方开口说话时清空该通话尚未播放的音频（barge-in）
+ */
+@Slf4j
+@Component
+public class AudioPlayoutScheduler implements VoiceActivityListener {
+
+    /** 落后超过这么多个节拍（如长时间 GC）时不再追赶，从当前时间重新计时 */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    private final AiAgentConfig config;
+    private final long periodNanos;
+    /** 通话接入和挂断不必复制整个集合，调度线程按弱一致性遍历 */
+    private final Set<AudioPlayout> playouts = ConcurrentHashMap.newKeySet();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder lateTicks = new LongAdder();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public AudioPlayoutScheduler(AiAgentConfig config) {
+        this.config = config;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(config.getPlayoutFrameMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("audio-playout").start(this::run);
+    }
+
+    /**
+     * 为一路通话创建并登记回放缓冲，环形缓冲区按 AiAgentConfig.sampleRate 和 playoutBufferMillis 分配
+     */
+    public AudioPlayout register(AudioStream stream) {
+        AudioPlayout playout = new AudioPlayout(stream::trySend, config.getSampleRate(), config.getPlayoutFrameMillis(),
+                config.getPlayoutBufferMillis(), config.getJitterMinMillis(), config.getJitterMaxMillis());
+        playouts.add(playout);
+        return playout;
+    }
+
+    public void unregister(AudioPlayout playout) {
+        if (playout != null) {
+            playouts.remove(playout);
+        }
+    }
+
+    @Override
+    public void onSpeechStart(AudioStream stream) {
+        AudioPlayout playout = stream.playout();
+        // 还在预缓冲、尚未开始播放的音频同样要丢弃，否则来电方说完后仍会听到这段旧回复
+        if (config.isBargeIn() && playout != null && (playout.bufferedMillis() > 0 || playout.isPlaying())) {
+            log.debug("barge-in，清空待播放音频: callId={}, bufferedMillis={}", stream.callId(), playout.bufferedMillis());
+            playout.flush();
+        }
+    }
+
+    private void run() {
+        long deadline = System.nanoTime() + periodNanos;
+        while (running) {
+            long wait = deadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            if (-wait > periodNanos * MAX_CATCH_UP_TICKS) {
+                lateTicks.increment();
+                deadline = System.nanoTime();
+            }
+            deadline += periodNanos;
+            ticks.increment();
+            for (AudioPlayout playout : playouts) {
+                try {
+                    playout.tick();
+                } catch (Exception e) {
+                    log.warn("回放帧发送失败: error={}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int activePlayouts() {
+        return playouts.size();
+    }
+
+    public long ticks() {
+        return ticks.sum();
+    }
+
+    public long lateTicks() {
+        return lateTicks.sum();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.nwen.freecallcenterapi.service;
+
+/**
+ * 通话音频处理器，由 AiAgentConfig.processor 按 bean 名称选择（echoProcessor、pipelineProcessor 或自定义 bean）。
+ * 同一路通话的帧在该通话自己的虚拟线程上按顺序回调；frame 的字节和样本视图都是只读的，
+ * 只在 process 调用期间有效，返回后即被回收复用，需要保留的数据必须自行拷贝
+ */
+public interface AudioProcessor {
+
+    default void onStart(AudioStream stream) throws Exception {
+    }
+
+    void process(AudioStream stream, AudioFrame frame) throws Exception;
+
+    default void onStop(AudioStream stream) {
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.nio.ShortBuffer;
+
+/**
+ * 音频流水线 forward 阶段的下游（如 ASR、录音），按 bean 注入 pipelineProcessor。
+ * samples 为只读视图，只在回调期间有效，需要保留的数据必须自行拷贝；回调在通话的处理线程上执行，不应阻塞
+ */
+public interface AudioSink {
+
+    void accept(AudioStream stream, ShortBuffer samples, int sampleRate) throws Exception;
+}
@@ -0,0 +1,35 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.nio.ShortBuffer;
+
+/**
+ * AudioPipeline 中的一个处理阶段（重采样、VAD、增益、回声、转发等）。
+ * 每路通话由 Factory 创建独立的实例，状态和输出缓冲区都在创建时分配，process 期间不再分配内存
+ */
+public interface AudioStage {
+
+    /**
+     * @param samples 上一阶段输出的只读样本（position 到 limit），只在本次调用期间有效
+     * @return 交给下一阶段的样本：原样返回 samples，或本阶段预分配缓冲区的只读视图；返回 null 表示本帧不再往后传
+     */
+    ShortBuffer process(AudioStream stream, ShortBuffer samples) throws Exception;
+
+    default void close() {
+    }
+
+    interface Factory {
+
+        AudioStage create(AudioStream stream, Format input);
+
+        /** 本阶段输出的格式，重采样等会改变采样率和每帧样本数 */
+        default Format output(Format input) {
+            return input;
+        }
+    }
+
+    /**
+     * 阶段输入/输出的格式：采样率和单帧最大样本数（用于预分配输出缓冲区）
+     */
+    record Format(int sampleRate, int maxSamples) {
+    }
+}
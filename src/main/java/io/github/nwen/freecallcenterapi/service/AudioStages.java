@@ -0,0 +1,182 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+/**
+ * 内置的音频流水线阶段，AiAgentConfig.pipeline 中按名称引用：resample、vad、gain、echo、forward
+ */
+public final class AudioStages {
+
+    private AudioStages() {
+    }
+
+    static AudioStage.Factory of(String name, AiAgentConfig config, List<AudioSink> sinks,
+                                 List<VoiceActivityListener> listeners) {
+        return switch (name) {
+            case "resample" -> resample(config.getResampleRate());
+            case "vad" -> vad(VoiceActivityDetector.Settings.from(config), listeners);
+            case "gain" -> gain(config.getGain());
+            case "echo" -> echo();
+            case "forward" -> forward(sinks);
+            default -> throw new IllegalStateException("不支持的音频处理阶段: " + name);
+        };
+    }
+
+    /**
+     * 线性插值重采样到 targetRate，跨帧保留上一帧末样本和插值相位，帧边界不产生断点
+     */
+    public static AudioStage.Factory resample(int targetRate) {
+        return new AudioStage.Factory() {
+            @Override
+            public AudioStage create(AudioStream stream, AudioStage.Format input) {
+                if (input.sampleRate() == targetRate) {
+                    return (s, samples) -> samples;
+                }
+                return new Resampler((double) input.sampleRate() / targetRate, output(input).maxSamples());
+            }
+
+            @Override
+            public AudioStage.Format output(AudioStage.Format input) {
+                int maxSamples = (int) Math.ceil((double) input.maxSamples() * targetRate / input.sampleRate()) + 2;
+                return new AudioStage.Format(targetRate, maxSamples);
+            }
+        };
+    }
+
+    /**
+     * 语音活动检测：静音帧不再往后传，语音开始/结束时通知 listeners，见 VoiceActivityDetector。
+     * 语音开始的那一帧带着 pre-roll，最多为 startFrames 帧长
+     */
+    public static AudioStage.Factory vad(VoiceActivityDetector.Settings settings, List<VoiceActivityListener> listeners) {
+        List<VoiceActivityListener> targets = List.copyOf(listeners);
+        return new AudioStage.Factory() {
+            @Override
+            public AudioStage create(AudioStream stream, AudioStage.Format input) {
+                return new VoiceActivityDetector(settings, targets, input);
+            }
+
+            @Override
+            public AudioStage.Format output(AudioStage.Format input) {
+                return new AudioStage.Format(input.sampleRate(), input.maxSamples() * Math.max(1, settings.startFrames()));
+            }
+        };
+    }
+
+    /**
+     * 线性增益，溢出时饱和到 16 bit 范围；factor 为 1 时原样透传
+     */
+    public static AudioStage.Factory gain(double factor) {
+        return (stream, input) -> factor == 1.0 ? (s, samples) -> samples : new Gain(factor, input.maxSamples());
+    }
+
+    /**
+     * 把当前样本编码为小端 PCM 发回 FreeSWITCH，样本原样传给下一阶段
+     */
+    public static AudioStage.Factory echo() {
+        return (stream, input) -> new Echo(input.maxSamples());
+    }
+
+    /**
+     * 把当前样本交给各个 AudioSink，样本原样传给下一阶段
+     */
+    public static AudioStage.Factory forward(List<AudioSink> sinks) {
+        AudioSink[] targets = sinks.toArray(new AudioSink[0]);
+        return (stream, input) -> (s, samples) -> {
+            int position = samples.position();
+            int limit = samples.limit();
+            for (AudioSink sink : targets) {
+                sink.accept(s, samples, input.sampleRate());
+                samples.limit(limit).position(position);
+            }
+            return samples;
+        };
+    }
+
+    private static short clamp(long value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    static final class Resampler implements AudioStage {
+
+        /** 每个输出样本前进的输入样本数 */
+        private final double step;
+        private final ShortBuffer out;
+        private final ShortBuffer view;
+        /** 下一个输出样本在本帧输入中的位置，落在 [-1, 0) 时在上一帧末样本和本帧首样本之间插值 */
+        private double position;
+        private short previous;
+
+        Resampler(double step, int maxSamples) {
+            this.step = step;
+            this.out = ShortBuffer.allocate(maxSamples);
+            this.view = out.asReadOnlyBuffer();
+        }
+
+        @Override
+        public ShortBuffer process(AudioStream stream, ShortBuffer samples) {
+            int base = samples.position();
+            int n = samples.remaining();
+            int count = 0;
+            if (n > 0) {
+                while (position < n - 1) {
+                    int index = (int) Math.floor(position);
+                    double fraction = position - index;
+                    int a = index < 0 ? previous : samples.get(base + index);
+                    int b = samples.get(base + index + 1);
+                    out.put(count++, (short) Math.round(a + (b - a) * fraction));
+                    position += step;
+                }
+                position -= n;
+                previous = samples.get(base + n - 1);
+            }
+            return view.limit(count).position(0);
+        }
+    }
+
+    static final class Gain implements AudioStage {
+
+        private final double factor;
+        private final ShortBuffer out;
+        private final ShortBuffer view;
+
+        Gain(double factor, int maxSamples) {
+            this.factor = factor;
+            this.out = ShortBuffer.allocate(maxSamples);
+            this.view = out.asReadOnlyBuffer();
+        }
+
+        @Override
+        public ShortBuffer process(AudioStream stream, ShortBuffer samples) {
+            int base = samples.position();
+            int n = samples.remaining();
+            for (int i = 0; i < n; i++) {
+                out.put(i, clamp(Math.round(samples.get(base + i) * factor)));
+            }
+            return view.limit(n).position(0);
+        }
+    }
+
+    static final class Echo implements AudioStage {
+
+        private final ByteBuffer out;
+
+        Echo(int maxSamples) {
+            this.out = ByteBuffer.allocateDirect(maxSamples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public ShortBuffer process(AudioStream stream, ShortBuffer samples) throws Exception {
+            out.clear();
+            for (int i = samples.position(), end = samples.limit(); i < end; i++) {
+                out.putShort(samples.get(i));
+            }
+            stream.send(out.flip());
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.dto.AudioStreamStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一路通话的音频流（对应一条 mod_audio_stream WebSocket 连接）。
+ * 接收线程把帧写入池化缓冲区并放入有界队列，通话自己的虚拟线程按顺序取出交给 AudioProcessor，
+ * 回放帧由另一个虚拟线程发送；
+ * 计数器由接收线程和处理线程各自单写，统计读取时不加锁
+ */
+@Slf4j
+public final class AudioStream {
+
+    private final String callId;
+    private final WebSocketSession session;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    final ArrayBlockingQueue<AudioFrame> queue;
+    volatile boolean closed;
+    Thread worker;
+
+    /** 正在拼装的帧（WebSocket 分片消息），只由接收线程访问 */
+    AudioFrame assembling;
+    boolean discarding;
+
+    final LongAdder framesReceived = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder droppedQueueFull = new LongAdder();
+    final LongAdder droppedNoBuffer = new LongAdder();
+    final LongAdder droppedOversize = new LongAdder();
+    final LongAdder framesSent = new LongAdder();
+    final LongAdder processErrors = new LongAdder();
+
+    /** 回放抖动缓冲，由 AudioStreamServer 在连接建立时登记，离线流为空 */
+    AudioPlayout playout;
+    /** 回放帧的发送线程和待发送槽，见 trySend */
+    Thread playoutSender;
+    private ByteBuffer playoutFrame;
+    private volatile boolean playoutPending;
+    final LongAdder playoutSendErrors = new LongAdder();
+
+    /** 处理器为本通话保存的状态（如流水线各阶段实例），只由处理线程访问 */
+    private Object attachment;
+
+    volatile long framesProcessed;
+    volatile long latencySumNanos;
+    volatile long maxLatencyNanos;
+
+    /** 语音活动检测的计数，只由处理线程写入 */
+    volatile long vadFrames;
+    volatile long suppressedFrames;
+    volatile long speechSegments;
+    private volatile boolean speaking;
+
+    AudioStream(String callId, WebSocketSession session, int queueFrames) {
+        this.callId = callId;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(queueFrames);
+    }
+
+    /**
+     * 不关联 WebSocket 连接的流，send 直接丢弃，用于离线处理和基准测试
+     */
+    public static AudioStream detached(String callId) {
+        return new AudioStream(callId, null, 1);
+    }
+
+    public String callId() {
+        return callId;
+    }
+
+    public String sessionId() {
+        return session != null ? session.getId() : null;
+    }
+
+    public boolean isOpen() {
+        return !closed && (session == null || session.isOpen());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T attachment() {
+        return (T) attachment;
+    }
+
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * 回放缓冲：AI 返回的音频写到这里，由 AudioPlayoutScheduler 按 20 ms 节拍匀速发回，不要直接调用 send
+     */
+    public AudioPlayout playout() {
+        return playout;
+    }
+
+    /** vad 阶段当前是否判定为语音中 */
+    public boolean isSpeaking() {
+        return speaking;
+    }
+
+    /**
+     * 向 FreeSWITCH 回送一帧音频，发送完成前阻塞；payload 从 position 读到 limit
+     */
+    public void send(ByteBuffer payload) throws IOException {
+        if (session == null) {
+            return;
+        }
+        sendLock.lock();
+        try {
+            session.sendMessage(new BinaryMessage(payload, true));
+            framesSent.increment();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * 回放节拍线程使用，从不阻塞：把帧拷进本通话的待发送槽后交给回放发送线程；
+     * 上一帧仍在发送（对端 TCP 窗口满等）时返回 false，本帧记为发送失败，只影响这一路通话
+     */
+    boolean trySend(ByteBuffer payload) {
+        if (session == null) {
+            return true;
+        }
+        if (playoutPending) {
+            return false;
+        }
+        // 只有节拍线程写入待发送槽，playoutPending 为 false 时发送线程不会读取
+        if (playoutFrame == null || playoutFrame.capacity() < payload.remaining()) {
+            playoutFrame = ByteBuffer.allocateDirect(payload.remaining());
+        }
+        playoutFrame.clear();
+        playoutFrame.put(payload).flip();
+        playoutPending = true;
+        LockSupport.unpark(playoutSender);
+        return true;
+    }
+
+    /**
+     * 回放发送线程（每路通话一个虚拟线程）：等待 trySend 放入的帧并阻塞发送，连接关闭后退出
+     */
+    void runPlayoutSender() {
+        while (!closed) {
+            if (!playoutPending) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                send(playoutFrame);
+            } catch (IOException e) {
+                playoutSendErrors.increment();
+                if (playoutSendErrors.sum() == 1) {
+                    log.warn("回放帧发送失败: callId={}, error={}", callId, e.getMessage());
+                }
+            } finally {
+                playoutPending = false;
+            }
+        }
+    }
+
+    void recordLatency(long nanos) {
+        // 只有处理线程写入
+        framesProcessed++;
+        latencySumNanos += nanos;
+        if (nanos > maxLatencyNanos) {
+            maxLatencyNanos = nanos;
+        }
+    }
+
+    void recordVoiceActivity(boolean suppressed, boolean speaking) {
+        vadFrames++;
+        if (suppressed) {
+            suppressedFrames++;
+        }
+        this.speaking = speaking;
+    }
+
+    /**
+     * VAD 暂存的帧最终被丢弃时补记为静音帧（暂存时已计入 vadFrames）
+     */
+    void recordSuppressed(int frames) {
+        suppressedFrames += frames;
+    }
+
+    void speechSegmentStarted() {
+        speechSegments++;
+    }
+
+    long framesDropped() {
+        return droppedQueueFull.sum() + droppedNoBuffer.sum() + droppedOversize.sum();
+    }
+
+    AudioStreamStats getStats() {
+        long processed = framesProcessed;
+        long vad = vadFrames;
+        long suppressed = suppressedFrames;
+        return AudioStreamStats.builder()
+                .callId(callId)
+                .sessionId(sessionId())
+                .startedAt(startedAt)
+                .framesReceived(framesReceived.sum())
+                .bytesReceived(bytesReceived.sum())
+                .framesProcessed(processed)
+                .framesSent(framesSent.sum())
+                .framesDropped(framesDropped())
+                .droppedQueueFull(droppedQueueFull.sum())
+                .droppedNoBuffer(droppedNoBuffer.sum())
+                .droppedOversize(droppedOversize.sum())
+                .processErrors(processErrors.sum())
+                .queuedFrames(queue.size())
+                .avgLatencyMicros(processed == 0 ? 0 : latencySumNanos / processed / 1000)
+                .maxLatencyMicros(maxLatencyNanos / 1000)
+                .vadFrames(vad)
+                .suppressedFrames(suppressed)
+                .suppressedRatio(vad == 0 ? 0 : Math.round(10000.0 * suppressed / vad) / 10000.0)
+                .speechSegments(speechSegments)
+                .speaking(speaking)
+                .playoutBufferedMillis(playout != null ? playout.bufferedMillis() : 0)
+                .playoutTargetMillis(playout != null ? playout.targetMillis() : 0)
+                .playoutFrames(playout != null ? playout.framesPlayed() : 0)
+                .playoutUnderruns(playout != null ? playout.underruns() : 0)
+                .playoutOverruns(playout != null ? playout.overruns() : 0)
+                .bargeIns(playout != null ? playout.bargeIns() : 0)
+                .playoutBusyFrames(playout != null ? playout.sendFailures() : 0)
+                .playoutSendErrors(playoutSendErrors.sum())
+                .build();
+    }
+}
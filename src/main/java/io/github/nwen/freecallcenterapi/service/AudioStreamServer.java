@@ -0,0 +1,252 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import io.github.nwen.freecallcenterapi.dto.AudioServerStats;
+import io.github.nwen.freecallcenterapi.dto.AudioStreamStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 内置的 mod_audio_stream WebSocket 音频服务（端点注册见 AudioWebSocketConfig）。
+ * 接收线程只把二进制帧（含分片消息）拷进 AudioBufferPool 的直接内存缓冲区并入队，
+ * 每路通话一个虚拟线程按顺序交给 AiAgentConfig.processor 指定的 AudioProcessor，
+ * 慢处理器只会让本通话的队列满而丢帧，不会拖住接收线程和其他通话
+ */
+@Slf4j
+@Component
+public class AudioStreamServer extends BinaryWebSocketHandler {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final AiAgentConfig config;
+    private final String processorName;
+    private final AudioProcessor processor;
+    private final AudioBufferPool bufferPool;
+    private final AudioPlayoutScheduler playoutScheduler;
+    /** WebSocket 会话 ID → 音频流 */
+    private final Map<String, AudioStream> streams = new ConcurrentHashMap<>();
+
+    private final LongAdder totalStreams = new LongAdder();
+    private final LongAdder closedFramesReceived = new LongAdder();
+    private final LongAdder closedFramesDropped = new LongAdder();
+    private final LongAdder closedVadFrames = new LongAdder();
+    private final LongAdder closedSuppressedFrames = new LongAdder();
+    private final LongAdder closedUnderruns = new LongAdder();
+    private final LongAdder closedOverruns = new LongAdder();
+
+    public AudioStreamServer(AiAgentConfig config, Map<String, AudioProcessor> processors,
+                             AudioPlayoutScheduler playoutScheduler) {
+        this.config = config;
+        this.playoutScheduler = playoutScheduler;
+        this.processorName = config.getProcessor();
+        this.processor = processors.get(processorName);
+        if (processor == null) {
+            throw new IllegalStateException("未找到音频处理器: " + processorName + ", 可用: " + processors.keySet());
+        }
+        this.bufferPool = new AudioBufferPool(config.getBufferPoolSize(), config.getMaxFrameBytes());
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        String callId = resolveCallId(session);
+        AudioStream stream = new AudioStream(callId, session, config.getStreamQueueFrames());
+        stream.playout = playoutScheduler.register(stream);
+        streams.put(session.getId(), stream);
+        totalStreams.increment();
+        stream.worker = Thread.ofVirtual().name("audio-stream-" + callId).start(() -> run(stream));
+        stream.playoutSender = Thread.ofVirtual().name("audio-playout-" + callId).start(stream::runPlayoutSender);
+        log.info("AI audio stream 已连接: callId={}, session={}, remote={}",
+                callId, session.getId(), session.getRemoteAddress());
+    }
+
+    /**
+     * 分片到达的消息依次写入同一个池化缓冲区，最后一片到达时整帧入队；
+     * Tomcat 的 payload 缓冲区在回调返回后复用，这里只做一次 put 到直接内存，不产生 byte[]
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        AudioStream stream = streams.get(session.getId());
+        if (stream == null) {
+            return;
+        }
+        ByteBuffer payload = message.getPayload();
+        stream.bytesReceived.add(payload.remaining());
+        if (!stream.discarding) {
+            AudioFrame frame = stream.assembling;
+            if (frame == null) {
+                frame = bufferPool.acquire();
+                if (frame == null) {
+                    stream.droppedNoBuffer.increment();
+                    stream.discarding = true;
+                }
+                stream.assembling = frame;
+            }
+            if (frame != null) {
+                if (payload.remaining() > frame.buffer.remaining()) {
+                    stream.droppedOversize.increment();
+                    stream.discarding = true;
+                    stream.assembling = null;
+                    bufferPool.release(frame);
+                } else {
+                    frame.buffer.put(payload);
+                }
+            }
+        }
+        if (!message.isLast()) {
+            return;
+        }
+        stream.framesReceived.increment();
+        AudioFrame frame = stream.assembling;
+        stream.assembling = null;
+        stream.discarding = false;
+        if (frame == null) {
+            return;
+        }
+        frame.complete(System.nanoTime());
+        if (!stream.queue.offer(frame)) {
+            stream.droppedQueueFull.increment();
+            bufferPool.release(frame);
+        }
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("AI audio stream 传输异常: session={}, error={}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        AudioStream stream = streams.remove(session.getId());
+        if (stream == null) {
+            return;
+        }
+        stream.closed = true;
+        playoutScheduler.unregister(stream.playout);
+        LockSupport.unpark(stream.playoutSender);
+        if (stream.assembling != null) {
+            bufferPool.release(stream.assembling);
+            stream.assembling = null;
+        }
+        closedFramesReceived.add(stream.framesReceived.sum());
+        closedFramesDropped.add(stream.framesDropped());
+        closedVadFrames.add(stream.vadFrames);
+        closedSuppressedFrames.add(stream.suppressedFrames);
+        closedUnderruns.add(stream.playout.underruns());
+        closedOverruns.add(stream.playout.overruns());
+        log.info("AI audio stream 已断开: callId={}, status={}, frames={}, dropped={}",
+                stream.callId(), status, stream.framesReceived.sum(), stream.framesDropped());
+    }
+
+    private void run(AudioStream stream) {
+        try {
+            processor.onStart(stream);
+        } catch (Exception e) {
+            log.warn("音频处理器启动失败: callId={}, error={}", stream.callId(), e.getMessage());
+        }
+        try {
+            while (!stream.closed || !stream.queue.isEmpty()) {
+                AudioFrame frame = stream.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    process(stream, frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            AudioFrame frame;
+            while ((frame = stream.queue.poll()) != null) {
+                bufferPool.release(frame);
+            }
+            processor.onStop(stream);
+        }
+    }
+
+    private void process(AudioStream stream, AudioFrame frame) {
+        try {
+            if (stream.isOpen()) {
+                processor.process(stream, frame);
+            }
+        } catch (Exception e) {
+            stream.processErrors.increment();
+            if (stream.processErrors.sum() == 1) {
+                log.warn("音频帧处理失败: callId={}, error={}", stream.callId(), e.getMessage());
+            }
+        } finally {
+            stream.recordLatency(System.nanoTime() - frame.receivedNanos);
+            bufferPool.release(frame);
+        }
+    }
+
+    /**
+     * wsPath/{callId} 形式的连接以路径末段作为通话 UUID（见 AiAgentConfig.appendCallIdToWsUrl），否则退回会话 ID
+     */
+    private String resolveCallId(WebSocketSession session) {
+        URI uri = session.getUri();
+        String prefix = config.getWsPath() + "/";
+        if (uri != null && uri.getPath() != null) {
+            String path = uri.getPath();
+            int index = path.lastIndexOf(prefix);
+            if (index >= 0 && index + prefix.length() < path.length()) {
+                return path.substring(index + prefix.length());
+            }
+        }
+        return session.getId();
+    }
+
+    public AudioServerStats getStats() {
+        List<AudioStreamStats> streamStats = new ArrayList<>(streams.size());
+        long framesReceived = closedFramesReceived.sum();
+        long framesDropped = closedFramesDropped.sum();
+        long vadFrames = closedVadFrames.sum();
+        long suppressedFrames = closedSuppressedFrames.sum();
+        long underruns = closedUnderruns.sum();
+        long overruns = closedOverruns.sum();
+        for (AudioStream stream : streams.values()) {
+            AudioStreamStats stats = stream.getStats();
+            streamStats.add(stats);
+            framesReceived += stats.getFramesReceived();
+            framesDropped += stats.getFramesDropped();
+            vadFrames += stats.getVadFrames();
+            suppressedFrames += stats.getSuppressedFrames();
+            underruns += stats.getPlayoutUnderruns();
+            overruns += stats.getPlayoutOverruns();
+        }
+        return AudioServerStats.builder()
+                .processor(processorName)
+                .activeStreams(streamStats.size())
+                .totalStreams(totalStreams.sum())
+                .frameBytes(bufferPool.frameBytes())
+                .bufferPoolCapacity(bufferPool.capacity())
+                .buffersAvailable(bufferPool.available())
+                .framesReceived(framesReceived)
+                .framesDropped(framesDropped)
+                .vadFrames(vadFrames)
+                .suppressedFrames(suppressedFrames)
+                .suppressedRatio(vadFrames == 0 ? 0 : Math.round(10000.0 * suppressedFrames / vadFrames) / 10000.0)
+                .playoutUnderruns(underruns)
+                .playoutOverruns(overruns)
+                .playoutTicks(playoutScheduler.ticks())
+                .playoutLateTicks(playoutScheduler.lateTicks())
+                .streams(streamStats)
+                .build();
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.dto.CallRecordQuery;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * 通话记录导出
+ * 通过服务端游标（fetchSize）逐行读取，边读边写入响应流，内存占用与导出行数无关。
+ * 筛选条件与列表接口相同，按 (created_at, id) 升序输出。
+ */
+@Slf4j
+@Service
+public class CallRecordExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format of(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("不支持的导出格式: " + value);
+            }
+        }
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER = "id,call_id,caller_number,callee_number,direction,status,start_time,"
+            + "answer_time,end_time,duration_seconds,extension_id,recording_url,created_at\n";
+
+    private final CallRecordService callRecordService;
+    private final CallRecordRepository callRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public CallRecordExportService(CallRecordService callRecordService, CallRecordRepository callRecordRepository,
+                                   ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.callRecordService = callRecordService;
+        this.callRecordRepository = callRecordRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void export(CallRecordQuery query, Format format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = null;
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+        } else {
+            json = objectMapper.getFactory().createGenerator(writer);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            json.setRootValueSeparator(null);
+        }
+        var wrapper = callRecordService.applyFilters(callRecordService.lambdaQuery(), query)
+                .orderByAsc(CallRecord::getCreatedAt)
+                .orderByAsc(CallRecord::getId)
+                .getWrapper();
+        long[] rows = {0};
+        JsonGenerator generator = json;
+        // PostgreSQL 游标按 fetchSize 分批拉取需要关闭自动提交，因此放在只读事务中
+        readOnlyTransaction.executeWithoutResult(status -> {
+            StringBuilder line = new StringBuilder(256);
+            try (Cursor<CallRecord> cursor = callRecordRepository.streamByWrapper(wrapper)) {
+                for (CallRecord record : cursor) {
+                    if (generator == null) {
+                        line.setLength(0);
+                        appendCsv(line, record);
+                        writer.append(line);
+                    } else {
+                        objectMapper.writeValue(generator, callRecordService.toResponse(record));
+                        generator.flush();
+                        writer.write('\n');
+                    }
+                    rows[0]++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        log.info("通话记录导出完成: format={}, rows={}, elapsedMs={}",
+                format, rows[0], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void appendCsv(StringBuilder line, CallRecord record) {
+        line.append(record.getId()).append(',');
+        appendText(line, record.getCallId()).append(',');
+        appendText(line, record.getCallerNumber()).append(',');
+        appendText(line, record.getCalleeNumber()).append(',');
+        appendText(line, record.getDirection()).append(',');
+        appendText(line, record.getStatus()).append(',');
+        appendTime(line, record.getStartTime()).append(',');
+        appendTime(line, record.getAnswerTime()).append(',');
+        appendTime(line, record.getEndTime()).append(',');
+        appendValue(line, record.getDurationSeconds()).append(',');
+        appendValue(line, record.getExtensionId()).append(',');
+        appendText(line, record.getRecordingUrl()).append(',');
+        appendTime(line, record.getCreatedAt()).append('\n');
+    }
+
+    /**
+     * RFC 4180：含逗号、引号或换行的字段加引号，引号双写
+     */
+    private static StringBuilder appendText(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static StringBuilder appendTime(StringBuilder line, LocalDateTime value) {
+        if (value != null) {
+            TIME_FORMAT.formatTo(value, line);
+        }
+        return line;
+    }
+
+    private static StringBuilder appendValue(StringBuilder line, Object value) {
+        return value == null ? line : line.append(value);
+    }
+}
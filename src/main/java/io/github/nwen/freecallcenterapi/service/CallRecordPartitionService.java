@@ -0,0 +1,262 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.CallRecordPartitionConfig;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPartitionStats;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * call_record 月度分区维护
+ * 分区表结构与 call_record_ensure_partition 见 001-create-tables.sql，这里按月预建分区，
+ * 并把超出保留期的分区 DETACH 后用 COPY 导出为 gzip 压缩的 CSV，再删除该分区。
+ * DETACH 不触发 call_record 上的汇总触发器，call_stats_hourly 中已归档月份的统计保持不变。
+ */
+@Slf4j
+@Service
+public class CallRecordPartitionService {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("call_record_p(\\d{6})");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String IS_PARTITIONED = """
+        SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('call_record'))
+        """;
+
+    private static final String LIST_PARTITIONS = """
+        SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound,
+               CAST(GREATEST(c.reltuples, 0) AS BIGINT) AS estimated_rows
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'call_record'::regclass
+        ORDER BY c.relname
+        """;
+
+    /** 卸载后尚未完成归档的分区（归档中途失败时遗留），下次维护时继续 */
+    private static final String LIST_DETACHED = """
+        SELECT relname FROM pg_class
+        WHERE relname ~ '^call_record_p[0-9]{6}$' AND relkind = 'r' AND NOT relispartition
+        ORDER BY relname
+        """;
+
+    /** 默认分区中出现的月份（写入了尚未建分区的月份，如很早的 CDR） */
+    private static final String DEFAULT_MONTHS = """
+        SELECT DISTINCT CAST(date_trunc('month', start_time) AS DATE) FROM call_record_default
+        """;
+
+    private final CallRecordPartitionConfig config;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder archived = new LongAdder();
+    private volatile LocalDateTime lastMaintenanceAt;
+    private volatile String lastError;
+
+    private volatile boolean running;
+    private Thread maintainer;
+
+    public CallRecordPartitionService(CallRecordPartitionConfig config, JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 在 DatabaseInitializer 建表或迁移之后启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        maintainer = Thread.ofVirtual().name("call-record-partition").start(this::runMaintainer);
+    }
+
+    private void runMaintainer() {
+        while (running) {
+            try {
+                maintain();
+            } catch (Exception e) {
+                log.warn("call_record 分区维护失败，下次重试: {}", e.getMessage());
+            }
+            try {
+                Thread.sleep(config.getMaintenanceIntervalMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED, Boolean.class));
+    }
+
+    /**
+     * 预建当前月起 premakeMonths 个月的分区、为默认分区中出现的月份建分区，并归档超出保留期的分区。
+     * 后台线程和手动触发串行执行
+     */
+    public synchronized CallRecordPartitionStats maintain() {
+        try {
+            if (!isPartitioned()) {
+                log.debug("call_record 不是分区表，跳过分区维护");
+                return getStats();
+            }
+            YearMonth current = YearMonth.now();
+            for (int i = 0; i <= config.getPremakeMonths(); i++) {
+                ensurePartition(current.plusMonths(i));
+            }
+            for (LocalDate month : jdbcTemplate.queryForList(DEFAULT_MONTHS, LocalDate.class)) {
+                ensurePartition(YearMonth.from(month));
+            }
+
+            for (String name : jdbcTemplate.queryForList(LIST_DETACHED, String.class)) {
+                archivePartition(name);
+            }
+            if (config.getRetentionMonths() > 0) {
+                YearMonth oldestKept = current.minusMonths(config.getRetentionMonths() - 1L);
+                for (String name : jdbcTemplate.query(LIST_PARTITIONS, (rs, i) -> rs.getString("relname"))) {
+                    Matcher matcher = PARTITION_NAME.matcher(name);
+                    if (matcher.matches() && YearMonth.parse(matcher.group(1), MONTH).isBefore(oldestKept)) {
+                        archivePartition(name);
+                    }
+                }
+            }
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            throw e;
+        } finally {
+            lastMaintenanceAt = LocalDateTime.now();
+        }
+        return getStats();
+    }
+
+    /**
+     * 建立该月分区，默认分区中属于该月的记录一并迁入；已存在时返回 false
+     */
+    boolean ensurePartition(YearMonth month) {
+        Boolean added = jdbcTemplate.queryForObject("SELECT call_record_ensure_partition(?)", Boolean.class,
+                month.atDay(1));
+        if (Boolean.TRUE.equals(added)) {
+            created.increment();
+            log.info("call_record 分区已创建: month={}", month);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 卸载（如仍挂载）并归档一个月度分区：导出为 gzip CSV 并 fsync 后，注销其中的 call_id 并删除该表
+     */
+    synchronized Path archivePartition(String name) {
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("不是月度分区: " + name);
+        }
+        long start = System.nanoTime();
+        Boolean attached = jdbcTemplate.queryForObject(
+                "SELECT relispartition FROM pg_class WHERE oid = to_regclass(?)", Boolean.class, name);
+        if (Boolean.TRUE.equals(attached)) {
+            jdbcTemplate.execute("ALTER TABLE call_record DETACH PARTITION " + name);
+        }
+        Path file;
+        long rows;
+        try {
+            file = archiveFile(name);
+            rows = export(name, file);
+        } catch (IOException e) {
+            throw new IllegalStateException("分区归档失败: " + name, e);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM call_record_key k USING " + name + " p WHERE k.call_id = p.call_id");
+            jdbcTemplate.execute("DROP TABLE " + name);
+        });
+        archived.increment();
+        log.info("call_record 分区已归档: partition={}, rows={}, file={}, elapsedMs={}",
+                name, rows, file, (System.nanoTime() - start) / 1_000_000);
+        return file;
+    }
+
+    private Path archiveFile(String name) throws IOException {
+        Path directory = Path.of(config.getArchiveDirectory());
+        Files.createDirectories(directory);
+        Path file = directory.resolve(name + ".csv.gz");
+        // 同一月份被再次建分区（迟到的旧 CDR）后再次归档时不覆盖之前的文件
+        return Files.exists(file) ? directory.resolve(name + "-" + System.currentTimeMillis() + ".csv.gz") : file;
+    }
+
+    /**
+     * COPY 导出到临时文件，落盘后原子改名，避免留下不完整的归档文件
+     */
+    private long export(String name, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long rows;
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), 1 << 16)) {
+            Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                try {
+                    return connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyOut("COPY " + name + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            rows = copied != null ? copied : 0;
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    public CallRecordPartitionStats getStats() {
+        boolean partitioned = isPartitioned();
+        List<CallRecordPartitionStats.Partition> partitions = partitioned
+                ? jdbcTemplate.query(LIST_PARTITIONS, (rs, i) -> new CallRecordPartitionStats.Partition(
+                        rs.getString("relname"), rs.getString("bound"), rs.getLong("estimated_rows")))
+                : List.of();
+        return CallRecordPartitionStats.builder()
+                .partitioned(partitioned)
+                .partitions(partitions)
+                .created(created.sum())
+                .archived(archived.sum())
+                .lastMaintenanceAt(lastMaintenanceAt)
+                .lastError(lastError)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (maintainer != null) {
+            maintainer.interrupt();
+        }
+    }
+}
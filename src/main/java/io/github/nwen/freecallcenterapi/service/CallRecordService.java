@@ -1,23 +1,42 @@
 package io.github.nwen.freecallcenterapi.service;
 
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPage;
 import io.github.nwen.freecallcenterapi.dto.CallRecordQuery;
 import io.github.nwen.freecallcenterapi.dto.CallRecordResponse;
 import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
 import io.github.nwen.freecallcenterapi.entity.CallRecord;
 import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 
 @Slf4j
 @Service
 public class CallRecordService extends ServiceImpl<CallRecordRepository, CallRecord> {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final CallStatsRollupService callStatsRollupService;
+    /** 调用方已在事务中时以保存点执行，否则开启独立事务 */
+    private final TransactionTemplate nestedTransaction;
+
+    public CallRecordService(CallStatsRollupService callStatsRollupService, PlatformTransactionManager transactionManager) {
+        this.callStatsRollupService = callStatsRollupService;
+        this.nestedTransaction = new TransactionTemplate(transactionManager);
+        this.nestedTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
     public CallRecordResponse toResponse(CallRecord record) {
         return CallRecordResponse.builder()
                 .id(record.getId())
@@ -36,16 +55,38 @@ public class CallRecordService extends ServiceImpl<CallRecordRepository, CallRec
                 .build();
     }
 
-    public List<CallRecordResponse> findAll(int page, int size) {
-        Page<CallRecord> recordPage = this.lambdaQuery()
+    /**
+     * 按 (created_at, id) 倒序的游标（keyset）分页：下一页从上一页最后一条之后 seek，
+     * 走 idx_call_record_created_id 索引，翻到多深的页延迟都不变。总数需要单独 COUNT，只在 withTotal 时查询。
+     */
+    public CallRecordPage query(CallRecordQuery query, String cursor, int size, boolean withTotal) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        var queryWrapper = applyFilters(this.lambdaQuery(), query);
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor after = Cursor.decode(cursor);
+            queryWrapper.apply("(created_at, id) < ({0}, {1})", after.createdAt(), after.id());
+        }
+        List<CallRecord> records = queryWrapper
                 .orderByDesc(CallRecord::getCreatedAt)
-                .page(new Page<>(page, size));
-        return recordPage.getRecords().stream().map(this::toResponse).toList();
-    }
+                .orderByDesc(CallRecord::getId)
+                .last("LIMIT " + (limit + 1))
+                .list();
 
-    public List<CallRecordResponse> query(CallRecordQuery query, int page, int size) {
-        var queryWrapper = this.lambdaQuery();
+        boolean hasMore = records.size() > limit;
+        if (hasMore) {
+            records = records.subList(0, limit);
+        }
+        CallRecord last = records.isEmpty() ? null : records.get(records.size() - 1);
+        return CallRecordPage.builder()
+                .items(records.stream().map(this::toResponse).toList())
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? new Cursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .total(withTotal ? applyFilters(this.lambdaQuery(), query).count() : null)
+                .build();
+    }
 
+    LambdaQueryChainWrapper<CallRecord> applyFilters(LambdaQueryChainWrapper<CallRecord> queryWrapper,
+                                                     CallRecordQuery query) {
         if (query.getExtensionId() != null) {
             queryWrapper.eq(CallRecord::getExtensionId, query.getExtensionId());
         }
@@ -59,13 +100,30 @@ public class CallRecordService extends ServiceImpl<CallRecordRepository, CallRec
             queryWrapper.eq(CallRecord::getStatus, query.getStatus());
         }
         if (query.getStartTime() != null && query.getEndTime() != null) {
-            queryWrapper.between(CallRecord::getCreatedAt, query.getStartTime(), query.getEndTime());
+            queryWrapper.between(CallRecord::getStartTime, query.getStartTime(), query.getEndTime());
         }
+        return queryWrapper;
+    }
 
-        Page<CallRecord> recordPage = queryWrapper
-                .orderByDesc(CallRecord::getCreatedAt)
-                .page(new Page<>(page, size));
-        return recordPage.getRecords().stream().map(this::toResponse).toList();
+    /**
+     * 分页游标：上一页最后一条记录的 (created_at, id)，以 base64url 编码对客户端保持不透明
+     */
+    private record Cursor(LocalDateTime createdAt, long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("无效的分页游标");
+            }
+        }
     }
 
     public CallRecordResponse findById(Long id) {
@@ -81,18 +139,7 @@ public class CallRecordService extends ServiceImpl<CallRecordRepository, CallRec
         if (endTime == null) {
             endTime = LocalDateTime.now();
         }
-
-        long totalCalls = this.baseMapper.countTotalCalls(startTime, endTime);
-        long answeredCalls = this.baseMapper.countAnsweredCalls(startTime, endTime);
-        long missedCalls = totalCalls - answeredCalls;
-        double answerRate = totalCalls > 0 ? (double) answeredCalls / totalCalls * 100 : 0;
-
-        return CallStatsResponse.builder()
-                .totalCalls(totalCalls)
-                .answeredCalls(answeredCalls)
-                .missedCalls(missedCalls)
-                .answerRate(Math.round(answerRate * 100) / 100.0)
-                .build();
+        return callStatsRollupService.sumStats(startTime, endTime, null);
     }
 
     public CallStatsResponse getExtensionStats(Long extensionId, LocalDateTime startTime, LocalDateTime endTime) {
@@ -102,60 +149,94 @@ public class CallRecordService extends ServiceImpl<CallRecordRepository, CallRec
         if (endTime == null) {
             endTime = LocalDateTime.now();
         }
-
-        long totalCalls = this.lambdaQuery()
-                .eq(CallRecord::getExtensionId, extensionId)
-                .count();
-        long answeredCalls = this.lambdaQuery()
-                .eq(CallRecord::getExtensionId, extensionId)
-                .eq(CallRecord::getStatus, "ANSWERED")
-                .count();
-        long totalDuration = this.baseMapper.sumDurationByExtension(extensionId, startTime, endTime);
-        long avgDuration = answeredCalls > 0 ? totalDuration / answeredCalls : 0;
-
-        return CallStatsResponse.builder()
-                .totalCalls(totalCalls)
-                .answeredCalls(answeredCalls)
-                .missedCalls(totalCalls - answeredCalls)
-                .answerRate(totalCalls > 0 ? (double) answeredCalls / totalCalls * 100 : 0)
-                .totalDuration(totalDuration)
-                .avgDuration(avgDuration)
-                .build();
+        return callStatsRollupService.sumStats(startTime, endTime, extensionId);
     }
 
-    public void createCallRecord(CallRecord record) {
-        this.save(record);
-        log.info("创建通话记录: callId={}, caller={}, callee={}",
-                record.getCallId(), record.getCallerNumber(), record.getCalleeNumber());
+    /**
+     * 明细统计：一次扫描 call_record 得到总数、应答/未接、时长及已应答通话时长的 P50/P90/P99；
+     * groupBy 不为空时在同一查询里按分机、小时或方向分组，汇总写在返回对象本身，各组放在 groups。
+     * 只要总数和时长时走 getStats/getExtensionStats 的小时汇总更快
+     */
+    public CallStatsResponse getDetailedStats(LocalDateTime startTime, LocalDateTime endTime,
+                                              Long extensionId, String groupBy) {
+        if (startTime == null) {
+            startTime = LocalDateTime.now().withDayOfMonth(1);
+        }
+        if (endTime == null) {
+            endTime = LocalDateTime.now();
+        }
+        StatsGroup group = groupBy == null || groupBy.isEmpty() ? null : StatsGroup.of(groupBy);
+        List<CallStatsResponse> rows = this.baseMapper.aggregateStats(startTime, endTime, extensionId,
+                group == null ? null : group.expression);
+        // 没有 GROUP BY 的聚合总会返回一行；分组时 GROUPING SETS 的汇总行排在第一
+        CallStatsResponse stats = rows.get(0);
+        if (group != null) {
+            List<CallStatsResponse> groups = rows.subList(1, rows.size());
+            groups.forEach(row -> row.setGroupBy(group.key()));
+            stats.setGroupBy(group.key());
+            stats.setGroups(List.copyOf(groups));
+        }
+        return stats;
     }
 
-    public void updateCallRecord(String callId, java.util.function.Consumer<CallRecord> updater) {
-        CallRecord record = this.lambdaQuery().eq(CallRecord::getCallId, callId).one();
-        if (record != null) {
-            updater.accept(record);
-            this.updateById(record);
-            log.info("更新通话记录: callId={}", callId);
+    /**
+     * 明细统计的分组维度，分组表达式固定在这里拼进 SQL，不接受外部输入
+     */
+    public enum StatsGroup {
+        EXTENSION("CAST(COALESCE(extension_id, 0) AS TEXT)"),
+        HOUR("to_char(date_trunc('hour', start_time), 'YYYY-MM-DD HH24:00')"),
+        DIRECTION("direction");
+
+        private final String expression;
+
+        StatsGroup(String expression) {
+            this.expression = expression;
+        }
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static StatsGroup of(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("不支持的统计分组: " + value);
+            }
         }
     }
 
     public void updateCallStatus(String callId, String status) {
-        updateCallRecord(callId, record -> record.setStatus(status));
+        this.baseMapper.updateStatusByCallId(callId, status);
     }
 
     public void updateCallAnswerTime(String callId, LocalDateTime answerTime) {
-        updateCallRecord(callId, record -> {
-            record.setAnswerTime(answerTime);
-            record.setStatus("ANSWERED");
-        });
+        this.baseMapper.markAnswered(callId, answerTime);
+    }
+
+    private boolean insertCdrIfAbsent(CallRecord record) {
+        try {
+            Integer inserted = nestedTransaction.execute(status -> this.baseMapper.insertFromCdrIfAbsent(record));
+            return inserted != null && inserted > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
     }
 
     public void updateCallEndTime(String callId, LocalDateTime endTime) {
-        updateCallRecord(callId, record -> {
-            record.setEndTime(endTime);
-            if (record.getAnswerTime() != null) {
-                record.setDurationSeconds((int) (endTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
-                        - record.getAnswerTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()) / 1000);
-            }
-        });
+        this.baseMapper.markHangup(callId, endTime);
+    }
+
+    /**
+     * 以 CDR 为准写入通话记录，若 ESL 事件已创建同一 call_id 的记录则合并：先按 call_id 更新，不存在时插入。
+     * 插入与并发创建同一 call_id 的写入冲突时对方已提交，再更新一次即可；
+     * 插入在保存点内执行，调用方处于事务中时唯一约束冲突只回滚插入本身，事务仍可继续
+     */
+    public void upsertCdrRecord(CallRecord record) {
+        if (this.baseMapper.updateFromCdr(record) == 0 && !insertCdrIfAbsent(record)) {
+            this.baseMapper.updateFromCdr(record);
+        }
+        log.info("CDR 入库: callId={}, caller={}, callee={}",
+                record.getCallId(), record.getCallerNumber(), record.getCalleeNumber());
     }
 }
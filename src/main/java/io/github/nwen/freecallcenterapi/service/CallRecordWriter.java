@@ -0,0 +1,271 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.CallRecordWriterConfig;
+import io.github.nwen.freecallcenterapi.dto.CallRecordWriterStats;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 通话记录异步批量写入（write-behind）
+ * ESL 事件线程只负责入队，由后台刷盘线程按批次大小或时间间隔，通过 MyBatis BATCH 执行器合并为 JDBC 批量 INSERT / UPDATE。
+ * 队列有界，满了之后入队方最多阻塞 offerTimeoutMs，超时则丢弃并计数。
+ */
+@Slf4j
+@Service
+public class CallRecordWriter {
+
+    private enum WriteType { INSERT, ANSWER, HANGUP }
+
+    /** 整批因死锁（40P01）被回滚时的最多尝试次数，之后才退回逐条写入 */
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    private record PendingWrite(WriteType type, String callId, CallRecord record, LocalDateTime time) {
+    }
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final CallRecordRepository callRecordRepository;
+    private final CallRecordWriterConfig config;
+    private final BlockingQueue<PendingWrite> queue;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final AtomicInteger highWatermark = new AtomicInteger();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public CallRecordWriter(SqlSessionFactory sqlSessionFactory, CallRecordRepository callRecordRepository,
+                            CallRecordWriterConfig config) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.callRecordRepository = callRecordRepository;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "call-record-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("通话记录批量写入已启动: queueCapacity={}, batchSize={}, flushIntervalMs={}",
+                config.getQueueCapacity(), config.getBatchSize(), config.getFlushIntervalMs());
+    }
+
+    public void submitCreate(CallRecord record) {
+        enqueue(new PendingWrite(WriteType.INSERT, record.getCallId(), record, record.getStartTime()));
+    }
+
+    public void submitAnswer(String callId, LocalDateTime answerTime) {
+        enqueue(new PendingWrite(WriteType.ANSWER, callId, null, answerTime));
+    }
+
+    public void submitHangup(String callId, LocalDateTime endTime) {
+        enqueue(new PendingWrite(WriteType.HANGUP, callId, null, endTime));
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (!running) {
+            // 已进入关闭流程，刷盘线程可能已退出，直接同步写入
+            flush(List.of(write));
+            return;
+        }
+        try {
+            if (!queue.offer(write)) {
+                backpressureWaits.increment();
+                if (!queue.offer(write, config.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    dropped.increment();
+                    log.warn("通话记录写入队列已满，丢弃: type={}, callId={}", write.type(), write.callId());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.increment();
+            return;
+        }
+        enqueued.increment();
+        highWatermark.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    private void runFlusher() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMs());
+        List<PendingWrite> batch = new ArrayList<>(config.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < config.getBatchSize()) {
+                    queue.drainTo(batch, config.getBatchSize() - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= config.getBatchSize() || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 关闭时被中断，把队列中剩余的写入取出后继续刷盘
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        log.info("通话记录批量写入线程已退出");
+    }
+
+    /**
+     * 按 INSERT → ANSWER → HANGUP 的顺序执行一批写入。
+     * 队列本身是 FIFO，同一通话的事件在批次之间天然有序；批次内按生命周期顺序执行即可保证先插入后更新。
+     * 整批被选为死锁牺牲者时原样重试整批；其他失败逐条重试，避免一条坏数据拖垮整批。
+     */
+    private void flush(List<PendingWrite> batch) {
+        long begin = System.nanoTime();
+        List<PendingWrite> ordered = new ArrayList<>(batch.size());
+        for (WriteType type : WriteType.values()) {
+            for (PendingWrite write : batch) {
+                if (write.type() == type) {
+                    ordered.add(write);
+                }
+            }
+        }
+
+        Exception failure = null;
+        for (int attempt = 1; attempt <= MAX_BATCH_ATTEMPTS; attempt++) {
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                CallRecordRepository mapper = session.getMapper(CallRecordRepository.class);
+                for (PendingWrite write : ordered) {
+                    apply(mapper, write);
+                }
+                session.flushStatements();
+                session.commit();
+                written.add(ordered.size());
+                failure = null;
+                break;
+            } catch (Exception e) {
+                failure = e;
+                if (!isDeadlock(e)) {
+                    break;
+                }
+                log.warn("通话记录批量写入死锁，重试整批: attempt={}, size={}", attempt, ordered.size());
+            }
+        }
+        if (failure != null) {
+            log.warn("通话记录批量写入失败，改为逐条写入: size={}, error={}", ordered.size(), failure.getMessage());
+            for (PendingWrite write : ordered) {
+                try {
+                    apply(callRecordRepository, write);
+                    written.increment();
+                } catch (DuplicateKeyException ex) {
+                    // 同一 call_id 的 CDR 与 ESL 创建并发插入，由登记触发器拒绝，记录已存在，与 insertIfAbsent 跳过等价
+                    written.increment();
+                    log.debug("通话记录已存在，跳过: type={}, callId={}", write.type(), write.callId());
+                } catch (Exception ex) {
+                    failed.increment();
+                    log.error("通话记录写入失败: type={}, callId={}, error={}", write.type(), write.callId(), ex.getMessage());
+                }
+            }
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        batches.increment();
+        lastFlushMillis.set(elapsedMillis);
+        maxFlushMillis.accumulateAndGet(elapsedMillis, Math::max);
+        log.debug("通话记录批量写入: size={}, elapsed={}ms", ordered.size(), elapsedMillis);
+    }
+
+    /**
+     * BATCH 会话直接抛出 MyBatis 异常，不经过 Spring 的异常转换，按 SQLState 识别死锁
+     */
+    private static boolean isDeadlock(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && "40P01".equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply(CallRecordRepository mapper, PendingWrite write) {
+        switch (write.type()) {
+            case INSERT -> mapper.insertIfAbsent(write.record());
+            case ANSWER -> mapper.markAnswered(write.callId(), write.time());
+            case HANGUP -> mapper.markHangup(write.callId(), write.time());
+        }
+    }
+
+    public CallRecordWriterStats getStats() {
+        return CallRecordWriterStats.builder()
+                .queueDepth(queue.size())
+                .queueCapacity(config.getQueueCapacity())
+                .queueHighWatermark(highWatermark.get())
+                .enqueued(enqueued.sum())
+                .written(written.sum())
+                .failed(failed.sum())
+                .dropped(dropped.sum())
+                .backpressureWaits(backpressureWaits.sum())
+                .batches(batches.sum())
+                .lastFlushMillis(lastFlushMillis.get())
+                .maxFlushMillis(maxFlushMillis.get())
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        if (flusher == null) {
+            return;
+        }
+        try {
+            flusher.join(config.getShutdownTimeoutMs());
+            if (flusher.isAlive()) {
+                flusher.interrupt();
+                flusher.join(config.getShutdownTimeoutMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 刷盘线程退出后仍可能有并发入队的残留写入，在当前线程中兜底排空
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+        log.info("通话记录批量写入已关闭: written={}, failed={}, dropped={}",
+                written.sum(), failed.sum(), dropped.sum());
+    }
+}
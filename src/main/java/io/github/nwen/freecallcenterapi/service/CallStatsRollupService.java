@@ -0,0 +1,193 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.CallStatsRollupConfig;
+import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
+import io.github.nwen.freecallcenterapi.repository.CallStatsRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 通话统计小时汇总
+ * call_record 上的语句级触发器把增量追加到 call_stats_hourly_delta，后台每 foldIntervalMs 合并进 call_stats_hourly，
+ * 写入事务之间不争用汇总行。统计查询只读取区间内的小时桶和未合并的增量，不再随 call_record 的规模线性增长。
+ * 历史数据（触发器创建之前的记录）通过 backfill 按区间重建。
+ */
+@Slf4j
+@Service
+public class CallStatsRollupService {
+
+    private final CallStatsRollupRepository rollupRepository;
+    private final CallStatsRollupConfig config;
+    private final TransactionTemplate transactionTemplate;
+    private volatile boolean rollupAvailable;
+    private volatile boolean running;
+    private Thread folder;
+
+    public CallStatsRollupService(CallStatsRollupRepository rollupRepository, CallStatsRollupConfig config,
+                                  PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 统计 start_time 在 [startTime, endTime] 内的通话，extensionId 为 null 时统计全部分机
+     */
+    public CallStatsResponse sumStats(LocalDateTime startTime, LocalDateTime endTime, Long extensionId) {
+        CallStatsResponse sums;
+        if (isRollupAvailable()) {
+            LocalDateTime fullStart = ceilHour(startTime);
+            LocalDateTime fullEnd = endTime.truncatedTo(ChronoUnit.HOURS);
+            if (fullEnd.isBefore(fullStart)) {
+                fullEnd = fullStart;
+            }
+            sums = rollupRepository.sumStats(startTime, endTime, fullStart, fullEnd, extensionId);
+        } else {
+            sums = rollupRepository.sumStatsFromRecords(startTime, endTime, extensionId);
+        }
+
+        long totalCalls = sums.getTotalCalls();
+        long answeredCalls = sums.getAnsweredCalls();
+        double answerRate = totalCalls > 0 ? (double) answeredCalls / totalCalls * 100 : 0;
+        return CallStatsResponse.builder()
+                .totalCalls(totalCalls)
+                .answeredCalls(answeredCalls)
+                .missedCalls(totalCalls - answeredCalls)
+                .answerRate(Math.round(answerRate * 100) / 100.0)
+                .totalDuration(sums.getTotalDuration())
+                .avgDuration(answeredCalls > 0 ? sums.getTotalDuration() / answeredCalls : 0)
+                .build();
+    }
+
+    /**
+     * 按 backfillChunkHours 分段重建 [from, to) 内的小时桶，每段一个事务并锁住 call_record 的写入，
+     * 使重建结果与触发器增量之间没有重叠或遗漏；返回写入的桶数
+     */
+    public int backfill(LocalDateTime from, LocalDateTime to) {
+        if (!isRollupAvailable()) {
+            throw new IllegalStateException("call_stats_hourly 不存在，请先执行 001-create-tables.sql");
+        }
+        // 已归档分区的通话不在 call_record 中，重建会清空这些小时的汇总，因此不早于最早的在库通话
+        LocalDateTime earliest = rollupRepository.earliestCallStartTime();
+        if (earliest == null) {
+            return 0;
+        }
+        LocalDateTime start = (from.isBefore(earliest) ? earliest : from).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime end = ceilHour(to);
+        int chunkHours = Math.max(1, config.getBackfillChunkHours());
+        long begin = System.nanoTime();
+        int buckets = 0;
+        for (LocalDateTime chunk = start; chunk.isBefore(end); chunk = chunk.plusHours(chunkHours)) {
+            LocalDateTime chunkStart = chunk;
+            LocalDateTime chunkEnd = chunk.plusHours(chunkHours).isBefore(end) ? chunk.plusHours(chunkHours) : end;
+            Integer written = transactionTemplate.execute(status -> {
+                rollupRepository.lockCallRecord();
+                rollupRepository.lockDeltas();
+                rollupRepository.deleteBuckets(chunkStart, chunkEnd);
+                rollupRepository.deleteDeltas(chunkStart, chunkEnd);
+                return rollupRepository.rebuildBuckets(chunkStart, chunkEnd);
+            });
+            buckets += written != null ? written : 0;
+        }
+        log.info("通话统计汇总重建完成: from={}, to={}, buckets={}, elapsedMs={}",
+                start, end, buckets, (System.nanoTime() - begin) / 1_000_000);
+        return buckets;
+    }
+
+    /**
+     * 把已提交的增量合并进小时汇总表，返回更新的桶数；后台线程和手动触发串行执行
+     */
+    public synchronized int fold() {
+        if (!isRollupAvailable()) {
+            return 0;
+        }
+        return rollupRepository.foldDeltas();
+    }
+
+    /**
+     * 重建全部历史：从最早的通话到当前小时
+     */
+    public int backfillAll() {
+        LocalDateTime earliest = rollupRepository.earliestCallStartTime();
+        if (earliest == null) {
+            return 0;
+        }
+        return backfill(earliest, LocalDateTime.now());
+    }
+
+    /**
+     * 汇总表晚于已有通话记录创建时（升级已有库），启动后在后台补建更早的历史
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (!config.isBackfillOnStartup()) {
+            return;
+        }
+        Thread.ofVirtual().name("call-stats-backfill").start(() -> {
+            try {
+                if (!isRollupAvailable()) {
+                    log.warn("call_stats_hourly 不存在，通话统计将直接扫描 call_record，请执行 001-create-tables.sql");
+                    return;
+                }
+                LocalDateTime earliestCall = rollupRepository.earliestCallStartTime();
+                LocalDateTime earliestBucket = rollupRepository.earliestBucket();
+                if (earliestCall == null || (earliestBucket != null && !earliestCall.isBefore(earliestBucket))) {
+                    return;
+                }
+                LocalDateTime to = earliestBucket != null ? earliestBucket.plusHours(1) : LocalDateTime.now();
+                log.info("补建通话统计汇总历史: from={}, to={}", earliestCall, to);
+                backfill(earliestCall, to);
+            } catch (Exception e) {
+                log.error("通话统计汇总补建失败", e);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFolding() {
+        running = true;
+        folder = Thread.ofVirtual().name("call-stats-fold").start(this::runFolder);
+    }
+
+    private void runFolder() {
+        while (running) {
+            try {
+                Thread.sleep(config.getFoldIntervalMs());
+                fold();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("通话统计增量合并失败，下次重试: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (folder != null) {
+            folder.interrupt();
+        }
+    }
+
+    private boolean isRollupAvailable() {
+        if (!rollupAvailable) {
+            rollupAvailable = rollupRepository.rollupTableExists();
+        }
+        return rollupAvailable;
+    }
+
+    private static LocalDateTime ceilHour(LocalDateTime time) {
+        LocalDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+        return hour.equals(time) ? hour : hour.plusHours(1);
+    }
+}
@@ -0,0 +1,320 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.config.CdrBulkConfig;
+import io.github.nwen.freecallcenterapi.dto.CdrBulkResponse;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CDR 批量导入
+ * 请求体为 NDJSON（每行一个 CDR 对象）或 JSON 数组，用 Jackson 流式 API 逐条读取，不把整个请求体读入内存。
+ * 每 batchSize 条为一批，在一个事务内通过 COPY 写入临时表，再按 call_record_key 把已存在的通话 UPDATE、其余 INSERT 合并到 call_record，
+ * 合并规则与 CallRecordRepository.updateFromCdr 一致。
+ * 与并发写入同一 call_id 竞争时 INSERT 报唯一约束冲突、整批回滚，由调用方重试（CdrSpool 会退避后重放）。
+ */
+@Slf4j
+@Service
+public class CdrBulkImporter {
+
+    /** 整批因死锁（40P01）被回滚时的最多尝试次数 */
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private static final String CREATE_STAGE = """
+        CREATE TEMP TABLE cdr_bulk_stage (
+            seq INT NOT NULL,
+            call_id VARCHAR(100),
+            caller_number VARCHAR(50),
+            callee_number VARCHAR(50),
+            direction VARCHAR(10),
+            status VARCHAR(20),
+            start_time TIMESTAMP,
+            answer_time TIMESTAMP,
+            end_time TIMESTAMP,
+            duration_seconds INT
+        ) ON COMMIT DROP
+        """;
+
+    private static final String COPY_STAGE = """
+        COPY cdr_bulk_stage (seq, call_id, caller_number, callee_number, direction, status,
+                             start_time, answer_time, end_time, duration_seconds)
+        FROM STDIN WITH (FORMAT csv)
+        """;
+
+    /** 同一批内 call_id 重复时只保留最后一条 */
+    private static final String DEDUP_STAGE = """
+        DELETE FROM cdr_bulk_stage a USING cdr_bulk_stage b
+        WHERE a.call_id = b.call_id AND a.seq < b.seq
+        """;
+
+    /** 已存在的通话：经 call_record_key 取得 start_time，只更新所在分区的记录 */
+    private static final String UPDATE_STAGE = """
+        UPDATE call_record r SET
+            caller_number = s.caller_number,
+            callee_number = s.callee_number,
+            status = s.status,
+            start_time = COALESCE(s.start_time, r.start_time),
+            answer_time = COALESCE(s.answer_time, r.answer_time),
+            end_time = COALESCE(s.end_time, r.end_time),
+            duration_seconds = COALESCE(s.duration_seconds, r.duration_seconds),
+            updated_at = CURRENT_TIMESTAMP
+        FROM cdr_bulk_stage s
+        JOIN call_record_key k ON k.call_id = s.call_id
+        WHERE r.call_id = s.call_id AND r.start_time = k.start_time
+        """;
+
+    private static final String INSERT_STAGE = """
+        INSERT INTO call_record (call_id, caller_number, callee_number, direction, status,
+                                 start_time, answer_time, end_time, duration_seconds)
+        SELECT call_id, caller_number, callee_number, direction, status,
+               start_time, answer_time, end_time, duration_seconds
+        FROM cdr_bulk_stage s
+        WHERE NOT EXISTS (SELECT 1 FROM call_record_key k WHERE k.call_id = s.call_id)
+        """;
+
+    private final CdrParser cdrParser;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CdrBulkConfig config;
+
+    public CdrBulkImporter(CdrParser cdrParser, ObjectMapper objectMapper, JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager, CdrBulkConfig config) {
+        this.cdrParser = cdrParser;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.config = config;
+    }
+
+    public CdrBulkResponse importStream(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress(Math.max(1, config.getBatchSize()), config.getMaxRejectDetails());
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            // NDJSON 是多个根级对象，Jackson 可直接按空白分隔连续读取
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                long index = progress.received++;
+                if (token == JsonToken.START_OBJECT) {
+                    accept(progress, index, objectMapper.readValue(parser, MAP_TYPE));
+                } else {
+                    parser.skipChildren();
+                    progress.reject(index, "not a JSON object");
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            // databind 异常不一定带解析位置
+            JsonLocation location = e.getLocation();
+            progress.error = location != null
+                    ? "Malformed JSON at line " + location.getLineNr() + ": " + e.getOriginalMessage()
+                    : "Malformed JSON: " + e.getOriginalMessage();
+            log.warn("CDR 批量导入请求体格式错误，已读取的记录继续入库: {}", progress.error);
+        }
+        flush(progress);
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("CDR 批量导入完成: received={}, accepted={}, rejected={}, batches={}, elapsedMs={}, rowsPerSec={}",
+                progress.received, progress.accepted, progress.rejected, progress.batches, elapsedMs,
+                elapsedMs == 0 ? progress.accepted : progress.accepted * 1000 / elapsedMs);
+        return CdrBulkResponse.builder()
+                .received(progress.received)
+                .accepted(progress.accepted)
+                .rejected(progress.rejected)
+                .batches(progress.batches)
+                .elapsedMs(elapsedMs)
+                .error(progress.error)
+                .rejects(progress.rejects)
+                .build();
+    }
+
+    private void accept(Progress progress, long index, Map<String, Object> cdrData) {
+        CallRecord record = cdrParser.parse(cdrData);
+        String reason = record == null ? "invalid CDR data" : validate(record);
+        if (reason != null) {
+            progress.reject(index, reason);
+            return;
+        }
+        progress.pending.add(record);
+        progress.pendingIndexes.add(index);
+        if (progress.pending.size() >= progress.batchSize) {
+            flush(progress);
+        }
+    }
+
+    /**
+     * 提前拦截会让整批 COPY / INSERT 失败的记录（NOT NULL 与字段长度约束），通过时返回 null，否则返回原因
+     */
+    public static String validate(CallRecord record) {
+        if (record.getStartTime() == null) {
+            return "missing or invalid start_stamp";
+        }
+        if (record.getCallId().length() > 100) {
+            return "call uuid too long";
+        }
+        if (record.getCallerNumber().length() > 50 || record.getCalleeNumber().length() > 50) {
+            return "caller or callee number too long";
+        }
+        if (record.getDirection().length() > 10) {
+            return "invalid call_direction";
+        }
+        return null;
+    }
+
+    private void flush(Progress progress) {
+        List<CallRecord> batch = progress.pending;
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            merge(batch);
+            progress.accepted += batch.size();
+        } catch (Exception e) {
+            log.error("CDR 批量导入批次写入失败: size={}", batch.size(), e);
+            for (Long index : progress.pendingIndexes) {
+                progress.reject(index, "database error: " + e.getMessage());
+            }
+        }
+        progress.batches++;
+        batch.clear();
+        progress.pendingIndexes.clear();
+    }
+
+    /**
+     * 在一个事务内把一批已通过 validate 的记录 COPY 到临时表并合并到 call_record，失败时抛出异常、整批回滚。
+     * 与 CallRecordWriter 等并发写入在 call_record 行上的加锁顺序可能相反，被选为死锁牺牲者时重放整批
+     */
+    public void merge(List<CallRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder csv = new StringBuilder(records.size() * 160);
+        for (int i = 0; i < records.size(); i++) {
+            appendCsv(csv, i, records.get(i));
+        }
+        String data = csv.toString();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                mergeOnce(data);
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= MAX_MERGE_ATTEMPTS || !isDeadlock(e)) {
+                    throw e;
+                }
+                log.warn("CDR 批量合并死锁，重试整批: attempt={}, size={}", attempt, records.size());
+            }
+        }
+    }
+
+    private static boolean isDeadlock(Exception e) {
+        return e.getCause() instanceof SQLException sql && "40P01".equals(sql.getSQLState());
+    }
+
+    private void mergeOnce(String csv) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGE);
+                try {
+                    connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGE, new StringReader(csv));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                statement.executeUpdate(DEDUP_STAGE);
+                statement.executeUpdate(UPDATE_STAGE);
+                statement.executeUpdate(INSERT_STAGE);
+            }
+            return null;
+        }));
+    }
+
+    private static void appendCsv(StringBuilder csv, int seq, CallRecord record) {
+        csv.append(seq).append(',');
+        appendText(csv, record.getCallId()).append(',');
+        appendText(csv, record.getCallerNumber()).append(',');
+        appendText(csv, record.getCalleeNumber()).append(',');
+        appendText(csv, record.getDirection()).append(',');
+        appendText(csv, record.getStatus()).append(',');
+        appendValue(csv, record.getStartTime()).append(',');
+        appendValue(csv, record.getAnswerTime()).append(',');
+        appendValue(csv, record.getEndTime()).append(',');
+        appendValue(csv, record.getDurationSeconds()).append('\n');
+    }
+
+    /**
+     * CSV 格式下未加引号的空字段为 NULL，文本一律加引号以区分空字符串
+     */
+    private static StringBuilder appendText(StringBuilder csv, String value) {
+        if (value == null) {
+            return csv;
+        }
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+
+    private static StringBuilder appendValue(StringBuilder csv, Object value) {
+        return value == null ? csv : csv.append(value);
+    }
+
+    private static final class Progress {
+
+        private final int batchSize;
+        private final int maxRejectDetails;
+        private final List<CallRecord> pending;
+        private final List<Long> pendingIndexes;
+        private final List<CdrBulkResponse.Reject> rejects = new ArrayList<>();
+        private long received;
+        private long accepted;
+        private long rejected;
+        private int batches;
+        private String error;
+
+        private Progress(int batchSize, int maxRejectDetails) {
+            this.batchSize = batchSize;
+            this.maxRejectDetails = maxRejectDetails;
+            this.pending = new ArrayList<>(batchSize);
+            this.pendingIndexes = new ArrayList<>(batchSize);
+        }
+
+        private void reject(long index, String reason) {
+            rejected++;
+            if (rejects.size() < maxRejectDetails) {
+                rejects.add(new CdrBulkResponse.Reject(index, reason));
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * CDR 解析
+ * parse(Map) 处理 JSON 格式的 CDR；parseXml 处理 mod_xml_cdr 推送的 XML CDR，
+ * 用 StAX 逐个读取元素，只取需要的变量，不构建 DOM 或 Map，读完 variables 和第一个 caller_profile 后即停止。
+ */
+@Slf4j
+@Component
+public class CdrParser {
+
+    private static final DateTimeFormatter STAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /** XML CDR 中需要读取的 variables 子元素 */
+    private enum Field {
+        UUID, CALL_UUID, CALLER_NUMBER, SIP_FROM_USER, DESTINATION_NUMBER, SIP_TO_USER,
+        START_STAMP, ANSWER_STAMP, END_STAMP, DURATION, BILLSEC, CALL_DIRECTION,
+        /** 以下两个来自 callflow/caller_profile，variables 中缺少主被叫号码时使用 */
+        PROFILE_CALLER_ID_NUMBER, PROFILE_DESTINATION_NUMBER
+    }
+
+    private static final Map<String, Field> VARIABLE_FIELDS = Map.ofEntries(
+            Map.entry("uuid", Field.UUID),
+            Map.entry("call_uuid", Field.CALL_UUID),
+            Map.entry("caller_number", Field.CALLER_NUMBER),
+            Map.entry("sip_from_user", Field.SIP_FROM_USER),
+            Map.entry("destination_number", Field.DESTINATION_NUMBER),
+            Map.entry("sip_to_user", Field.SIP_TO_USER),
+            Map.entry("start_stamp", Field.START_STAMP),
+            Map.entry("answer_stamp", Field.ANSWER_STAMP),
+            Map.entry("end_stamp", Field.END_STAMP),
+            Map.entry("duration", Field.DURATION),
+            Map.entry("billsec", Field.BILLSEC),
+            Map.entry("call_direction", Field.CALL_DIRECTION)
+    );
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // CDR 来自外部请求，禁用 DTD 和外部实体
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * mod_xml_cdr 的 cdr 表单字段：encode=base64 时为 base64，encode=true 时为 URL 编码后的 XML（容器已解码）。
+     * base64 没有再做 URL 编码，其中的 '+' 会被表单解析成空格，这里先还原。
+     */
+    public byte[] decodeFormField(String cdr) {
+        if (cdr == null) {
+            return null;
+        }
+        String value = cdr.strip();
+        if (value.startsWith("<")) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return Base64.getMimeDecoder().decode(value.replace(' ', '+'));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid base64 CDR: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解析 mod_xml_cdr 的 XML CDR，缺少必要字段或格式错误时返回 null
+     */
+    public CallRecord parseXml(byte[] xml) {
+        if (xml == null || xml.length == 0) {
+            return null;
+        }
+        String[] values = new String[Field.values().length];
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+            readFields(reader, values);
+        } catch (XMLStreamException e) {
+            log.warn("Failed to parse XML CDR: {}", e.getMessage());
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // 数据已全部在内存中，关闭失败无影响
+                }
+            }
+        }
+        return build(
+                firstNonNull(values[Field.UUID.ordinal()], values[Field.CALL_UUID.ordinal()]),
+                firstNonNull(values[Field.CALLER_NUMBER.ordinal()], values[Field.SIP_FROM_USER.ordinal()],
+                        values[Field.PROFILE_CALLER_ID_NUMBER.ordinal()]),
+                firstNonNull(values[Field.DESTINATION_NUMBER.ordinal()], values[Field.SIP_TO_USER.ordinal()],
+                        values[Field.PROFILE_DESTINATION_NUMBER.ordinal()]),
+                values[Field.START_STAMP.ordinal()],
+                values[Field.ANSWER_STAMP.ordinal()],
+                values[Field.END_STAMP.ordinal()],
+                parseInt(values[Field.DURATION.ordinal()]),
+                values[Field.CALL_DIRECTION.ordinal()]);
+    }
+
+    /**
+     * 结构: cdr / variables / 变量名，cdr / callflow / caller_profile / caller_id_number、destination_number
+     */
+    private void readFields(XMLStreamReader reader, String[] values) throws XMLStreamException {
+        int depth = 0;
+        boolean inVariables = false;
+        boolean variablesDone = false;
+        boolean inCallflow = false;
+        boolean callflowDone = false;
+        boolean inProfile = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (depth == 2) {
+                    inVariables = "variables".equals(name);
+                    inCallflow = !callflowDone && "callflow".equals(name);
+                } else if (depth == 3 && inVariables) {
+                    Field field = VARIABLE_FIELDS.get(name);
+                    if (field != null) {
+                        // getElementText 会读到对应的 END_ELEMENT
+                        values[field.ordinal()] = percentDecode(reader.getElementText());
+                        depth--;
+                    }
+                } else if (depth == 3 && inCallflow) {
+                    inProfile = "caller_profile".equals(name);
+                } else if (depth == 4 && inProfile) {
+                    if ("caller_id_number".equals(name)) {
+                        values[Field.PROFILE_CALLER_ID_NUMBER.ordinal()] = percentDecode(reader.getElementText());
+                        depth--;
+                    } else if ("destination_number".equals(name)) {
+                        values[Field.PROFILE_DESTINATION_NUMBER.ordinal()] = percentDecode(reader.getElementText());
+                        depth--;
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 2 && inVariables) {
+                    inVariables = false;
+                    variablesDone = true;
+                    // variables 中已有主被叫号码时无需再读 callflow
+                    boolean hasCaller = values[Field.CALLER_NUMBER.ordinal()] != null
+                            || values[Field.SIP_FROM_USER.ordinal()] != null;
+                    boolean hasCallee = values[Field.DESTINATION_NUMBER.ordinal()] != null
+                            || values[Field.SIP_TO_USER.ordinal()] != null;
+                    if (hasCaller && hasCallee) {
+                        return;
+                    }
+                } else if (depth == 2 && inCallflow) {
+                    // 只取第一个 callflow（通话发起时的主被叫），之后的 app_log 等不再读取
+                    if (variablesDone) {
+                        return;
+                    }
+                    inCallflow = false;
+                    callflowDone = true;
+                } else if (depth == 3 && inProfile) {
+                    inProfile = false;
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * 解析 JSON 格式的 CDR（variables 或 fields 下的扁平键值）
+     */
+    @SuppressWarnings("unchecked")
+    public CallRecord parse(Map<String, Object> cdrData) {
+        try {
+            Map<String, Object> variables = (Map<String, Object>) cdrData.get("variables");
+            if (variables == null) {
+                variables = (Map<String, Object>) cdrData.get("fields");
+            }
+
+            if (variables == null) {
+                log.warn("No variables in CDR data");
+                return null;
+            }
+
+            return build(
+                    firstNonNull(getString(variables, "uuid"), getString(variables, "call_uuid")),
+                    firstNonNull(getString(variables, "caller_number"), getString(variables, "sip_from_user")),
+                    firstNonNull(getString(variables, "destination_number"), getString(variables, "sip_to_user")),
+                    getString(variables, "start_stamp"),
+                    getString(variables, "answer_stamp"),
+                    getString(variables, "end_stamp"),
+                    getInt(variables, "duration"),
+                    getString(variables, "call_direction"));
+        } catch (Exception e) {
+            log.error("Failed to parse CDR data", e);
+            return null;
+        }
+    }
+
+    CallRecord build(String callId, String callerNumber, String calleeNumber,
+                     String startTimeStr, String answerTimeStr, String endTimeStr,
+                     Integer duration, String direction) {
+        if (callId == null) {
+            log.warn("Missing call uuid in CDR");
+            return null;
+        }
+
+        if (callerNumber == null || calleeNumber == null) {
+            log.warn("Missing caller or callee number in CDR");
+            return null;
+        }
+
+        return CallRecord.builder()
+                .callId(callId)
+                .callerNumber(callerNumber)
+                .calleeNumber(calleeNumber)
+                .direction(direction != null ? direction : "outbound")
+                .status(duration != null && duration > 0 ? "ANSWERED" : "NO_ANSWER")
+                .startTime(parseTime(startTimeStr))
+                .answerTime(parseTime(answerTimeStr))
+                .endTime(parseTime(endTimeStr))
+                .durationSeconds(duration)
+                .build();
+    }
+
+    private static String firstNonNull(String... values) {
+        for (String value : values) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private String getString(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    private Integer getInt(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value != null ? parseInt(value.toString()) : null;
+    }
+
+    private static Integer parseInt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private LocalDateTime parseTime(String timeStr) {
+        if (timeStr == null || timeStr.isEmpty()) {
+            return null;
+        }
+        // 按是否含 'T' 选择格式，避免 FreeSWITCH 的 "yyyy-MM-dd HH:mm:ss" 每次都先走一遍 ISO 解析异常（CSV 导入时是热点）
+        try {
+            return LocalDateTime.parse(timeStr, timeStr.indexOf('T') > 0 ? DateTimeFormatter.ISO_DATE_TIME : STAMP_FORMAT);
+        } catch (Exception e) {
+            log.debug("Failed to parse time: {}", timeStr);
+            return null;
+        }
+    }
+
+    /**
+     * XML CDR 中的变量值经过 URL 编码（空格为 %20）。只解码 %XX，不把 '+' 当作空格，避免破坏 +86 这类号码。
+     */
+    static String percentDecode(String value) {
+        int first = value.indexOf('%');
+        if (first < 0) {
+            return value;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length());
+        byte[] prefix = value.substring(0, first).getBytes(StandardCharsets.UTF_8);
+        out.write(prefix, 0, prefix.length);
+        for (int i = first; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                int hi = Character.digit(value.charAt(i + 1), 16);
+                int lo = Character.digit(value.charAt(i + 2), 16);
+                if (hi >= 0 && lo >= 0) {
+                    out.write((hi << 4) | lo);
+                    i += 2;
+                    continue;
+                }
+            }
+            if (c < 0x80) {
+                out.write(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                byte[] bytes = value.substring(i, end).getBytes(StandardCharsets.UTF_8);
+                out.write(bytes, 0, bytes.length);
+                i = end - 1;
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,486 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.config.CdrSpoolConfig;
+import io.github.nwen.freecallcenterapi.dto.CdrSpoolStats;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * CDR 本地落盘队列（write-ahead log）
+ * CDR 接口把解析后的记录追加到内存映射的分段文件后即返回 200，由后台线程按批次通过 CdrBulkImporter 入库，
+ * 使 FreeSWITCH 的 HTTP 超时与数据库延迟解耦，数据库维护期间 CDR 也不会因 mod_xml_cdr 重试次数用尽而丢失。
+ * <p>
+ * 分段文件 {segment}.seg 预分配为 segmentBytes，记录格式为 [长度 int][CRC32C int][JSON]，
+ * 先写内容和校验和、最后写长度，长度为 0 或校验失败的位置视为写入末尾，长度为 -1 表示该分段已结束。
+ * 入库成功后才推进 checkpoint 文件并删除已消费的分段；checkpoint 之前崩溃会重放最后一批，upsert 是幂等的。
+ * 数据库拒绝的单条记录移入死信文件 dead-letter.ndjson，不会让整个 spool 卡在同一批上。
+ */
+@Slf4j
+@Service
+public class CdrSpool {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "lock";
+    private static final String DEAD_LETTER_FILE = "dead-letter.ndjson";
+
+    private record Position(long segment, int offset) {
+    }
+
+    private final CdrSpoolConfig config;
+    private final ObjectMapper objectMapper;
+    private final CdrBulkImporter cdrBulkImporter;
+    private final Path directory;
+
+    /** 写入状态，由 writeLock 保护 */
+    private final Object writeLock = new Object();
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private int writePosition;
+
+    /** 已完整写入的末尾位置，后台入库线程只读到这里 */
+    private volatile Position published;
+    /** 已入库的位置，只由后台入库线程推进 */
+    private volatile Position checkpoint;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder appendFailures = new LongAdder();
+    private final LongAdder drained = new LongAdder();
+    private final LongAdder drainFailures = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private volatile long replayed;
+    private volatile String lastDrainError;
+    private volatile LocalDateTime lastDrainAt;
+
+    private volatile boolean running;
+    private Thread drainer;
+    private FileChannel lockChannel;
+
+    public CdrSpool(CdrSpoolConfig config, ObjectMapper objectMapper, CdrBulkImporter cdrBulkImporter) {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.cdrBulkImporter = cdrBulkImporter;
+        this.directory = Paths.get(config.getDirectory());
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        recover();
+        running = true;
+        drainer = new Thread(this::runDrainer, "cdr-spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        log.info("CDR spool 已启动: directory={}, pending={}, checkpoint={}", directory.toAbsolutePath(), pending.get(), checkpoint);
+    }
+
+    /**
+     * 追加一条 CDR，返回时记录已写入映射文件（forceOnAppend 时已刷到磁盘）；失败抛出 IOException，调用方应让 FreeSWITCH 重试
+     */
+    public void append(CallRecord record) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(record);
+        int length = HEADER_BYTES + payload.length;
+        if (payload.length > config.getMaxRecordBytes() || length > config.getSegmentBytes() - HEADER_BYTES) {
+            appendFailures.increment();
+            throw new IOException("CDR too large for spool: " + payload.length + " bytes");
+        }
+        synchronized (writeLock) {
+            if (writeBuffer == null) {
+                appendFailures.increment();
+                throw new IOException("CDR spool is not running");
+            }
+            try {
+                // 末尾始终预留结束标记的位置
+                if (writePosition + length > config.getSegmentBytes() - HEADER_BYTES) {
+                    roll();
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                writeBuffer.put(writePosition + HEADER_BYTES, payload);
+                writeBuffer.putInt(writePosition + 4, (int) crc.getValue());
+                writeBuffer.putInt(writePosition, payload.length);
+                if (config.isForceOnAppend()) {
+                    writeBuffer.force(writePosition, length);
+                }
+            } catch (IOException | RuntimeException e) {
+                appendFailures.increment();
+                throw e;
+            }
+            writePosition += length;
+            published = new Position(writeSegment, writePosition);
+        }
+        appended.increment();
+        pending.incrementAndGet();
+    }
+
+    /**
+     * 写入结束标记并切换到下一个分段，调用方持有 writeLock
+     */
+    private void roll() throws IOException {
+        long segments = writeSegment - checkpoint.segment() + 2;
+        if (segments * config.getSegmentBytes() > config.getMaxSpoolBytes()) {
+            throw new IOException("CDR spool is full: segments=" + (segments - 1));
+        }
+        writeBuffer.putInt(writePosition, END_OF_SEGMENT);
+        writeBuffer.force();
+        writeBuffer = mapSegment(writeSegment + 1, true);
+        writeSegment++;
+        writePosition = 0;
+        log.debug("CDR spool 切换分段: segment={}", writeSegment);
+    }
+
+    /**
+     * 启动恢复：从 checkpoint 扫描到写入末尾，统计未入库的记录并定位写入位置，删除已消费的分段
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        // 同一目录只能有一个进程写入，否则分段会被交错覆盖
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("CDR spool directory is in use by another process: " + directory.toAbsolutePath());
+        }
+        TreeMap<Long, Path> segments = listSegments();
+        Position start = readCheckpoint();
+        if (start == null) {
+            start = new Position(segments.isEmpty() ? 0 : segments.firstKey(), 0);
+        } else if (!segments.containsKey(start.segment()) && !segments.isEmpty() && segments.firstKey() > start.segment()) {
+            start = new Position(segments.firstKey(), 0);
+        }
+        for (var entry : segments.headMap(start.segment()).entrySet()) {
+            Files.deleteIfExists(entry.getValue());
+        }
+
+        long last = segments.isEmpty() ? start.segment() : Math.max(start.segment(), segments.lastKey());
+        long count = 0;
+        int end = 0;
+        for (long segment = start.segment(); segment <= last; segment++) {
+            if (!segments.containsKey(segment)) {
+                end = 0;
+                continue;
+            }
+            MappedByteBuffer buffer = mapSegment(segment, false);
+            int offset = segment == start.segment() ? start.offset() : 0;
+            while (true) {
+                int next = nextRecord(buffer, offset);
+                if (next < 0) {
+                    break;
+                }
+                count++;
+                offset = next;
+            }
+            end = offset;
+        }
+
+        checkpoint = start;
+        writeSegment = last;
+        writePosition = end;
+        writeBuffer = mapSegment(last, true);
+        published = new Position(writeSegment, writePosition);
+        replayed = count;
+        pending.set(count);
+        if (count > 0) {
+            log.warn("CDR spool 中有未入库的记录，将从 checkpoint 重放: count={}, checkpoint={}", count, start);
+        }
+    }
+
+    /**
+     * offset 处记录有效时返回下一条记录的位置，到达分段末尾或记录不完整时返回 -1
+     */
+    private int nextRecord(ByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + HEADER_BYTES, length));
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return -1;
+        }
+        return offset + HEADER_BYTES + length;
+    }
+
+    private void runDrainer() {
+        long delay = config.getDrainIntervalMs();
+        MappedByteBuffer readBuffer = null;
+        long readSegment = -1;
+        List<CallRecord> batch = new ArrayList<>(config.getDrainBatchSize());
+        while (running) {
+            Position end = published;
+            Position position = checkpoint;
+            int consumed = 0;
+            batch.clear();
+            try {
+                while (consumed < config.getDrainBatchSize() && !position.equals(end)) {
+                    if (readSegment != position.segment()) {
+                        readBuffer = mapSegment(position.segment(), false);
+                        readSegment = position.segment();
+                    }
+                    int next = nextRecord(readBuffer, position.offset());
+                    if (next < 0) {
+                        if (position.segment() >= end.segment()) {
+                            break;
+                        }
+                        position = new Position(position.segment() + 1, 0);
+                        continue;
+                    }
+                    CallRecord record = decode(readBuffer, position.offset(), next);
+                    if (record != null) {
+                        batch.add(record);
+                    }
+                    consumed++;
+                    position = new Position(position.segment(), next);
+                }
+                if (!position.equals(checkpoint)) {
+                    drain(batch, consumed, position);
+                    delay = config.getDrainIntervalMs();
+                    if (consumed == config.getDrainBatchSize()) {
+                        continue;
+                    }
+                }
+            } catch (Exception e) {
+                drainFailures.increment();
+                lastDrainError = e.getMessage();
+                delay = Math.min(config.getRetryMaxDelayMs(), delay * 2);
+                log.warn("CDR spool 入库失败，{}ms 后重试: pending={}, error={}", delay, pending.get(), e.getMessage());
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+        }
+        log.info("CDR spool 入库线程已退出: pending={}", pending.get());
+    }
+
+    /**
+     * 校验和正确但无法反序列化的记录不可能通过重试恢复，记录日志后跳过，避免阻塞后续记录
+     */
+    private CallRecord decode(ByteBuffer buffer, int offset, int next) {
+        byte[] payload = new byte[next - offset - HEADER_BYTES];
+        buffer.get(offset + HEADER_BYTES, payload);
+        try {
+            return objectMapper.readValue(payload, CallRecord.class);
+        } catch (IOException e) {
+            log.error("CDR spool 记录无法解析，已跳过: payload={}", new String(payload, StandardCharsets.UTF_8), e);
+            return null;
+        }
+    }
+
+    /**
+     * 入库一批记录后推进 checkpoint。数据库必然拒绝的记录（未通过 validate，或整批因约束冲突失败后逐条重试仍被拒绝）
+     * 写入死信文件后跳过，不再阻塞后续记录；连接失败等其他异常照常抛出，由调用方退避后整批重试
+     */
+    private void drain(List<CallRecord> batch, int consumed, Position position) throws IOException {
+        List<CallRecord> valid = new ArrayList<>(batch.size());
+        List<String> rejects = new ArrayList<>();
+        for (CallRecord record : batch) {
+            String reason = CdrBulkImporter.validate(record);
+            if (reason == null) {
+                valid.add(record);
+            } else {
+                rejects.add(deadLetterLine(record, reason));
+            }
+        }
+        try {
+            cdrBulkImporter.merge(valid);
+        } catch (DuplicateKeyException e) {
+            // 与 ESL 创建并发插入同一 call_id，重试时会走更新分支
+            throw e;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("CDR spool 批次被数据库拒绝，改为逐条入库: size={}, error={}", valid.size(), e.getMostSpecificCause().getMessage());
+            for (CallRecord record : valid) {
+                try {
+                    cdrBulkImporter.merge(List.of(record));
+                } catch (DuplicateKeyException ex) {
+                    throw ex;
+                } catch (DataIntegrityViolationException ex) {
+                    rejects.add(deadLetterLine(record, ex.getMostSpecificCause().getMessage()));
+                }
+            }
+        }
+        // 死信先于 checkpoint 落盘：两者之间崩溃时重放会再写一次，宁可重复也不丢
+        if (!rejects.isEmpty()) {
+            appendDeadLetters(rejects);
+        }
+        long previousSegment = checkpoint.segment();
+        writeCheckpoint(position);
+        checkpoint = position;
+        for (long segment = previousSegment; segment < position.segment(); segment++) {
+            Files.deleteIfExists(segmentPath(segment));
+        }
+        drained.add(batch.size() - rejects.size());
+        deadLettered.add(rejects.size());
+        pending.addAndGet(-consumed);
+        lastDrainError = null;
+        lastDrainAt = LocalDateTime.now();
+        log.debug("CDR spool 入库: size={}, checkpoint={}", batch.size(), position);
+    }
+
+    private String deadLetterLine(CallRecord record, String reason) throws IOException {
+        log.error("CDR spool 记录被数据库拒绝，已移入死信文件: callId={}, reason={}", record.getCallId(), reason);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("reason", reason);
+        entry.put("record", record);
+        return objectMapper.writeValueAsString(entry);
+    }
+
+    /**
+     * 死信文件为 NDJSON，每行 {"reason": ..., "record": CallRecord}，修正后可人工补录
+     */
+    private void appendDeadLetters(List<String> lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+    }
+
+    private MappedByteBuffer mapSegment(long segment, boolean write) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(segment).toFile(), write ? "rw" : "r")) {
+            if (write && file.length() < config.getSegmentBytes()) {
+                file.setLength(config.getSegmentBytes());
+            }
+            return file.getChannel().map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, file.length());
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+                    } catch (NumberFormatException e) {
+                        log.warn("忽略无法识别的 spool 文件: {}", path);
+                    }
+                }
+            });
+        }
+        return segments;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        String[] parts = Files.readString(path, StandardCharsets.US_ASCII).trim().split(" ");
+        return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * 先写临时文件并刷盘，再原子替换，崩溃时 checkpoint 只会是旧值或新值
+     */
+    private void writeCheckpoint(Position position) throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((position.segment() + " " + position.offset()).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public CdrSpoolStats getStats() {
+        Position write = published;
+        Position consumed = checkpoint;
+        return CdrSpoolStats.builder()
+                .enabled(config.isEnabled())
+                .appended(appended.sum())
+                .appendFailures(appendFailures.sum())
+                .drained(drained.sum())
+                .drainFailures(drainFailures.sum())
+                .deadLettered(deadLettered.sum())
+                .replayed(replayed)
+                .pending(pending.get())
+                .segments(write == null ? 0 : write.segment() - consumed.segment() + 1)
+                .writeSegment(write == null ? 0 : write.segment())
+                .writePosition(write == null ? 0 : write.offset())
+                .checkpointSegment(consumed == null ? 0 : consumed.segment())
+                .checkpointPosition(consumed == null ? 0 : consumed.offset())
+                .lastDrainError(lastDrainError)
+                .lastDrainAt(lastDrainAt)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (writeLock) {
+            if (writeBuffer != null) {
+                writeBuffer.force();
+                writeBuffer = null;
+            }
+        }
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+            try {
+                drainer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            log.debug("Failed to release CDR spool lock: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.CsvCdrImportConfig;
+import io.github.nwen.freecallcenterapi.dto.CsvCdrImportResult;
+import io.github.nwen.freecallcenterapi.dto.CsvCdrImportStats;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serial;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * mod_cdr_csv 输出目录导入
+ * 以只读方式内存映射 Master.csv 等文件中尚未导入的部分，按行边界拆分后在 fork-join 线程池中并行解析，
+ * 再通过 CdrBulkImporter（COPY + 按 call_id 合并）批量入库。
+ * 偏移量按文件标识（inode）记录，文件持续增长时只读取新增的完整行，rotate 后的旧文件不会重复导入；
+ * 末尾未写完的半行留到下次扫描。假设字段内不含换行（FreeSWITCH 的 CSV 模板都是单行）。
+ */
+@Slf4j
+@Service
+public class CsvCdrImporter {
+
+    private final CsvCdrImportConfig config;
+    private final CdrParser cdrParser;
+    private final CdrBulkImporter cdrBulkImporter;
+    private final ForkJoinPool parsePool;
+    /** 文件标识 → 已导入的字节偏移量 */
+    private final Map<String, Long> offsets = new HashMap<>();
+    private boolean offsetsLoaded;
+
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder totalRows = new LongAdder();
+    private final LongAdder totalRejected = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private volatile CsvCdrImportResult lastImport;
+    private volatile String lastError;
+    private volatile int trackedFiles;
+
+    private volatile boolean running;
+    private Thread scanner;
+
+    public CsvCdrImporter(CsvCdrImportConfig config, CdrParser cdrParser, CdrBulkImporter cdrBulkImporter) {
+        this.config = config;
+        this.cdrParser = cdrParser;
+        this.cdrBulkImporter = cdrBulkImporter;
+        int parallelism = config.getParallelism() > 0 ? config.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.parsePool = new ForkJoinPool(parallelism);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        scanner = new Thread(this::runScanner, "csv-cdr-importer");
+        scanner.setDaemon(true);
+        scanner.start();
+        log.info("CSV CDR 导入已启动: directory={}, glob={}, parallelism={}",
+                config.getDirectory(), config.getGlob(), parsePool.getParallelism());
+    }
+
+    private void runScanner() {
+        while (running) {
+            try {
+                importNow();
+            } catch (Exception e) {
+                log.warn("CSV CDR 导入失败，下次扫描重试: {}", e.getMessage());
+            }
+            try {
+                Thread.sleep(config.getScanIntervalMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 扫描目录并导入所有文件新增的完整行，后台线程和手动触发串行执行
+     */
+    public synchronized CsvCdrImportResult importNow() throws IOException {
+        long start = System.nanoTime();
+        Path directory = Paths.get(config.getDirectory());
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("CSV CDR directory not found: " + directory.toAbsolutePath());
+        }
+        loadOffsets();
+        scans.increment();
+        Counts counts = new Counts();
+        int files = 0;
+        Set<String> present = new HashSet<>();
+        boolean completed = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, config.getGlob())) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String key = attributes.fileKey() != null ? attributes.fileKey().toString() : path.toString();
+                present.add(key);
+                long offset = offsets.getOrDefault(key, 0L);
+                if (attributes.size() < offset) {
+                    log.warn("CSV CDR 文件被截断，从头导入: {}", path);
+                    offset = 0;
+                }
+                if (attributes.size() > offset) {
+                    files++;
+                    importFile(path, key, offset, counts);
+                }
+            }
+            completed = true;
+        } catch (IOException | RuntimeException e) {
+            lastError = e.getMessage();
+            throw e;
+        } finally {
+            // 完整扫描过目录后，已不存在的文件不再追踪
+            boolean pruned = completed && offsets.keySet().retainAll(present);
+            if (pruned || counts.bytes > 0) {
+                saveOffsets();
+            }
+            trackedFiles = offsets.size();
+            totalRejected.add(counts.rejected.sum());
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        CsvCdrImportResult result = CsvCdrImportResult.builder()
+                .files(files)
+                .bytes(counts.bytes)
+                .rows(counts.rows)
+                .rejected(counts.rejected.sum())
+                .elapsedMs(elapsedMs)
+                .rowsPerSecond(elapsedMs == 0 ? counts.rows : counts.rows * 1000 / elapsedMs)
+                .finishedAt(LocalDateTime.now())
+                .build();
+        lastError = null;
+        if (counts.bytes > 0) {
+            lastImport = result;
+            log.info("CSV CDR 导入完成: files={}, bytes={}, rows={}, rejected={}, elapsedMs={}, rowsPerSec={}",
+                    files, result.getBytes(), result.getRows(), result.getRejected(), elapsedMs, result.getRowsPerSecond());
+        }
+        return result;
+    }
+
+    /**
+     * 按窗口映射 [offset, size) 并导入其中的完整行，每个窗口入库成功后推进偏移量
+     */
+    private void importFile(Path path, String key, long offset, Counts counts) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            while (offset < size) {
+                long length = Math.min(config.getWindowBytes(), size - offset);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                long complete = lastNewline(buffer, (int) length) + 1;
+                if (complete == 0) {
+                    if (length < config.getWindowBytes()) {
+                        // 只有一行未写完，等下次扫描
+                        break;
+                    }
+                    long next = nextLineStart(channel, offset + length, size);
+                    if (next < 0) {
+                        // 超长行还没写完，写完后再整行跳过，避免下一窗口从行中间开始
+                        break;
+                    }
+                    log.error("CSV CDR 单行超过映射窗口，已跳过: file={}, offset={}, bytes={}", path, offset, next - offset);
+                    complete = next - offset;
+                } else {
+                    List<CallRecord> records = parsePool.invoke(new ParseTask(buffer, 0, (int) complete, counts.rejected));
+                    for (int from = 0; from < records.size(); from += config.getBatchSize()) {
+                        cdrBulkImporter.merge(records.subList(from, Math.min(records.size(), from + config.getBatchSize())));
+                    }
+                    counts.rows += records.size();
+                    totalRows.add(records.size());
+                }
+                offset += complete;
+                offsets.put(key, offset);
+                counts.bytes += complete;
+                totalBytes.add(complete);
+            }
+        }
+    }
+
+    /**
+     * 从 from 起逐窗口查找下一个换行符，返回其后一字节的偏移量；文件中还没有换行符时返回 -1
+     */
+    private long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        while (from < size) {
+            long length = Math.min(config.getWindowBytes(), size - from);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            from += length;
+        }
+        return -1;
+    }
+
+    private static int lastNewline(MappedByteBuffer buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把 [from, to) 在行边界处二分，直到不超过 chunkBytes 后逐行解析
+     */
+    private final class ParseTask extends RecursiveTask<List<CallRecord>> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient MappedByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private final transient LongAdder rejected;
+
+        private ParseTask(MappedByteBuffer buffer, int from, int to, LongAdder rejected) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.rejected = rejected;
+        }
+
+        @Override
+        protected List<CallRecord> compute() {
+            if (to - from > config.getChunkBytes()) {
+                int mid = from + (to - from) / 2;
+                while (mid < to && buffer.get(mid - 1) != '\n') {
+                    mid++;
+                }
+                if (mid < to) {
+                    ParseTask left = new ParseTask(buffer, from, mid, rejected);
+                    left.fork();
+                    List<CallRecord> right = new ParseTask(buffer, mid, to, rejected).compute();
+                    List<CallRecord> result = left.join();
+                    result.addAll(right);
+                    return result;
+                }
+            }
+            return parseLines();
+        }
+
+        private List<CallRecord> parseLines() {
+            List<CallRecord> records = new ArrayList<>();
+            LineParser parser = new LineParser(buffer);
+            int lineStart = from;
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == '\n') {
+                    if (i > lineStart) {
+                        CallRecord record = parser.parse(lineStart, i);
+                        if (record != null) {
+                            records.add(record);
+                        } else {
+                            rejected.increment();
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            return records;
+        }
+    }
+
+    /**
+     * 直接在映射内存上解析一行 CSV（双引号包裹，"" 转义），只为需要的列创建字符串
+     */
+    private final class LineParser {
+
+        private final MappedByteBuffer buffer;
+        private final String[] fields;
+        private byte[] scratch = new byte[256];
+
+        private LineParser(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            int maxColumn = Math.max(Math.max(Math.max(config.getUuidColumn(), config.getCallerNumberColumn()),
+                            Math.max(config.getDestinationNumberColumn(), config.getStartStampColumn())),
+                    Math.max(Math.max(config.getAnswerStampColumn(), config.getEndStampColumn()),
+                            Math.max(config.getDurationColumn(), config.getDirectionColumn())));
+            this.fields = new String[maxColumn + 1];
+        }
+
+        private CallRecord parse(int start, int end) {
+            if (buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            Arrays.fill(fields, null);
+            int column = 0;
+            int i = start;
+            while (i <= end && column < fields.length) {
+                int length = 0;
+                if (i < end && buffer.get(i) == '"') {
+                    i++;
+                    while (i < end) {
+                        byte b = buffer.get(i);
+                        if (b == '"') {
+                            if (i + 1 < end && buffer.get(i + 1) == '"') {
+                                i++;
+                            } else {
+                                i++;
+                                break;
+                            }
+                        }
+                        length = put(length, b);
+                        i++;
+                    }
+                    while (i < end && buffer.get(i) != ',') {
+                        i++;
+                    }
+                } else {
+                    while (i < end && buffer.get(i) != ',') {
+                        length = put(length, buffer.get(i));
+                        i++;
+                    }
+                }
+                fields[column++] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                i++;
+            }
+            CallRecord record = cdrParser.build(
+                    field(config.getUuidColumn()),
+                    field(config.getCallerNumberColumn()),
+                    field(config.getDestinationNumberColumn()),
+                    field(config.getStartStampColumn()),
+                    field(config.getAnswerStampColumn()),
+                    field(config.getEndStampColumn()),
+                    parseDuration(field(config.getDurationColumn())),
+                    field(config.getDirectionColumn()));
+            return record == null || CdrBulkImporter.validate(record) != null ? null : record;
+        }
+
+        private int put(int length, byte b) {
+            if (length == scratch.length) {
+                scratch = Arrays.copyOf(scratch, length * 2);
+            }
+            scratch[length] = b;
+            return length + 1;
+        }
+
+        private String field(int column) {
+            if (column < 0) {
+                return null;
+            }
+            String value = fields[column];
+            return value == null || value.isEmpty() ? null : value;
+        }
+
+        private Integer parseDuration(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Counts {
+        private long bytes;
+        private long rows;
+        private final LongAdder rejected = new LongAdder();
+    }
+
+    private void loadOffsets() throws IOException {
+        if (offsetsLoaded) {
+            return;
+        }
+        Path stateFile = Paths.get(config.getStateFile());
+        if (Files.exists(stateFile)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            for (String key : properties.stringPropertyNames()) {
+                offsets.put(key, Long.parseLong(properties.getProperty(key)));
+            }
+        }
+        offsetsLoaded = true;
+    }
+
+    /**
+     * 先写临时文件再原子替换，进程崩溃时最多重复导入最后一个窗口，入库是幂等的
+     */
+    private void saveOffsets() throws IOException {
+        Path stateFile = Paths.get(config.getStateFile()).toAbsolutePath();
+        Files.createDirectories(stateFile.getParent());
+        Properties properties = new Properties();
+        offsets.forEach((key, offset) -> properties.setProperty(key, Long.toString(offset)));
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "mod_cdr_csv import offsets");
+        }
+        Files.move(tmp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public CsvCdrImportStats getStats() {
+        return CsvCdrImportStats.builder()
+                .enabled(config.isEnabled())
+                .directory(config.getDirectory())
+                .trackedFiles(trackedFiles)
+                .scans(scans.sum())
+                .totalRows(totalRows.sum())
+                .totalRejected(totalRejected.sum())
+                .totalBytes(totalBytes.sum())
+                .lastImport(lastImport)
+                .lastError(lastError)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (scanner != null) {
+            scanner.interrupt();
+        }
+        parsePool.shutdown();
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.DirectoryCacheConfig;
+import io.github.nwen.freecallcenterapi.dto.DirectoryCacheStats;
+import io.github.nwen.freecallcenterapi.entity.Extension;
+import io.github.nwen.freecallcenterapi.repository.ExtensionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FreeSWITCH 目录 XML（mod_xml_curl directory）
+ * 每次 SIP REGISTER / INVITE 都会请求目录，这里按 (domain, user) 缓存渲染好的 UTF-8 字节，
+ * 不存在或已禁用的分机也缓存（负缓存，TTL 更短），分机增删改时由 ExtensionService 主动失效。
+ * 并发未命中同一分机时只查一次数据库，其余请求等待同一个加载结果。
+ */
+@Slf4j
+@Service
+public class DirectoryService {
+
+    private record Key(String domain, String user) {
+    }
+
+    private record Entry(byte[] body, boolean negative, long expiresAt) {
+    }
+
+    private final ExtensionRepository extensionRepository;
+    private final DirectoryCacheConfig config;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    /** 每次失效加一，加载开始后发生过失效的结果不写入缓存，避免旧数据覆盖失效 */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public DirectoryService(ExtensionRepository extensionRepository, DirectoryCacheConfig config,
+                            PlatformTransactionManager transactionManager) {
+        this.extensionRepository = extensionRepository;
+        this.config = config;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 指定分机的目录 XML；分机不存在或已禁用时返回不含用户的空目录
+     */
+    public byte[] userXml(String domain, String user) {
+        if (!config.isEnabled()) {
+            return load(domain, user).body();
+        }
+        Key key = new Key(domain, user);
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.expiresAt() < 0) {
+            if (entry.negative()) {
+                negativeHits.increment();
+            }
+            hits.increment();
+            return entry.body();
+        }
+        misses.increment();
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = loading.putIfAbsent(key, mine);
+        if (existing != null) {
+            return existing.join().body();
+        }
+        try {
+            long version = generation.get();
+            Entry loaded = load(domain, user);
+            if (generation.get() == version) {
+                entries.put(key, loaded);
+                // 检查与写入之间可能发生了失效：失效先加版本号再删除，写入后版本号变了就撤回本次写入
+                if (generation.get() != version) {
+                    entries.remove(key, loaded);
+                } else {
+                    evictIfNeeded();
+                }
+            }
+            mine.complete(loaded);
+            return loaded.body();
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * 不指定用户时的域级目录，不查询数据库，无需缓存
+     */
+    public byte[] domainXml(String domain) {
+        return buildDomainXml(domain).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 域下全部启用分机的 ETag，由数据库中的内容指纹计算，不需要读取全部分机
+     */
+    public String domainEtag(String domain) {
+        return "\"" + Integer.toHexString(domain.hashCode()) + "-" + extensionRepository.enabledFingerprint() + "\"";
+    }
+
+    /**
+     * 把域下全部启用的分机写成一个目录文档。通过游标逐行读取、逐个用户写出，内存占用与分机数量无关。
+     */
+    public void writeDomainXml(String domain, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<document type=\"freeswitch/xml\">\n");
+        writer.write("  <section name=\"directory\">\n");
+        writer.write("    <domain name=\"" + escape(domain) + "\">\n");
+        writer.write("      <params>\n");
+        writer.write("        <param name=\"dial-string\" value=\"{presence_id=${dialed_user}@${dialed_domain}}${sofia_contact(${dialed_user}@${dialed_domain})}\"/>\n");
+        writer.write("      </params>\n");
+        writer.write("      <groups>\n");
+        writer.write("        <group name=\"default\">\n");
+        writer.write("          <users>\n");
+        int[] count = {0};
+        // PostgreSQL 游标按 fetchSize 分批拉取需要关闭自动提交，因此放在只读事务中
+        readOnlyTransaction.executeWithoutResult(status -> {
+            StringBuilder user = new StringBuilder(768);
+            try (Cursor<Extension> cursor = extensionRepository.streamEnabled()) {
+                for (Extension extension : cursor) {
+                    user.setLength(0);
+                    appendUser(user, domain, extension);
+                    writer.append(user);
+                    count[0]++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.write("          </users>\n");
+        writer.write("        </group>\n");
+        writer.write("      </groups>\n");
+        writer.write("    </domain>\n");
+        writer.write("  </section>\n");
+        writer.write("</document>\n");
+        writer.flush();
+        log.info("全域目录已输出: domain={}, users={}", domain, count[0]);
+    }
+
+    /**
+     * 分机新增、修改、删除、启停后调用，清除所有域下该分机的缓存（含负缓存）
+     */
+    public void invalidate(String extensionNumber) {
+        if (extensionNumber == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        entries.keySet().removeIf(key -> key.user().equals(extensionNumber));
+        invalidations.increment();
+        log.debug("目录缓存已失效: user={}", extensionNumber);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        invalidations.increment();
+    }
+
+    public DirectoryCacheStats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return DirectoryCacheStats.builder()
+                .size(entries.size())
+                .maxEntries(config.getMaxEntries())
+                .hits(hitCount)
+                .negativeHits(negativeHits.sum())
+                .misses(missCount)
+                .loads(loads.sum())
+                .evictions(evictions.sum())
+                .invalidations(invalidations.sum())
+                .hitRatio(total == 0 ? 0 : (double) hitCount / total)
+                .build();
+    }
+
+    private Entry load(String domain, String user) {
+        loads.increment();
+        // 目前分机没有存储domain，所以这里直接使用domain即可
+        Optional<Extension> extensionOpt = extensionRepository.findByExtensionNumber(user);
+        long now = System.nanoTime();
+        if (extensionOpt.isEmpty()) {
+            log.warn("Extension not found: {}", user);
+            return negative(domain, now);
+        }
+        Extension extension = extensionOpt.get();
+        if (!Boolean.TRUE.equals(extension.getEnabled())) {
+            log.warn("Extension {} is disabled, not returning dialstring", user);
+            return negative(domain, now);
+        }
+        log.info("Found extension: {} for domain {}", extension.getExtensionNumber(), domain);
+        byte[] body = buildDirectoryXml(domain, extension).getBytes(StandardCharsets.UTF_8);
+        return new Entry(body, false, now + TimeUnit.MILLISECONDS.toNanos(config.getTtlMs()));
+    }
+
+    private Entry negative(String domain, long now) {
+        byte[] body = buildNotFoundResponse(domain).getBytes(StandardCharsets.UTF_8);
+        return new Entry(body, true, now + TimeUnit.MILLISECONDS.toNanos(config.getNegativeTtlMs()));
+    }
+
+    /**
+     * 超出上限时先清理过期条目，仍超出则淘汰约 10%，避免维护 LRU 链表带来的写竞争
+     */
+    private void evictIfNeeded() {
+        if (entries.size() <= config.getMaxEntries()) {
+            return;
+        }
+        long now = System.nanoTime();
+        entries.entrySet().removeIf(e -> {
+            boolean expired = now - e.getValue().expiresAt() >= 0;
+            if (expired) {
+                evictions.increment();
+            }
+            return expired;
+        });
+        if (entries.size() <= config.getMaxEntries()) {
+            return;
+        }
+        int excess = entries.size() - config.getMaxEntries() + config.getMaxEntries() / 10;
+        // ConcurrentHashMap 按哈希桶顺序遍历，与插入顺序无关，相当于随机淘汰
+        Iterator<Key> it = entries.keySet().iterator();
+        while (excess > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+            excess--;
+        }
+    }
+
+    private String buildDirectoryXml(String domain, Extension extension) {
+        StringBuilder xml = new StringBuilder(1024);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<document type=\"freeswitch/xml\">\n");
+        xml.append("  <section name=\"directory\">\n");
+        xml.append("    <domain name=\"").append(escape(domain)).append("\">\n");
+        xml.append("      <params>\n");
+        xml.append("        <param name=\"dial-string\" value=\"{presence_id=${dialed_user}@${dialed_domain}}${sofia_contact(${dialed_user}@${dialed_domain})}\"/>\n");
+        xml.append("      </params>\n");
+        xml.append("      <groups>\n");
+        xml.append("        <group name=\"default\">\n");
+        xml.append("          <users>\n");
+        appendUser(xml, domain, extension);
+        xml.append("          </users>\n");
+        xml.append("        </group>\n");
+        xml.append("      </groups>\n");
+        xml.append("    </domain>\n");
+        xml.append("  </section>\n");
+        xml.append("</document>\n");
+        return xml.toString();
+    }
+
+    private void appendUser(StringBuilder xml, String domain, Extension extension) {
+        xml.append("            <user id=\"").append(escape(extension.getExtensionNumber())).append("\">\n");
+        xml.append("              <params>\n");
+        xml.append("                <param name=\"password\" value=\"").append(escape(extension.getPassword())).append("\"/>\n");
+        xml.append("              </params>\n");
+        xml.append("              <variables>\n");
+        xml.append("                <variable name=\"user_context\" value=\"").append(escape(extension.getContext())).append("\"/>\n");
+        xml.append("                <variable name=\"effective_caller_id_name\" value=\"").append(escape(extension.getDisplayName())).append("\"/>\n");
+        xml.append("                <variable name=\"effective_caller_id_number\" value=\"").append(escape(extension.getExtensionNumber())).append("\"/>\n");
+        xml.append("                <variable name=\"domain_name\" value=\"").append(escape(domain)).append("\"/>\n");
+        xml.append("              </variables>\n");
+        xml.append("            </user>\n");
+    }
+
+    /**
+     * 属性值转义，全域目录是一个整体文档，任何一个分机的特殊字符都会让 FreeSWITCH 解析失败
+     */
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&apos;";
+                default -> null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    private String buildDomainXml(String domain) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<document type=\"freeswitch/xml\">\n");
+        xml.append("  <section name=\"directory\">\n");
+        xml.append("    <domain name=\"").append(escape(domain)).append("\">\n");
+        xml.append("      <params>\n");
+        xml.append("        <param name=\"dial-string\" value=\"{presence_id=${dialed_user}@${dialed_domain}}${sofia_contact(${dialed_user}@${dialed_domain})}\"/>\n");
+        xml.append("      </params>\n");
+        xml.append("      <groups>\n");
+        xml.append("        <group name=\"default\">\n");
+        xml.append("          <users>\n");
+        xml.append("          </users>\n");
+        xml.append("        </group>\n");
+        xml.append("      </groups>\n");
+        xml.append("    </domain>\n");
+        xml.append("  </section>\n");
+        xml.append("</document>\n");
+        return xml.toString();
+    }
+
+    private String buildNotFoundResponse(String domain) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<document type=\"freeswitch/xml\">\n");
+        xml.append("  <section name=\"directory\">\n");
+        xml.append("    <domain name=\"").append(escape(domain)).append("\">\n");
+        xml.append("      <groups>\n");
+        xml.append("        <group name=\"default\">\n");
+        xml.append("          <users>\n");
+        xml.append("          </users>\n");
+        xml.append("        </group>\n");
+        xml.append("      </groups>\n");
+        xml.append("    </domain>\n");
+        xml.append("  </section>\n");
+        xml.append("</document>\n");
+        return xml.toString();
+    }
+}
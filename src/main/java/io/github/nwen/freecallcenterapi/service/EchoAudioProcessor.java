@@ -0,0 +1,15 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 回声处理器：把收到的音频帧原样发回 FreeSWITCH，用于联调 audio_stream 链路
+ */
+@Component("echoProcessor")
+public class EchoAudioProcessor implements AudioProcessor {
+
+    @Override
+    public void process(AudioStream stream, AudioFrame frame) throws Exception {
+        stream.send(frame.bytes());
+    }
+}
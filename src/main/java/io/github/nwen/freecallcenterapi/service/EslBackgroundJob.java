@@ -0,0 +1,10 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * bgapi 异步命令：jobUuid 为 FreeSWITCH 返回的 Job-UUID，result 在收到对应的 BACKGROUND_JOB 事件后完成。
+ * 发送失败时 jobUuid 为 null，result 以异常结束。
+ */
+public record EslBackgroundJob(String jobUuid, CompletableFuture<String> result) {
+}
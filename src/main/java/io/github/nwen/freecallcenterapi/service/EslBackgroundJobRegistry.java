@@ -0,0 +1,69 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.freeswitch.esl.client.transport.event.EslEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bgapi Job-UUID 与 CompletableFuture 的关联
+ * ESL 客户端在独立线程上回调 BACKGROUND_JOB 事件，结果可能早于发送方拿到 Job-UUID 到达，
+ * 因此两侧都通过 computeIfAbsent 取同一个 future，谁先到谁创建。
+ */
+@Slf4j
+@Component
+public class EslBackgroundJobRegistry {
+
+    /** 无人认领的结果（发送方已超时或取消）保留的时间 */
+    private static final long STALE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private record PendingJob(CompletableFuture<String> future, long createdAt) {
+    }
+
+    private final Map<String, PendingJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一个已发送的 bgapi 任务。超时或调用方取消后 future 结束并移出登记表。
+     */
+    public CompletableFuture<String> register(String jobUuid, Duration timeout) {
+        purgeStale();
+        CompletableFuture<String> future = jobs.computeIfAbsent(jobUuid, this::newJob).future();
+        future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> jobs.remove(jobUuid));
+        return future;
+    }
+
+    /**
+     * 由 IEslEventListener.backgroundJobResultReceived 调用
+     */
+    public void complete(EslEvent event) {
+        String jobUuid = event.getEventHeaders().get("Job-UUID");
+        if (jobUuid == null) {
+            return;
+        }
+        complete(jobUuid, String.join("\n", event.getEventBodyLines()).trim());
+    }
+
+    public void complete(String jobUuid, String result) {
+        log.debug("BACKGROUND_JOB 完成: jobUuid={}, result={}", jobUuid, result);
+        jobs.computeIfAbsent(jobUuid, this::newJob).future().complete(result);
+    }
+
+    public int pendingCount() {
+        return jobs.size();
+    }
+
+    private PendingJob newJob(String jobUuid) {
+        return new PendingJob(new CompletableFuture<>(), System.nanoTime());
+    }
+
+    private void purgeStale() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.future().isDone() && now - job.createdAt() > STALE_NANOS);
+    }
+}
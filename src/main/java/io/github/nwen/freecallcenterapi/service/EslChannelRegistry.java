@@ -0,0 +1,65 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通道归属：记录每个 UUID 所在的 FreeSWITCH 节点以及各节点当前的在线通道数
+ * 由 EslEventListenerService 根据 CHANNEL_CREATE / CHANNEL_HANGUP 和重连后的通道快照维护，
+ * 供 uuid_* 命令路由到通道所在节点、originate 按负载选择节点。
+ */
+@Component
+public class EslChannelRegistry {
+
+    private final Map<String, String> ownerByUuid = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> liveByNode = new ConcurrentHashMap<>();
+
+    public void channelCreated(String uuid, String node) {
+        String previous = ownerByUuid.put(uuid, node);
+        if (node.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            counter(previous).decrementAndGet();
+        }
+        counter(node).incrementAndGet();
+    }
+
+    public void channelDestroyed(String uuid) {
+        String previous = ownerByUuid.remove(uuid);
+        if (previous != null) {
+            counter(previous).decrementAndGet();
+        }
+    }
+
+    /**
+     * 用节点的通道快照替换该节点的归属信息，断线期间错过的创建和挂断在这里对齐
+     */
+    public void replaceNode(String node, Set<String> uuids) {
+        ownerByUuid.forEach((uuid, owner) -> {
+            if (node.equals(owner) && !uuids.contains(uuid) && ownerByUuid.remove(uuid, owner)) {
+                counter(owner).decrementAndGet();
+            }
+        });
+        for (String uuid : uuids) {
+            channelCreated(uuid, node);
+        }
+    }
+
+    public String ownerOf(String uuid) {
+        return uuid != null ? ownerByUuid.get(uuid) : null;
+    }
+
+    public int liveChannels(String node) {
+        AtomicInteger count = liveByNode.get(node);
+        return count != null ? Math.max(0, count.get()) : 0;
+    }
+
+    private AtomicInteger counter(String node) {
+        return liveByNode.computeIfAbsent(node, k -> new AtomicInteger());
+    }
+}
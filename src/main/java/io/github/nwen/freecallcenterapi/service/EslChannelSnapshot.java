@@ -0,0 +1,61 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析 "show channels as json" 的结果，用于重连后重建进行中的通话
+ * 格式: {"row_count":N,"rows":[{"uuid":"...","direction":"inbound","created_epoch":"...","cid_num":"...","dest":"...","callstate":"ACTIVE"}]}
+ */
+public final class EslChannelSnapshot {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private EslChannelSnapshot() {
+    }
+
+    public static List<CallRecord> parse(String json) throws Exception {
+        List<CallRecord> records = new ArrayList<>();
+        if (json == null || json.isBlank()) {
+            return records;
+        }
+        JsonNode rows = OBJECT_MAPPER.readTree(json).path("rows");
+        for (JsonNode row : rows) {
+            String uuid = row.path("uuid").asText(null);
+            if (uuid == null || uuid.isEmpty()) {
+                continue;
+            }
+            String callstate = row.path("callstate").asText("");
+            boolean answered = "ACTIVE".equals(callstate) || "HELD".equals(callstate);
+            records.add(CallRecord.builder()
+                    .callId(uuid)
+                    .callerNumber(textOrDefault(row, "cid_num", "unknown"))
+                    .calleeNumber(textOrDefault(row, "dest", null))
+                    .direction(textOrDefault(row, "direction", "outbound"))
+                    .startTime(startTime(row))
+                    .status(answered ? "ANSWERED" : "INITIATED")
+                    .build());
+        }
+        return records;
+    }
+
+    private static String textOrDefault(JsonNode row, String field, String defaultValue) {
+        String value = row.path(field).asText("");
+        return value.isEmpty() ? defaultValue : value;
+    }
+
+    private static LocalDateTime startTime(JsonNode row) {
+        long epoch = row.path("created_epoch").asLong(0);
+        if (epoch <= 0) {
+            return LocalDateTime.now();
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epoch), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.freeswitch.esl.client.inbound.Client;
+
+/**
+ * ESL 事件连接建立（含断线重连）后的回调，用于重新注册事件监听和订阅；多节点时每个节点各回调一次
+ */
+@FunctionalInterface
+public interface EslConnectionListener {
+
+    void onConnected(String node, Client client);
+}
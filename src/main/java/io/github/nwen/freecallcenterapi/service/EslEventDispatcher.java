@@ -0,0 +1,167 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.EslDispatcherConfig;
+import io.github.nwen.freecallcenterapi.dto.EslDispatcherStats;
+import io.github.nwen.freecallcenterapi.dto.EslLaneStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ESL 事件分发器
+ * ESL 客户端只有一个回调线程，所有事件在其上串行处理，一个慢的 DB 写入或 uuid_audio_stream 命令会拖住其他通话。
+ * 这里按 Unique-ID 哈希到固定通道：同一通话的事件在同一通道内保持顺序，不同通话在多个通道上并行处理。
+ * 每个通道是一个有界队列 + 一个虚拟线程。
+ */
+@Slf4j
+@Service
+public class EslEventDispatcher {
+
+    private record Task(Runnable runnable, long enqueuedAt) {
+    }
+
+    private final EslDispatcherConfig config;
+    private final List<Lane> lanes = new ArrayList<>();
+    private volatile boolean running;
+
+    public EslEventDispatcher(EslDispatcherConfig config) {
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        int laneCount = Math.max(1, config.getLanes());
+        for (int i = 0; i < laneCount; i++) {
+            Lane lane = new Lane(i, config.getQueueCapacity());
+            lanes.add(lane);
+            lane.thread = Thread.ofVirtual().name("esl-lane-" + i).start(lane::run);
+        }
+        log.info("ESL 事件分发器已启动: lanes={}, queueCapacity={}", laneCount, config.getQueueCapacity());
+    }
+
+    /**
+     * 按 key（通常是 Unique-ID）分发任务，相同 key 的任务按提交顺序执行。
+     * 通道队列满时阻塞调用方，把背压传导回 ESL 连接。
+     */
+    public void dispatch(String key, Runnable task) {
+        if (!running) {
+            task.run();
+            return;
+        }
+        Lane lane = laneFor(key);
+        Task item = new Task(task, System.nanoTime());
+        if (!lane.queue.offer(item)) {
+            lane.fullWaits.increment();
+            try {
+                lane.queue.put(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("ESL 事件分发被中断: key={}", key);
+            }
+        }
+    }
+
+    private Lane laneFor(String key) {
+        if (key == null) {
+            return lanes.get(0);
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return lanes.get(Math.floorMod(h, lanes.size()));
+    }
+
+    public EslDispatcherStats getStats() {
+        List<EslLaneStats> laneStats = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            long processed = lane.processed.sum();
+            laneStats.add(EslLaneStats.builder()
+                    .lane(lane.index)
+                    .depth(lane.queue.size())
+                    .processed(processed)
+                    .failed(lane.failed.sum())
+                    .fullWaits(lane.fullWaits.sum())
+                    .avgLatencyMicros(processed > 0 ? lane.totalLatencyNanos.sum() / processed / 1000 : 0)
+                    .maxLatencyMicros(lane.maxLatencyNanos.get() / 1000)
+                    .build());
+        }
+        return EslDispatcherStats.builder()
+                .lanes(lanes.size())
+                .queueCapacity(config.getQueueCapacity())
+                .laneStats(laneStats)
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getShutdownTimeoutMs());
+        for (Lane lane : lanes) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    lane.thread.join(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+                if (lane.thread.isAlive()) {
+                    lane.thread.interrupt();
+                    log.warn("ESL 事件通道 {} 未在超时内排空，剩余 {} 个事件", lane.index, lane.queue.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("ESL 事件分发器已关闭");
+    }
+
+    private class Lane {
+
+        private final int index;
+        private final BlockingQueue<Task> queue;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder fullWaits = new LongAdder();
+        /** 从入队到处理完成的耗时 */
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private Thread thread;
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void run() {
+            while (running || !queue.isEmpty()) {
+                Task task;
+                try {
+                    task = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.runnable().run();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("ESL 事件处理失败: lane={}", index, e);
+                }
+                long latency = System.nanoTime() - task.enqueuedAt();
+                processed.increment();
+                totalLatencyNanos.add(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.freeswitch.esl.client.transport.event.EslEvent;
+
+import java.util.Set;
+
+/**
+ * ESL 事件处理器
+ * 每个处理器声明自己关心的事件名和 CUSTOM 子类，EslEventListenerService 据此向 FreeSWITCH 发起最小范围的订阅和过滤，
+ * 并只把匹配的事件分发给对应处理器。
+ */
+public interface EslEventHandler {
+
+    /** 需要订阅的事件名，如 CHANNEL_CREATE */
+    Set<String> eventNames();
+
+    /** 需要订阅的 CUSTOM 事件子类，如 sofia::register */
+    default Set<String> eventSubclasses() {
+        return Set.of();
+    }
+
+    /**
+     * @param node  事件来源的 FreeSWITCH 节点名
+     */
+    void handle(String node, EslEvent event);
+}
@@ -1,113 +1,270 @@
 package io.github.nwen.freecallcenterapi.service;
 
 import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import io.github.nwen.freecallcenterapi.dto.EslEventStats;
 import io.github.nwen.freecallcenterapi.entity.CallRecord;
-import io.github.nwen.freecallcenterapi.service.impl.EslConnectionManagerImpl;
 import lombok.extern.slf4j.Slf4j;
 import org.freeswitch.esl.client.IEslEventListener;
 import org.freeswitch.esl.client.inbound.Client;
 import org.freeswitch.esl.client.transport.event.EslEvent;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Service
 public class EslEventListenerService {
 
+    private static final String BACKGROUND_JOB = "BACKGROUND_JOB";
+    /** 已处理的挂断保留这么久，足以覆盖重连时通道快照的往返 */
+    private static final long RECENT_HANGUP_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
     private final EslService eslService;
-    private final CallRecordService callRecordService;
+    private final CallRecordWriter callRecordWriter;
+    private final EslEventDispatcher eventDispatcher;
+    private final EslBackgroundJobRegistry backgroundJobRegistry;
+    private final EslChannelRegistry channelRegistry;
+    private final RealtimeCallMetrics realtimeMetrics;
     private final AiAgentConfig aiAgentConfig;
-    private Client eslClient;
+    private final AiAudioSessionRegistry aiAudioSessions;
+    private final EslEventSubscription subscription;
+    /** 事件名（CUSTOM 事件为子类名）→ 处理器 */
+    private final Map<String, List<EslEventHandler>> handlersByEvent = new HashMap<>();
+
+    private final LongAdder eventsReceived = new LongAdder();
+    private final LongAdder eventsHandled = new LongAdder();
+    private final Map<String, LongAdder> handledByEvent = new ConcurrentHashMap<>();
 
     private final Map<String, CallRecord> pendingCalls = new ConcurrentHashMap<>();
-    /** 追踪 AI 智能体通话的 UUID */
-    private final Set<String> aiAgentCallIds = new CopyOnWriteArraySet<>();
+    /** callId → 处理挂断事件时的 nanoTime，重建时据此跳过快照里已经挂断的通道 */
+    private final Map<String, Long> recentHangups = new ConcurrentHashMap<>();
+    private volatile long nextHangupPruneNanos;
 
-    public EslEventListenerService(EslService eslService, CallRecordService callRecordService, AiAgentConfig aiAgentConfig) {
+    public EslEventListenerService(EslService eslService, CallRecordWriter callRecordWriter,
+                                   EslEventDispatcher eventDispatcher, EslBackgroundJobRegistry backgroundJobRegistry,
+                                   EslChannelRegistry channelRegistry, RealtimeCallMetrics realtimeMetrics,
+                                   AiAgentConfig aiAgentConfig, AiAudioSessionRegistry aiAudioSessions,
+                                   List<EslEventHandler> eventHandlers) {
         this.eslService = eslService;
-        this.callRecordService = callRecordService;
+        this.callRecordWriter = callRecordWriter;
+        this.eventDispatcher = eventDispatcher;
+        this.backgroundJobRegistry = backgroundJobRegistry;
+        this.channelRegistry = channelRegistry;
+        this.realtimeMetrics = realtimeMetrics;
         this.aiAgentConfig = aiAgentConfig;
+        this.aiAudioSessions = aiAudioSessions;
+
+        List<EslEventHandler> handlers = new ArrayList<>(eventHandlers);
+        handlers.add(new ExtensionEventListener());
+        for (EslEventHandler handler : handlers) {
+            for (String name : handler.eventNames()) {
+                handlersByEvent.computeIfAbsent(name, k -> new ArrayList<>()).add(handler);
+            }
+            for (String subclass : handler.eventSubclasses()) {
+                handlersByEvent.computeIfAbsent(subclass, k -> new ArrayList<>()).add(handler);
+            }
+        }
+        // bgapi 的执行结果以 BACKGROUND_JOB 事件返回，由 ESL 客户端单独回调 backgroundJobResultReceived
+        this.subscription = EslEventSubscription.of(handlers).withEventName(BACKGROUND_JOB);
     }
 
-    @EventListener(ApplicationReadyEvent.class)
+    @PostConstruct
     public void init() {
-        Thread.startVirtualThread(() -> {
-            try {
-                for (int i = 0; i < 30; i++) {
-                    if (eslService.isConnected()) {
-                        startListening();
-                        return;
-                    }
-                    Thread.sleep(1000);
-                }
-                log.warn("ESL not connected after 30 seconds, event listening not started");
-            } catch (Exception e) {
-                log.warn("Failed to start ESL event listening: {}", e.getMessage());
-            }
-        });
+        // 首次连接及每次重连成功后都会回调，新的 Client 需要重新注册监听和订阅
+        eslService.addConnectionListener(this::onConnected);
+    }
+
+    private void onConnected(String node, Client client) {
+        client.addEventListener(new EventRouter(node));
+        subscribe(client);
+        log.info("ESL event listening started: node={}, event plain {}", node, subscription.eventArgument());
+        rebuildPendingCalls(node);
     }
 
-    public void startListening() {
+    /**
+     * 断线期间的 CHANNEL_* 事件已丢失，用该节点的 "show channels as json" 对齐内存中的进行中通话和通道归属：
+     * 补齐断线期间新建的通话，移除断线期间已挂断的通话。
+     * 新连接在快照之前已经订阅，快照里的通道可能已由本连接处理过挂断，这些通道不再补回。
+     * 应答时间无法从快照中准确得到，不做伪造，最终以 CDR 为准。
+     */
+    void rebuildPendingCalls(String node) {
+        LocalDateTime snapshotTime = LocalDateTime.now();
+        String json = eslService.sendCommand(node, "show channels as json");
+        if (json == null) {
+            log.warn("获取通道快照失败，跳过通话重建: node={}", node);
+            return;
+        }
+        List<CallRecord> channels;
         try {
-            if (eslService.isConnected()) {
-                eslClient = ((EslConnectionManagerImpl) eslService).getClient();
-                eslClient.addEventListener(new ExtensionEventListener());
-                eslClient.setEventSubscriptions("plain", "all");
-                log.info("ESL event listening started");
-            } else {
-                log.warn("ESL not connected, cannot start event listening");
-            }
+            channels = EslChannelSnapshot.parse(json);
         } catch (Exception e) {
-            log.warn("Failed to start ESL event listening: {}", e.getMessage());
-            if (eslClient != null) {
-                eslClient = null;
+            log.warn("解析通道快照失败: {}", e.getMessage());
+            return;
+        }
+
+        Set<String> active = new HashSet<>();
+        int added = 0;
+        for (CallRecord record : channels) {
+            String callId = record.getCallId();
+            record.setNode(node);
+            if (recentHangups.containsKey(callId)) {
+                continue;
+            }
+            active.add(callId);
+            if (record.getCalleeNumber() == null || pendingCalls.putIfAbsent(callId, record) != null) {
+                continue;
+            }
+            callRecordWriter.submitCreate(record);
+            realtimeMetrics.callRecovered(callId,
+                    extensionOf(record.getDirection(), record.getCallerNumber(), record.getCalleeNumber()),
+                    record.getDirection(), "ANSWERED".equals(record.getStatus()));
+            if (aiAgentConfig.getFreeswitchExtension().equals(record.getCalleeNumber())) {
+                aiAudioSessions.track(callId);
+            }
+            // 挂断事件恰好在上面的检查之后到达：它可能没看到刚补回的记录，由这里撤回
+            if (recentHangups.containsKey(callId)) {
+                if (pendingCalls.remove(callId, record)) {
+                    callRecordWriter.submitHangup(callId, LocalDateTime.now());
+                }
+                realtimeMetrics.callEnded(callId);
+                aiAudioSessions.release(callId);
+                continue;
+            }
+            added++;
+        }
+        channelRegistry.replaceNode(node, active);
+
+        int removed = 0;
+        for (CallRecord record : pendingCalls.values()) {
+            String callId = record.getCallId();
+            if (!node.equals(record.getNode()) || active.contains(callId) || record.getStartTime() == null || !record.getStartTime().isBefore(snapshotTime)) {
+                continue;
+            }
+            if (pendingCalls.remove(callId, record)) {
+                callRecordWriter.submitHangup(callId, snapshotTime);
+                realtimeMetrics.callEnded(callId);
+                aiAudioSessions.release(callId);
+                removed++;
             }
         }
+        log.info("通话状态已按通道快照重建: node={}, channels={}, added={}, removed={}", node, channels.size(), added, removed);
     }
 
-    private class ExtensionEventListener implements IEslEventListener {
+    private void rememberHangup(String callId) {
+        long now = System.nanoTime();
+        recentHangups.put(callId, now);
+        if (now - nextHangupPruneNanos >= 0) {
+            nextHangupPruneNanos = now + RECENT_HANGUP_RETENTION_NANOS;
+            recentHangups.values().removeIf(at -> now - at > RECENT_HANGUP_RETENTION_NANOS);
+        }
+    }
+
+    /**
+     * 通道所属的本地分机：inbound 通道（话机呼入 FreeSWITCH）是主叫，outbound 通道（FreeSWITCH 呼出到话机）是被叫
+     */
+    static String extensionOf(String direction, String callerNumber, String calleeNumber) {
+        return "inbound".equals(direction) ? callerNumber : calleeNumber;
+    }
+
+    /**
+     * 只订阅处理器声明的事件，并在服务端加 filter，避免 FreeSWITCH 推送 HEARTBEAT、PRESENCE、媒体等无关事件
+     */
+    private void subscribe(Client client) {
+        if (subscription.isEmpty()) {
+            log.warn("No ESL event handlers registered, skipping event subscription");
+            return;
+        }
+        client.setEventSubscriptions("plain", subscription.eventArgument());
+        for (Map.Entry<String, String> filter : subscription.filters()) {
+            client.addEventFilter(filter.getKey(), filter.getValue());
+        }
+    }
+
+    public EslEventStats getEventStats() {
+        long received = eventsReceived.sum();
+        long handled = eventsHandled.sum();
+        Map<String, Long> byEvent = new TreeMap<>();
+        handledByEvent.forEach((name, counter) -> byEvent.put(name, counter.sum()));
+        return EslEventStats.builder()
+                .subscription(subscription.eventArgument())
+                .received(received)
+                .handled(handled)
+                .ignored(received - handled)
+                .handledByEvent(byEvent)
+                .build();
+    }
+
+    /**
+     * 按事件名（CUSTOM 事件按子类）找到声明了该事件的处理器，再按 Unique-ID 交给分发器，
+     * 使 ESL 回调线程只做路由，不执行任何阻塞操作
+     */
+    private class EventRouter implements IEslEventListener {
+
+        private final String node;
+
+        EventRouter(String node) {
+            this.node = node;
+        }
 
         @Override
         public void eventReceived(EslEvent event) {
+            eventsReceived.increment();
             String eventName = event.getEventName();
-            log.debug("Received ESL event: {}", eventName);
-
-            if ("sofia::register".equals(eventName)) {
-                handleRegisterEvent(event);
-            } else if ("sofia::unregister".equals(eventName)) {
-                handleUnregisterEvent(event);
-            } else if (eventName != null && eventName.startsWith("CHANNEL_")) {
-                handleChannelEvent(event);
+            String key = EslEventSubscription.CUSTOM_EVENT.equals(eventName)
+                    ? event.getEventHeaders().get("Event-Subclass")
+                    : eventName;
+            List<EslEventHandler> matched = key != null ? handlersByEvent.get(key) : null;
+            if (matched == null) {
+                log.debug("Ignored ESL event: {}", key);
+                return;
             }
+            eventsHandled.increment();
+            handledByEvent.computeIfAbsent(key, k -> new LongAdder()).increment();
+            eventDispatcher.dispatch(event.getEventHeaders().get("Unique-ID"), () -> {
+                for (EslEventHandler handler : matched) {
+                    try {
+                        handler.handle(node, event);
+                    } catch (Exception e) {
+                        log.error("ESL event handler failed: event={}, handler={}", key, handler.getClass().getSimpleName(), e);
+                    }
+                }
+            });
         }
 
         @Override
         public void backgroundJobResultReceived(EslEvent event) {
+            eventsReceived.increment();
+            eventsHandled.increment();
+            handledByEvent.computeIfAbsent(BACKGROUND_JOB, k -> new LongAdder()).increment();
+            backgroundJobRegistry.complete(event);
         }
+    }
 
-        private void handleRegisterEvent(EslEvent event) {
-            String user = event.getEventHeaders().get("sip_auth_username");
-            if (user != null) {
-                log.info("分机 {} 注册成功", user);
-            }
+    private class ExtensionEventListener implements EslEventHandler {
+
+        @Override
+        public Set<String> eventNames() {
+            return Set.of("CHANNEL_CREATE", "CHANNEL_ANSWER", "CHANNEL_HANGUP");
         }
 
-        private void handleUnregisterEvent(EslEvent event) {
-            String user = event.getEventHeaders().get("sip_auth_username");
-            if (user != null) {
-                log.info("分机 {} 注销", user);
-            }
+        @Override
+        public void handle(String node, EslEvent event) {
+            handleChannelEvent(node, event);
         }
 
-        private void handleChannelEvent(EslEvent event) {
+        private void handleChannelEvent(String node, EslEvent event) {
             String eventName = event.getEventName();
             String uniqueId = event.getEventHeaders().get("Unique-ID");
             if (uniqueId == null) {
@@ -128,10 +285,12 @@ public class EslEventListenerService {
             }
 
             if ("CHANNEL_CREATE".equals(eventName)) {
-                handleChannelCreate(uniqueId, callerNumber, calleeNumber, direction, headers);
+                channelRegistry.channelCreated(uniqueId, node);
+                handleChannelCreate(node, uniqueId, callerNumber, calleeNumber, direction, headers);
             } else if ("CHANNEL_ANSWER".equals(eventName)) {
                 handleChannelAnswer(uniqueId, headers);
             } else if ("CHANNEL_HANGUP".equals(eventName)) {
+                channelRegistry.channelDestroyed(uniqueId);
                 handleChannelHangup(uniqueId, headers.get("Hangup-Cause"));
             }
         }
@@ -152,7 +311,7 @@ public class EslEventListenerService {
             return calleeNumber;
         }
 
-        private void handleChannelCreate(String uniqueId, String callerNumber, String calleeNumber,
+        private void handleChannelCreate(String node, String uniqueId, String callerNumber, String calleeNumber,
                                          String direction, Map<String, String> headers) {
             if (calleeNumber == null) {
                 return;
@@ -167,17 +326,18 @@ public class EslEventListenerService {
                     .direction(direction != null ? direction : "outbound")
                     .startTime(LocalDateTime.now())
                     .status("INITIATED")
+                    .node(node)
                     .build();
 
             pendingCalls.put(uniqueId, record);
-            callRecordService.createCallRecord(record);
-            log.info("通话创建: callId={}, caller={}, callee={}", uniqueId, effectiveCaller, calleeNumber);
+            callRecordWriter.submitCreate(record);
+            realtimeMetrics.callCreated(uniqueId, extensionOf(record.getDirection(), callerNumber, calleeNumber),
+                    record.getDirection());
+            log.info("通话创建: callId={}, node={}, caller={}, callee={}", uniqueId, node, effectiveCaller, calleeNumber);
 
             // 检测是否拨打 AI 智能体分机
-            String aiExtension = aiAgentConfig.getFreeswitchExtension();
-            if (aiExtension.equals(calleeNumber)) {
-                aiAgentCallIds.add(uniqueId);
-                log.info("AI 智能体通话已标记: callId={}, extension={}", uniqueId, aiExtension);
+            if (aiAgentConfig.getFreeswitchExtension().equals(calleeNumber)) {
+                aiAudioSessions.track(uniqueId);
             }
         }
 
@@ -185,68 +345,29 @@ public class EslEventListenerService {
             CallRecord record = pendingCalls.get(uniqueId);
             if (record != null) {
                 LocalDateTime answerTime = LocalDateTime.now();
-                callRecordService.updateCallAnswerTime(uniqueId, answerTime);
+                callRecordWriter.submitAnswer(uniqueId, answerTime);
                 record.setAnswerTime(answerTime);
                 record.setStatus("ANSWERED");
+                realtimeMetrics.callAnswered(uniqueId);
                 log.info("通话接通: callId={}", uniqueId);
 
                 // 如果是 AI 智能体通话，启动 audio_stream
-                if (aiAgentCallIds.contains(uniqueId)) {
-                    startAiAudioStream(uniqueId);
-                }
+                aiAudioSessions.start(uniqueId);
             }
         }
 
         private void handleChannelHangup(String uniqueId, String hangupCause) {
+            rememberHangup(uniqueId);
             CallRecord record = pendingCalls.remove(uniqueId);
+            realtimeMetrics.callEnded(uniqueId);
             if (record != null) {
                 LocalDateTime endTime = LocalDateTime.now();
-                callRecordService.updateCallEndTime(uniqueId, endTime);
+                callRecordWriter.submitHangup(uniqueId, endTime);
                 record.setEndTime(endTime);
                 log.info("通话挂断: callId={}, cause={}", uniqueId, hangupCause);
-
-                // 如果是 AI 智能体通话，停止 audio_stream
-                if (aiAgentCallIds.remove(uniqueId)) {
-                    stopAiAudioStream(uniqueId);
-                }
-            } else if (aiAgentCallIds.contains(uniqueId)) {
-                // record 可能已被清理，但仍需停止 audio_stream
-                aiAgentCallIds.remove(uniqueId);
-                stopAiAudioStream(uniqueId);
-                log.info("AI 通话挂断清理: callId={}", uniqueId);
-            }
-        }
-
-        /**
-         * 通过 ESL API 启动 uuid_audio_stream
-         * 将通话音频流通过 WebSocket 发送到后端
-         */
-        private void startAiAudioStream(String uniqueId) {
-            String wsUrl = aiAgentConfig.getWsUrl();
-            // mod_audio_stream 要求 start 命令至少 4 个参数: <uuid> start <url> <mode> [sampling]
-            // mode: mixed(双向)|mono(仅上行)|stereo, sampling: 8000|16000
-            String command = String.format("uuid_audio_stream %s start %s mixed 16000", uniqueId, wsUrl);
-            log.info("启动 AI audio stream: command={}", command);
-            try {
-                String result = eslService.sendCommand(command);
-                log.info("AI audio stream 启动结果: {}", result);
-            } catch (Exception e) {
-                log.error("启动 AI audio stream 失败: callId={}", uniqueId, e);
-            }
-        }
-
-        /**
-         * 通过 ESL API 停止 uuid_audio_stream
-         */
-        private void stopAiAudioStream(String uniqueId) {
-            String command = String.format("uuid_audio_stream %s stop", uniqueId);
-            log.info("停止 AI audio stream: command={}", command);
-            try {
-                String result = eslService.sendCommand(command);
-                log.debug("AI audio stream 停止结果: {}", result);
-            } catch (Exception e) {
-                log.error("停止 AI audio stream 失败: callId={}", uniqueId, e);
             }
+            // record 可能已被清理，但仍需停止 audio_stream
+            aiAudioSessions.stop(uniqueId);
         }
     }
 
@@ -0,0 +1,59 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 根据事件处理器声明的事件汇总出的 ESL 订阅
+ */
+public record EslEventSubscription(Set<String> eventNames, Set<String> eventSubclasses) {
+
+    public static final String CUSTOM_EVENT = "CUSTOM";
+
+    public static EslEventSubscription of(Collection<? extends EslEventHandler> handlers) {
+        Set<String> names = new TreeSet<>();
+        Set<String> subclasses = new TreeSet<>();
+        for (EslEventHandler handler : handlers) {
+            names.addAll(handler.eventNames());
+            subclasses.addAll(handler.eventSubclasses());
+        }
+        names.remove(CUSTOM_EVENT);
+        return new EslEventSubscription(Set.copyOf(names), Set.copyOf(subclasses));
+    }
+
+    public EslEventSubscription withEventName(String eventName) {
+        Set<String> names = new TreeSet<>(eventNames);
+        names.add(eventName);
+        return new EslEventSubscription(Set.copyOf(names), eventSubclasses);
+    }
+
+    /**
+     * event 命令的参数，如 "CHANNEL_ANSWER CHANNEL_CREATE CUSTOM sofia::register"
+     */
+    public String eventArgument() {
+        List<String> parts = new ArrayList<>(new TreeSet<>(eventNames));
+        if (!eventSubclasses.isEmpty()) {
+            parts.add(CUSTOM_EVENT);
+            parts.addAll(new TreeSet<>(eventSubclasses));
+        }
+        return String.join(" ", parts);
+    }
+
+    /**
+     * filter 命令列表（header → value），多个 filter 之间是"或"的关系
+     */
+    public List<Map.Entry<String, String>> filters() {
+        List<Map.Entry<String, String>> filters = new ArrayList<>();
+        new TreeSet<>(eventNames).forEach(name -> filters.add(Map.entry("Event-Name", name)));
+        new TreeSet<>(eventSubclasses).forEach(subclass -> filters.add(Map.entry("Event-Subclass", subclass)));
+        return filters;
+    }
+
+    public boolean isEmpty() {
+        return eventNames.isEmpty() && eventSubclasses.isEmpty();
+    }
+}
@@ -1,5 +1,9 @@
 package io.github.nwen.freecallcenterapi.service;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface EslService {
 
     boolean isConnected();
@@ -8,5 +12,33 @@ public interface EslService {
 
     void disconnect();
 
+    /**
+     * 注册连接建立回调，每次（重）连接成功后都会调用；若当前已连接则立即回调一次
+     */
+    void addConnectionListener(EslConnectionListener listener);
+
+    /**
+     * 已配置的 FreeSWITCH 节点名
+     */
+    List<String> nodeNames();
+
+    /**
+     * 执行 api 命令：uuid_* 命令发往通道所在节点，其余命令发往负载最低的节点
+     */
     String sendCommand(String command);
+
+    /**
+     * 在指定节点上执行 api 命令
+     */
+    String sendCommand(String node, String command);
+
+    /**
+     * 通过 bgapi 异步执行命令，立即返回 Job-UUID，不占用调用线程等待命令执行完成
+     */
+    EslBackgroundJob sendBackgroundCommand(String command, Duration timeout);
+
+    /**
+     * 使用默认超时的 bgapi 异步命令
+     */
+    CompletableFuture<String> sendCommandAsync(String command);
 }
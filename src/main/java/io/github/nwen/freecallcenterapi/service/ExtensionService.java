@@ -1,5 +1,6 @@
 package io.github.nwen.freecallcenterapi.service;
 
+import io.github.nwen.freecallcenterapi.config.EslConfig;
 import io.github.nwen.freecallcenterapi.dto.DialRequest;
 import io.github.nwen.freecallcenterapi.dto.ExtensionRequest;
 import io.github.nwen.freecallcenterapi.dto.ExtensionResponse;
@@ -9,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +21,8 @@ public class ExtensionService {
 
     private final ExtensionRepository extensionRepository;
     private final EslService eslService;
+    private final EslConfig eslConfig;
+    private final DirectoryService directoryService;
 
     public ExtensionResponse create(ExtensionRequest request) {
         if (extensionRepository.findByExtensionNumber(request.getExtensionNumber()).isPresent()) {
@@ -34,6 +38,8 @@ public class ExtensionService {
                 .build();
 
         extensionRepository.insert(extension);
+        // 清除该分机号此前可能存在的负缓存
+        directoryService.invalidate(extension.getExtensionNumber());
         log.info("创建分机成功: {}", extension.getExtensionNumber());
         return toResponse(extension);
     }
@@ -54,16 +60,19 @@ public class ExtensionService {
             extension.setDisplayName(request.getDisplayName());
             extension.setContext(request.getContext());
             extensionRepository.updateById(extension);
+            directoryService.invalidate(extension.getExtensionNumber());
             log.info("更新分机成功: {}", extension.getExtensionNumber());
             return toResponse(extension);
         });
     }
 
     public boolean delete(Long id) {
-        if (extensionRepository.selectById(id) == null) {
+        Extension extension = extensionRepository.selectById(id);
+        if (extension == null) {
             return false;
         }
         extensionRepository.deleteById(id);
+        directoryService.invalidate(extension.getExtensionNumber());
         log.info("删除分机成功, id: {}", id);
         return true;
     }
@@ -75,11 +84,15 @@ public class ExtensionService {
         }
         extension.setEnabled(enabled);
         extensionRepository.updateById(extension);
+        directoryService.invalidate(extension.getExtensionNumber());
         log.info("分机 {} 状态: {}", extension.getExtensionNumber(), enabled ? "启用" : "禁用");
         return true;
     }
 
-    public boolean dial(DialRequest request) {
+    /**
+     * 通过 bgapi 发起外呼，立即返回 Job-UUID，不在 Tomcat 工作线程上等待振铃
+     */
+    public String dial(DialRequest request) {
         String source = request.getSource();
         Extension extension = extensionRepository.findByExtensionNumber(source)
                 .orElseThrow(() -> new IllegalArgumentException("分机不存在: " + source));
@@ -104,14 +117,21 @@ public class ExtensionService {
                 extension.getExtensionNumber()
         );
 
-        try {
-            String result = eslService.sendCommand(command);
-            log.info("分机 {} 发起外呼到 {}, 结果: {}", extension.getExtensionNumber(), destination, result);
-            return true;
-        } catch (Exception e) {
-            log.error("分机 {} 呼出失败: {}", extension.getExtensionNumber(), e.getMessage());
-            throw new RuntimeException("呼出失败: " + e.getMessage());
+        EslBackgroundJob job = eslService.sendBackgroundCommand(command, Duration.ofMillis(eslConfig.getBackgroundJobTimeout()));
+        if (job.jobUuid() == null) {
+            String reason = job.result().handle((result, error) -> error != null ? error.getMessage() : result).join();
+            log.error("分机 {} 呼出失败: {}", extension.getExtensionNumber(), reason);
+            throw new RuntimeException("呼出失败: " + reason);
         }
+        String extensionNumber = extension.getExtensionNumber();
+        job.result().whenComplete((result, error) -> {
+            if (error != null) {
+                log.warn("分机 {} 外呼到 {} 未返回结果: jobId={}, error={}", extensionNumber, destination, job.jobUuid(), error.toString());
+            } else {
+                log.info("分机 {} 发起外呼到 {}, jobId={}, 结果: {}", extensionNumber, destination, job.jobUuid(), result);
+            }
+        });
+        return job.jobUuid();
     }
 
     private ExtensionResponse toResponse(Extension extension) {
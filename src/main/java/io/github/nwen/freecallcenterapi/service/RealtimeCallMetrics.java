@@ -0,0 +1,324 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.RealtimeCallMetricsConfig;
+import io.github.nwen.freecallcenterapi.dto.RealtimeCallStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 实时通话指标：由 ESL 的 CHANNEL_CREATE / CHANNEL_ANSWER / CHANNEL_HANGUP 直接驱动，查询不访问数据库。
+ * 每个维度（全部、方向、分机+方向）一个 Series：累计值用 LongAdder，近期指标用按秒分槽的环形缓冲区，
+ * 写入路径只有 CAS/原子加，没有锁。与 call_record 一致，每个通道（leg）计为一通通话。
+ */
+@Component
+public class RealtimeCallMetrics {
+
+    private final RealtimeCallMetricsConfig config;
+    private final LongSupplier clock;
+    private final Series total;
+    private final Map<String, Series> byDirection = new ConcurrentHashMap<>();
+    /** extension + '\0' + direction → Series */
+    private final Map<String, Series> byExtension = new ConcurrentHashMap<>();
+    private final Map<String, LiveCall> liveCalls = new ConcurrentHashMap<>();
+    private volatile long nextSweepMillis;
+
+    @Autowired
+    public RealtimeCallMetrics(RealtimeCallMetricsConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+
+    RealtimeCallMetrics(RealtimeCallMetricsConfig config, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.total = new Series(null, null, config.getMaxWindowSeconds());
+    }
+
+    /**
+     * 新建通话；extension 为空时只计入汇总和方向维度
+     */
+    public void callCreated(String callId, String extension, String direction) {
+        track(callId, extension, direction, true, false);
+    }
+
+    /**
+     * 重连后从通道快照补齐的通话：只计入进行中，不计入窗口内的新建数
+     */
+    public void callRecovered(String callId, String extension, String direction, boolean answered) {
+        track(callId, extension, direction, false, answered);
+    }
+
+    public void callAnswered(String callId) {
+        LiveCall call = liveCalls.get(callId);
+        if (call == null || call.answeredMillis != 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        call.answeredMillis = now;
+        for (Series series : call.series) {
+            series.answered(now);
+        }
+    }
+
+    public void callEnded(String callId) {
+        LiveCall call = liveCalls.remove(callId);
+        if (call == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        long talkMillis = call.answeredMillis != 0 ? Math.max(0, now - call.answeredMillis) : -1;
+        for (Series series : call.series) {
+            series.ended(now, talkMillis);
+        }
+        if (now >= nextSweepMillis) {
+            nextSweepMillis = now + 60_000;
+            sweepIdle(now);
+        }
+    }
+
+    public RealtimeCallStats overall(Integer windowSeconds) {
+        int window = window(windowSeconds);
+        long now = clock.getAsLong();
+        RealtimeCallStats stats = total.snapshot(now, window);
+        Map<String, RealtimeCallStats> directions = new TreeMap<>();
+        byDirection.forEach((direction, series) -> directions.put(direction, series.snapshot(now, window)));
+        stats.setByDirection(directions);
+        return stats;
+    }
+
+    /**
+     * 单个分机跨方向的汇总，byDirection 给出各方向明细
+     */
+    public RealtimeCallStats extension(String extension, Integer windowSeconds) {
+        int window = window(windowSeconds);
+        long now = clock.getAsLong();
+        List<RealtimeCallStats> parts = new ArrayList<>();
+        byExtension.forEach((key, series) -> {
+            if (extension.equals(series.extension)) {
+                parts.add(series.snapshot(now, window));
+            }
+        });
+        RealtimeCallStats merged = merge(parts, window);
+        merged.setExtension(extension);
+        Map<String, RealtimeCallStats> directions = new TreeMap<>();
+        for (RealtimeCallStats part : parts) {
+            directions.put(part.getDirection(), part);
+        }
+        merged.setByDirection(directions);
+        return merged;
+    }
+
+    /**
+     * 所有活跃的分机+方向维度，按进行中通话数、窗口内通话数倒序
+     */
+    public List<RealtimeCallStats> extensions(Integer windowSeconds) {
+        int window = window(windowSeconds);
+        long now = clock.getAsLong();
+        List<RealtimeCallStats> result = new ArrayList<>(byExtension.size());
+        for (Series series : byExtension.values()) {
+            result.add(series.snapshot(now, window));
+        }
+        result.sort(Comparator.comparingLong(RealtimeCallStats::getConcurrentCalls)
+                .thenComparingLong(RealtimeCallStats::getCallsInWindow).reversed());
+        return result;
+    }
+
+    private void track(String callId, String extension, String direction, boolean countCreate, boolean answered) {
+        String dir = direction != null ? direction : "unknown";
+        Series directionSeries = byDirection.computeIfAbsent(dir,
+                k -> new Series(null, k, config.getMaxWindowSeconds()));
+        long now = clock.getAsLong();
+        Series[] series = extension == null || extension.isEmpty()
+                ? new Series[]{total, directionSeries}
+                : new Series[]{total, directionSeries, extensionSeries(extension, dir, now)};
+        LiveCall call = new LiveCall(series);
+        if (answered) {
+            call.answeredMillis = now;
+        }
+        if (liveCalls.putIfAbsent(callId, call) != null) {
+            return;
+        }
+        for (Series s : series) {
+            s.started(now, countCreate);
+        }
+    }
+
+    /**
+     * 在同一个 key 的锁内取得（或新建）分机维度并刷新活动时间，与 sweepIdle 互斥：
+     * 清理要么发生在此之前（随后新建一个），要么看到刚刷新的活动时间而保留，不会清掉即将 started 的 Series
+     */
+    private Series extensionSeries(String extension, String dir, long now) {
+        return byExtension.compute(extension + '\0' + dir, (k, series) -> {
+            Series resolved = series != null ? series : new Series(extension, dir, config.getMaxWindowSeconds());
+            resolved.lastActivityMillis = now;
+            return resolved;
+        });
+    }
+
+    private void sweepIdle(long now) {
+        long idleMillis = config.getIdleSeriesSeconds() * 1000L;
+        for (String key : byExtension.keySet()) {
+            byExtension.computeIfPresent(key, (k, series) ->
+                    series.active.sum() <= 0 && now - series.lastActivityMillis > idleMillis ? null : series);
+        }
+    }
+
+    private int window(Integer windowSeconds) {
+        int window = windowSeconds != null ? windowSeconds : config.getDefaultWindowSeconds();
+        return Math.max(1, Math.min(window, config.getMaxWindowSeconds()));
+    }
+
+    private static RealtimeCallStats merge(List<RealtimeCallStats> parts, int window) {
+        long concurrent = 0, calls = 0, completed = 0, answered = 0, created = 0, totalAnswered = 0, ended = 0;
+        double talkSeconds = 0;
+        for (RealtimeCallStats part : parts) {
+            concurrent += part.getConcurrentCalls();
+            calls += part.getCallsInWindow();
+            completed += part.getCompletedInWindow();
+            answered += part.getAnsweredInWindow();
+            talkSeconds += part.getAvgTalkSeconds() * part.getAnsweredInWindow();
+            created += part.getTotalCreated();
+            totalAnswered += part.getTotalAnswered();
+            ended += part.getTotalEnded();
+        }
+        return stats(null, null, window, concurrent, calls, completed, answered, talkSeconds * 1000,
+                created, totalAnswered, ended);
+    }
+
+    private static RealtimeCallStats stats(String extension, String direction, int window, long concurrent,
+                                           long calls, long completed, long answered, double talkMillis,
+                                           long created, long totalAnswered, long ended) {
+        return RealtimeCallStats.builder()
+                .extension(extension)
+                .direction(direction)
+                .windowSeconds(window)
+                .concurrentCalls(Math.max(0, concurrent))
+                .callsInWindow(calls)
+                .callsPerSecond(round((double) calls / window))
+                .completedInWindow(completed)
+                .answeredInWindow(answered)
+                .asr(completed > 0 ? round((double) answered / completed * 100) : 0)
+                .avgTalkSeconds(answered > 0 ? round(talkMillis / answered / 1000) : 0)
+                .totalCreated(created)
+                .totalAnswered(totalAnswered)
+                .totalEnded(ended)
+                .build();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static final class LiveCall {
+
+        final Series[] series;
+        volatile long answeredMillis;
+
+        LiveCall(Series[] series) {
+            this.series = series;
+        }
+    }
+
+    /**
+     * 一个维度的计数。窗口按秒分槽，槽内依次为 [秒, 新建, 结束, 结束且已应答, 通话毫秒数]，
+     * 槽的秒数过期时由第一个写入者 CAS 抢占并清零；与清零并发的极少数写入可能丢失，实时看板可以接受。
+     */
+    private static final class Series {
+
+        private static final int FIELDS = 5;
+        private static final int EPOCH = 0;
+        private static final int CREATED = 1;
+        private static final int ENDED = 2;
+        private static final int ENDED_ANSWERED = 3;
+        private static final int TALK_MILLIS = 4;
+
+        final String extension;
+        final String direction;
+        final LongAdder active = new LongAdder();
+        final LongAdder created = new LongAdder();
+        final LongAdder answered = new LongAdder();
+        final LongAdder ended = new LongAdder();
+        private final int slots;
+        private final AtomicLongArray ring;
+        volatile long lastActivityMillis;
+
+        Series(String extension, String direction, int slots) {
+            this.extension = extension;
+            this.direction = direction;
+            this.slots = slots;
+            this.ring = new AtomicLongArray(slots * FIELDS);
+            for (int i = 0; i < slots; i++) {
+                ring.set(i * FIELDS + EPOCH, -1);
+            }
+        }
+
+        void started(long now, boolean countCreate) {
+            active.increment();
+            lastActivityMillis = now;
+            if (countCreate) {
+                created.increment();
+                ring.getAndIncrement(slot(now / 1000) + CREATED);
+            }
+        }
+
+        void answered(long now) {
+            answered.increment();
+            lastActivityMillis = now;
+        }
+
+        /**
+         * talkMillis 为 -1 表示未应答
+         */
+        void ended(long now, long talkMillis) {
+            active.decrement();
+            ended.increment();
+            lastActivityMillis = now;
+            int base = slot(now / 1000);
+            ring.getAndIncrement(base + ENDED);
+            if (talkMillis >= 0) {
+                ring.getAndIncrement(base + ENDED_ANSWERED);
+                ring.getAndAdd(base + TALK_MILLIS, talkMillis);
+            }
+        }
+
+        RealtimeCallStats snapshot(long now, int window) {
+            long second = now / 1000;
+            long calls = 0, completed = 0, answeredCalls = 0, talkMillis = 0;
+            for (long s = second - window + 1; s <= second; s++) {
+                int base = (int) Math.floorMod(s, (long) slots) * FIELDS;
+                if (ring.get(base + EPOCH) != s) {
+                    continue;
+                }
+                calls += ring.get(base + CREATED);
+                completed += ring.get(base + ENDED);
+                answeredCalls += ring.get(base + ENDED_ANSWERED);
+                talkMillis += ring.get(base + TALK_MILLIS);
+            }
+            return stats(extension, direction, window, active.sum(), calls, completed, answeredCalls, talkMillis,
+                    created.sum(), answered.sum(), ended.sum());
+        }
+
+        /**
+         * 返回该秒所在槽的起始下标，必要时把过期的槽切换到该秒
+         */
+        private int slot(long second) {
+            int base = (int) Math.floorMod(second, (long) slots) * FIELDS;
+            long epoch = ring.get(base + EPOCH);
+            if (epoch < second && ring.compareAndSet(base + EPOCH, epoch, second)) {
+                for (int i = 1; i < FIELDS; i++) {
+                    ring.set(base + i, 0);
+                }
+            }
+            return base;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.freeswitch.esl.client.transport.event.EslEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * 分机注册 / 注销事件（CUSTOM sofia::register / sofia::unregister）
+ */
+@Slf4j
+@Component
+public class RegistrationEventHandler implements EslEventHandler {
+
+    private static final String REGISTER = "sofia::register";
+    private static final String UNREGISTER = "sofia::unregister";
+
+    @Override
+    public Set<String> eventNames() {
+        return Set.of();
+    }
+
+    @Override
+    public Set<String> eventSubclasses() {
+        return Set.of(REGISTER, UNREGISTER);
+    }
+
+    @Override
+    public void handle(String node, EslEvent event) {
+        String user = event.getEventHeaders().get("sip_auth_username");
+        if (user == null) {
+            return;
+        }
+        if (REGISTER.equals(event.getEventHeaders().get("Event-Subclass"))) {
+            log.info("分机 {} 注册成功: node={}", user, node);
+        } else {
+            log.info("分机 {} 注销: node={}", user, node);
+        }
+    }
+}
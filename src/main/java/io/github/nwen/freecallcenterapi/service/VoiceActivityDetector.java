@@ -0,0 +1,159 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ShortBuffer;
+import java.util.List;
+
+/**
+ * 基于帧能量的语音活动检测（流水线 vad 阶段），静音帧不再往后传，转发到 AI 后端的只有语音段。
+ * 进入语音要求连续 startFrames 帧 RMS 超过 max(startThreshold, 噪声底 × noiseMultiplier)；
+ * 语音中 RMS 低于 stopThreshold 的时长累计超过 hangoverMillis 才判定结束，期间的帧照常转发，避免切掉词尾和短停顿。
+ * 确认开始前的 startFrames - 1 帧语音先暂存（pre-roll），判定开始时与当前帧拼成一帧转发，不切掉词首；
+ * 未能确认的暂存帧丢弃并计入静音。
+ * 能量计算先把样本整块拷进预分配的 short[] 再做计数循环，便于 C2 自动向量化
+ */
+@Slf4j
+public final class VoiceActivityDetector implements AudioStage {
+
+    /** 噪声底的指数平均系数，只在非语音帧上更新 */
+    private static final double NOISE_ALPHA = 0.05;
+
+    private final Settings settings;
+    private final List<VoiceActivityListener> listeners;
+    private final int sampleRate;
+    private final short[] scratch;
+    private final long startSquared;
+    private final long stopSquared;
+    /** 暂存的确认前语音帧依次排在 out 开头，判定开始时把当前帧接在后面一起转发 */
+    private final ShortBuffer out;
+    private final ShortBuffer view;
+    private int heldFrames;
+    private int heldSamples;
+
+    private boolean speaking;
+    private int voicedRun;
+    private long silentSamples;
+    private long speechSamples;
+    private double noiseFloor;
+
+    VoiceActivityDetector(Settings settings, List<VoiceActivityListener> listeners, AudioStage.Format input) {
+        this.settings = settings;
+        this.listeners = listeners;
+        this.sampleRate = input.sampleRate();
+        this.scratch = new short[input.maxSamples()];
+        this.startSquared = (long) settings.startThreshold() * settings.startThreshold();
+        this.stopSquared = (long) settings.stopThreshold() * settings.stopThreshold();
+        this.out = ShortBuffer.allocate(input.maxSamples() * Math.max(1, settings.startFrames()));
+        this.view = out.asReadOnlyBuffer();
+    }
+
+    @Override
+    public ShortBuffer process(AudioStream stream, ShortBuffer samples) {
+        int n = samples.remaining();
+        if (n == 0) {
+            return null;
+        }
+        samples.get(samples.position(), scratch, 0, n);
+        double meanSquare = (double) sumOfSquares(scratch, n) / n;
+        if (speaking) {
+            boolean forward = continueSpeech(stream, meanSquare, n);
+            stream.recordVoiceActivity(!forward, speaking);
+            return forward ? samples : null;
+        }
+        return detectStart(stream, samples, meanSquare, n);
+    }
+
+    private ShortBuffer detectStart(AudioStream stream, ShortBuffer samples, double meanSquare, int n) {
+        double threshold = Math.max(startSquared, noiseFloor * settings.noiseMultiplier() * settings.noiseMultiplier());
+        if (meanSquare < threshold) {
+            voicedRun = 0;
+            releaseHeld(stream);
+            noiseFloor = noiseFloor == 0 ? meanSquare : noiseFloor + NOISE_ALPHA * (meanSquare - noiseFloor);
+            stream.recordVoiceActivity(true, false);
+            return null;
+        }
+        if (++voicedRun < settings.startFrames()) {
+            // 暂存待确认，确认失败时再计入静音
+            out.put(heldSamples, scratch, 0, n);
+            heldSamples += n;
+            heldFrames++;
+            stream.recordVoiceActivity(false, false);
+            return null;
+        }
+        speaking = true;
+        silentSamples = 0;
+        speechSamples = heldSamples + n;
+        stream.speechSegmentStarted();
+        log.debug("语音开始: callId={}", stream.callId());
+        for (VoiceActivityListener listener : listeners) {
+            try {
+                listener.onSpeechStart(stream);
+            } catch (Exception e) {
+                log.warn("语音开始事件处理失败: callId={}, error={}", stream.callId(), e.getMessage());
+            }
+        }
+        stream.recordVoiceActivity(false, true);
+        if (heldFrames == 0) {
+            return samples;
+        }
+        out.put(heldSamples, scratch, 0, n);
+        int total = heldSamples + n;
+        heldFrames = 0;
+        heldSamples = 0;
+        return view.limit(total).position(0);
+    }
+
+    /**
+     * 暂存帧之后出现了静音，开始未能确认：丢弃暂存帧并补记为静音帧
+     */
+    private void releaseHeld(AudioStream stream) {
+        if (heldFrames > 0) {
+            stream.recordSuppressed(heldFrames);
+            heldFrames = 0;
+            heldSamples = 0;
+        }
+    }
+
+    private boolean continueSpeech(AudioStream stream, double meanSquare, int n) {
+        silentSamples = meanSquare < stopSquared ? silentSamples + n : 0;
+        if (silentSamples * 1000 <= (long) settings.hangoverMillis() * sampleRate) {
+            speechSamples += n;
+            return true;
+        }
+        speaking = false;
+        voicedRun = 0;
+        // 挂起期内转发的静音尾巴也计入语音段时长
+        long speechMillis = speechSamples * 1000 / sampleRate;
+        log.debug("语音结束: callId={}, speechMillis={}", stream.callId(), speechMillis);
+        for (VoiceActivityListener listener : listeners) {
+            try {
+                listener.onSpeechEnd(stream, speechMillis);
+            } catch (Exception e) {
+                log.warn("语音结束事件处理失败: callId={}, error={}", stream.callId(), e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    static long sumOfSquares(short[] samples, int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            int sample = samples[i];
+            sum += sample * sample;
+        }
+        return sum;
+    }
+
+    /**
+     * VAD 参数，门限为 16 bit 样本的 RMS 幅度
+     */
+    public record Settings(int startThreshold, int stopThreshold, int startFrames, int hangoverMillis, double noiseMultiplier) {
+
+        public static Settings from(AiAgentConfig config) {
+            return new Settings(config.getVadStartThreshold(), config.getVadStopThreshold(),
+                    Math.max(1, config.getVadStartFrames()), config.getVadHangoverMillis(), config.getVadNoiseMultiplier());
+        }
+    }
+}
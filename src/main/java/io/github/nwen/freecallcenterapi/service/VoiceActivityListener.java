@@ -0,0 +1,17 @@
+package io.github.nwen.freecallcenterapi.service;
+
+/**
+ * 流水线 vad 阶段的语音开始/结束事件，按 bean 注入 pipelineProcessor；
+ * 回调在通话的处理线程上执行，不应阻塞
+ */
+public interface VoiceActivityListener {
+
+    default void onSpeechStart(AudioStream stream) {
+    }
+
+    /**
+     * @param speechMillis 本段语音时长（含结束前的挂起时间）
+     */
+    default void onSpeechEnd(AudioStream stream, long speechMillis) {
+    }
+}
@@ -0,0 +1,207 @@
+package io.github.nwen.freecallcenterapi.service.impl;
+
+import io.github.nwen.freecallcenterapi.dto.EslCommandConnectionStats;
+import io.github.nwen.freecallcenterapi.dto.EslCommandPoolStats;
+import lombok.extern.slf4j.Slf4j;
+import org.freeswitch.esl.client.inbound.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 仅发送命令、不订阅任何事件的 ESL 连接池
+ * 同一个 Client 上的 api / bgapi 是串行收发的，多条连接按在途命令数选择最空闲的一条，
+ * 使命令突发（originate、uuid_audio_stream）不与事件连接争用同一个 socket。
+ * 连接断开后由 EslConnectionManagerImpl 的监督线程调用 maintain() 按各自的退避间隔重连。
+ */
+@Slf4j
+class EslCommandPool {
+
+    @FunctionalInterface
+    interface ClientFactory {
+        Client open() throws Exception;
+    }
+
+    private final Slot[] slots;
+    private final ClientFactory clientFactory;
+    /** 连续失败次数 → 下次重连前的等待毫秒数 */
+    private final LongUnaryOperator backoff;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final LongAdder fallbacks = new LongAdder();
+
+    EslCommandPool(int size, ClientFactory clientFactory, LongUnaryOperator backoff) {
+        this.slots = new Slot[Math.max(0, size)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.clientFactory = clientFactory;
+        this.backoff = backoff;
+    }
+
+    int size() {
+        return slots.length;
+    }
+
+    boolean hasConnected() {
+        for (Slot slot : slots) {
+            if (slot.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重连已断开且退避时间已到的连接
+     */
+    void maintain() {
+        long now = System.nanoTime();
+        for (Slot slot : slots) {
+            if (slot.isConnected() || now - slot.nextAttemptAt < 0) {
+                continue;
+            }
+            slot.close();
+            try {
+                slot.client = clientFactory.open();
+                slot.consecutiveFailures = 0;
+                slot.connects.increment();
+                log.info("ESL 命令连接已建立: index={}", slot.index);
+            } catch (Exception e) {
+                slot.consecutiveFailures++;
+                slot.nextAttemptAt = System.nanoTime() + backoff.applyAsLong(slot.consecutiveFailures) * 1_000_000L;
+                log.warn("ESL 命令连接失败: index={}, error={}", slot.index, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 选出在途命令最少的可用连接并占用，调用方必须在 finally 中 release；没有可用连接时返回 null。
+     * 起点轮转，使空闲时的负载也能均匀分布。
+     */
+    Slot acquire() {
+        int n = slots.length;
+        if (n == 0) {
+            return null;
+        }
+        int start = Math.floorMod(cursor.getAndIncrement(), n);
+        Slot best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Slot slot = slots[(start + i) % n];
+            if (!slot.isConnected()) {
+                continue;
+            }
+            int inFlight = slot.inFlight.get();
+            if (inFlight < bestInFlight) {
+                best = slot;
+                bestInFlight = inFlight;
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        if (best != null) {
+            best.inFlight.incrementAndGet();
+        }
+        return best;
+    }
+
+    void recordFallback() {
+        fallbacks.increment();
+    }
+
+    void closeAll() {
+        for (Slot slot : slots) {
+            slot.close();
+        }
+    }
+
+    EslCommandPoolStats getStats() {
+        List<EslCommandConnectionStats> connections = new ArrayList<>(slots.length);
+        int connected = 0;
+        int inFlight = 0;
+        for (Slot slot : slots) {
+            EslCommandConnectionStats stats = slot.getStats();
+            connections.add(stats);
+            connected += stats.isConnected() ? 1 : 0;
+            inFlight += stats.getInFlight();
+        }
+        return EslCommandPoolStats.builder()
+                .size(slots.length)
+                .connected(connected)
+                .inFlight(inFlight)
+                .fallbacks(fallbacks.sum())
+                .connections(connections)
+                .build();
+    }
+
+    static final class Slot {
+
+        private final int index;
+        private volatile Client client;
+        private volatile long nextAttemptAt = System.nanoTime();
+        private int consecutiveFailures;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder commands = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder connects = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+        Client client() {
+            return client;
+        }
+
+        boolean isConnected() {
+            Client c = client;
+            return c != null && c.canSend();
+        }
+
+        void release(long startNanos, boolean success) {
+            inFlight.decrementAndGet();
+            long elapsed = System.nanoTime() - startNanos;
+            commands.increment();
+            latencyNanos.add(elapsed);
+            maxLatencyNanos.accumulateAndGet(elapsed, Math::max);
+            if (!success) {
+                failures.increment();
+            }
+        }
+
+        private void close() {
+            Client c = client;
+            client = null;
+            if (c == null) {
+                return;
+            }
+            try {
+                c.close();
+            } catch (Exception e) {
+                log.debug("Failed to close ESL command client: {}", e.getMessage());
+            }
+        }
+
+        private EslCommandConnectionStats getStats() {
+            long count = commands.sum();
+            return EslCommandConnectionStats.builder()
+                    .index(index)
+                    .connected(isConnected())
+                    .inFlight(inFlight.get())
+                    .commands(count)
+                    .failures(failures.sum())
+                    .connects(connects.sum())
+                    .avgLatencyMicros(count == 0 ? 0 : latencyNanos.sum() / count / 1000)
+                    .maxLatencyMicros(maxLatencyNanos.get() / 1000)
+                    .build();
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package io.github.nwen.freecallcenterapi.service.impl;
 
 import io.github.nwen.freecallcenterapi.config.EslConfig;
+import io.github.nwen.freecallcenterapi.dto.EslConnectionStats;
+import io.github.nwen.freecallcenterapi.service.EslBackgroundJob;
+import io.github.nwen.freecallcenterapi.service.EslBackgroundJobRegistry;
+import io.github.nwen.freecallcenterapi.service.EslChannelRegistry;
+import io.github.nwen.freecallcenterapi.service.EslConnectionListener;
 import io.github.nwen.freecallcenterapi.service.EslService;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
@@ -10,90 +15,288 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FreeSWITCH ESL 连接管理
+ * 按 EslConfig.nodes 为每个节点维护一条事件连接和一组命令连接（见 EslNodeConnection）。
+ * 后台监督线程周期性检查各节点连接健康，失效后按带抖动的指数退避重连，重连成功后回调 EslConnectionListener 重新注册事件监听和订阅。
+ * 命令路由：uuid_* 发往通道所在节点，originate 按 在线通道数 / 权重 选择负载最低的节点，其余命令发往负载最低的可用节点。
+ */
 @Slf4j
 @Service
 public class EslConnectionManagerImpl implements EslService {
 
+    private static final String UUID_COMMAND_PREFIX = "uuid_";
+    private static final String ORIGINATE = "originate";
+
     private final EslConfig eslConfig;
-    private Client eslClient;
+    private final EslBackgroundJobRegistry backgroundJobRegistry;
+    private final EslChannelRegistry channelRegistry;
+    private final Map<String, EslNodeConnection> nodes = new LinkedHashMap<>();
+    private final List<EslNodeConnection> nodeList;
+    private final List<EslConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private volatile boolean running;
+    private Thread supervisor;
 
-    public EslConnectionManagerImpl(EslConfig eslConfig) {
+    public EslConnectionManagerImpl(EslConfig eslConfig, EslBackgroundJobRegistry backgroundJobRegistry,
+                                    EslChannelRegistry channelRegistry) {
         this.eslConfig = eslConfig;
+        this.backgroundJobRegistry = backgroundJobRegistry;
+        this.channelRegistry = channelRegistry;
+        for (EslConfig.Node node : eslConfig.resolveNodes()) {
+            if (nodes.putIfAbsent(node.getName(), new EslNodeConnection(node, eslConfig)) != null) {
+                throw new IllegalStateException("Duplicate FreeSWITCH node name: " + node.getName());
+            }
+        }
+        this.nodeList = List.copyOf(nodes.values());
     }
 
     @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        try {
-            connect();
-        } catch (Exception e) {
-            log.warn("FreeSWITCH ESL connection failed during startup, will retry on demand");
-        }
+        running = true;
+        supervisor = Thread.ofVirtual().name("esl-supervisor").start(this::supervise);
     }
 
     @Override
     public boolean isConnected() {
-        return eslClient != null;
+        for (EslNodeConnection node : nodeList) {
+            if (node.isConnected()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public Client getClient() {
-        return eslClient;
+    @Override
+    public List<String> nodeNames() {
+        return List.copyOf(nodes.keySet());
+    }
+
+    @Override
+    public void addConnectionListener(EslConnectionListener listener) {
+        connectionListeners.add(listener);
+        for (EslNodeConnection node : nodeList) {
+            Client client = node.eventClient();
+            if (client != null && client.canSend()) {
+                notifyListener(listener, node.name(), client);
+            }
+        }
     }
 
     @Override
     public void connect() {
-        if (eslClient != null) {
+        for (EslNodeConnection node : nodeList) {
+            notifyConnected(node, node.connect());
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        for (EslNodeConnection node : nodeList) {
+            node.disconnect();
+        }
+    }
+
+    private void supervise() {
+        while (running) {
+            try {
+                long sleep = eslConfig.getHealthCheckInterval();
+                for (EslNodeConnection node : nodeList) {
+                    notifyConnected(node, node.supervise());
+                    sleep = Math.min(sleep, node.millisUntilNextCheck());
+                }
+                Thread.sleep(Math.max(100, sleep));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("ESL supervisor error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void notifyConnected(EslNodeConnection node, Client client) {
+        if (client == null) {
             return;
         }
+        for (EslConnectionListener listener : connectionListeners) {
+            notifyListener(listener, node.name(), client);
+        }
+    }
+
+    private void notifyListener(EslConnectionListener listener, String node, Client client) {
         try {
-            log.info("Connecting to FreeSWITCH ESL: {}:{} with password: [{}]", 
-                    eslConfig.getHost(), eslConfig.getPort(), 
-                    eslConfig.getPassword() != null ? eslConfig.getPassword().substring(0, Math.min(3, eslConfig.getPassword().length())) + "..." : "null");
-            eslClient = new Client();
-            eslClient.connect(eslConfig.getHost(), eslConfig.getPort(), eslConfig.getPassword(), 5000);
-            log.info("Connected to FreeSWITCH ESL successfully");
+            listener.onConnected(node, client);
         } catch (Exception e) {
-            log.warn("Failed to connect to FreeSWITCH ESL: {} - {}", e.getClass().getSimpleName(), e.getMessage());
-            eslClient = null;
+            log.error("ESL connection listener failed: node={}", node, e);
         }
     }
 
-    @Override
-    public void disconnect() {
-        if (eslClient != null) {
-            log.info("Disconnecting from FreeSWITCH ESL");
+    public List<EslConnectionStats> getStats() {
+        List<EslConnectionStats> stats = new ArrayList<>(nodeList.size());
+        for (EslNodeConnection node : nodeList) {
+            stats.add(node.getStats(channelRegistry.liveChannels(node.name())));
         }
+        return stats;
     }
 
     @Override
     public String sendCommand(String command) {
-        if (!isConnected()) {
-            connect();
+        String[] parts = splitCommand(command);
+        return sendCommand(route(parts), parts, command);
+    }
+
+    @Override
+    public String sendCommand(String node, String command) {
+        return sendCommand(nodes.get(node), splitCommand(command), command);
+    }
+
+    private String sendCommand(EslNodeConnection node, String[] parts, String command) {
+        if (node == null) {
+            // 断线期间由监督线程负责重连，这里快速失败，不阻塞调用方
+            log.warn("FreeSWITCH ESL not connected, command dropped: {}", command);
+            return null;
+        }
+        boolean originate = ORIGINATE.equals(parts[0]);
+        if (originate) {
+            node.pendingOriginates().incrementAndGet();
         }
         try {
-            // 分离命令名和参数: "cmd args" → sendSyncApiCommand("cmd", "args")
-            String cmdName;
-            String cmdArgs;
-            int firstSpace = command.indexOf(' ');
-            if (firstSpace > 0) {
-                cmdName = command.substring(0, firstSpace);
-                cmdArgs = command.substring(firstSpace + 1);
-            } else {
-                cmdName = command;
-                cmdArgs = "";
-            }
-            EslMessage response = eslClient.sendSyncApiCommand(cmdName, cmdArgs);
+            EslMessage response = node.execute(client -> client.sendSyncApiCommand(parts[0], parts[1]));
             if (response != null && response.getBodyLines() != null && !response.getBodyLines().isEmpty()) {
                 return String.join("\n", response.getBodyLines());
             }
             return "";
+        } catch (IllegalStateException e) {
+            log.warn("FreeSWITCH ESL not connected, command dropped: node={}, command={}", node.name(), command);
+            return null;
         } catch (Exception e) {
-            log.error("Failed to send ESL command: {}", command, e);
+            log.error("Failed to send ESL command: node={}, command={}", node.name(), command, e);
             return null;
+        } finally {
+            if (originate) {
+                node.pendingOriginates().decrementAndGet();
+            }
         }
     }
 
+    /**
+     * bgapi 的 BACKGROUND_JOB 结果是全局事件，由该节点订阅了该事件的事件连接接收，
+     * 因此从命令连接提交的 bgapi 同样能通过 EslBackgroundJobRegistry 拿到结果
+     */
+    @Override
+    public EslBackgroundJob sendBackgroundCommand(String command, Duration timeout) {
+        String[] parts = splitCommand(command);
+        EslNodeConnection node = route(parts);
+        if (node == null) {
+            return new EslBackgroundJob(null, CompletableFuture.failedFuture(
+                    new IllegalStateException("FreeSWITCH ESL not connected")));
+        }
+        boolean originate = ORIGINATE.equals(parts[0]);
+        if (originate) {
+            node.pendingOriginates().incrementAndGet();
+        }
+        EslBackgroundJob job;
+        try {
+            String jobUuid = node.execute(client -> client.sendAsyncApiCommand(parts[0], parts[1]));
+            if (jobUuid == null || jobUuid.isEmpty()) {
+                job = new EslBackgroundJob(null, CompletableFuture.failedFuture(
+                        new IllegalStateException("No Job-UUID returned for bgapi: " + command)));
+            } else {
+                log.debug("bgapi 已提交: node={}, jobUuid={}, command={}", node.name(), jobUuid, command);
+                job = new EslBackgroundJob(jobUuid, backgroundJobRegistry.register(jobUuid, timeout));
+            }
+        } catch (IllegalStateException e) {
+            job = new EslBackgroundJob(null, CompletableFuture.failedFuture(e));
+        } catch (Exception e) {
+            log.error("Failed to send ESL bgapi command: node={}, command={}", node.name(), command, e);
+            job = new EslBackgroundJob(null, CompletableFuture.failedFuture(e));
+        }
+        if (originate) {
+            job.result().whenComplete((result, error) -> node.pendingOriginates().decrementAndGet());
+        }
+        return job;
+    }
+
+    @Override
+    public CompletableFuture<String> sendCommandAsync(String command) {
+        return sendBackgroundCommand(command, Duration.ofMillis(eslConfig.getBackgroundJobTimeout())).result();
+    }
+
+    /**
+     * uuid_* 命令的第一个参数是通道 UUID，发往通道所在节点；归属未知或该节点不可用时退回负载最低的节点
+     */
+    private EslNodeConnection route(String[] parts) {
+        if (parts[0].startsWith(UUID_COMMAND_PREFIX)) {
+            int space = parts[1].indexOf(' ');
+            String uuid = space > 0 ? parts[1].substring(0, space) : parts[1];
+            String owner = channelRegistry.ownerOf(uuid);
+            EslNodeConnection node = owner != null ? nodes.get(owner) : null;
+            if (node != null && node.isAvailable()) {
+                return node;
+            }
+            if (owner != null) {
+                log.warn("通道所在节点不可用，改发其他节点: uuid={}, node={}", uuid, owner);
+            }
+        }
+        return leastLoaded();
+    }
+
+    /**
+     * 按 (在线通道数 + 未返回的 originate 数) / 权重 选择负载最低的可用节点，起点轮转使负载相同时均匀分布
+     */
+    private EslNodeConnection leastLoaded() {
+        int n = nodeList.size();
+        if (n == 1) {
+            EslNodeConnection only = nodeList.get(0);
+            return only.isAvailable() ? only : null;
+        }
+        int start = Math.floorMod(cursor.getAndIncrement(), n);
+        EslNodeConnection best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            EslNodeConnection node = nodeList.get((start + i) % n);
+            if (!node.isAvailable()) {
+                continue;
+            }
+            double load = (double) (channelRegistry.liveChannels(node.name()) + node.pendingOriginates().get()) / node.weight();
+            if (load < bestLoad) {
+                best = node;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 分离命令名和参数: "cmd args" → ["cmd", "args"]
+     */
+    private String[] splitCommand(String command) {
+        int firstSpace = command.indexOf(' ');
+        if (firstSpace > 0) {
+            return new String[]{command.substring(0, firstSpace), command.substring(firstSpace + 1)};
+        }
+        return new String[]{command, ""};
+    }
+
     @PreDestroy
     public void destroy() {
-        disconnect();
+        running = false;
+        if (supervisor != null) {
+            supervisor.interrupt();
+        }
+        for (EslNodeConnection node : nodeList) {
+            node.close();
+        }
     }
 }
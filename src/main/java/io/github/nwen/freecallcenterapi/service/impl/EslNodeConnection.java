@@ -0,0 +1,254 @@
+package io.github.nwen.freecallcenterapi.service.impl;
+
+import io.github.nwen.freecallcenterapi.config.EslConfig;
+import io.github.nwen.freecallcenterapi.dto.EslConnectionStats;
+import lombok.extern.slf4j.Slf4j;
+import org.freeswitch.esl.client.IEslEventListener;
+import org.freeswitch.esl.client.inbound.Client;
+import org.freeswitch.esl.client.transport.event.EslEvent;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 FreeSWITCH 节点的连接：一条只负责事件订阅的事件连接 + 一组命令连接（EslCommandPool）
+ * 健康检查与重连由 EslConnectionManagerImpl 的监督线程驱动，这里只维护本节点的状态和退避时间。
+ */
+@Slf4j
+class EslNodeConnection {
+
+    @FunctionalInterface
+    interface ClientCall<T> {
+        T call(Client client) throws Exception;
+    }
+
+    private final EslConfig.Node node;
+    private final EslConfig eslConfig;
+    private final EslCommandPool commandPool;
+    private volatile Client eventClient;
+
+    /** 当前事件连接最近一次收到事件的时间（nanoTime），0 表示尚未收到 */
+    private volatile long lastEventAt;
+    private volatile LocalDateTime lastConnectedAt;
+    private volatile int consecutiveFailures;
+    private volatile long nextAttemptAt = System.nanoTime();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    /** 已提交但 bgapi 尚未返回结果的 originate 数，避免突发外呼在 CHANNEL_CREATE 到达前全部落到同一节点 */
+    private final AtomicInteger pendingOriginates = new AtomicInteger();
+
+    EslNodeConnection(EslConfig.Node node, EslConfig eslConfig) {
+        this.node = node;
+        this.eslConfig = eslConfig;
+        this.commandPool = new EslCommandPool(eslConfig.getCommandPoolSize(), this::openClient, this::backoffDelay);
+    }
+
+    String name() {
+        return node.getName();
+    }
+
+    int weight() {
+        return Math.max(1, node.getWeight());
+    }
+
+    AtomicInteger pendingOriginates() {
+        return pendingOriginates;
+    }
+
+    boolean isConnected() {
+        Client client = eventClient;
+        return client != null && client.canSend();
+    }
+
+    Client eventClient() {
+        return eventClient;
+    }
+
+    /**
+     * 能否执行命令：命令连接或事件连接任一可用
+     */
+    boolean isAvailable() {
+        return isConnected() || commandPool.hasConnected();
+    }
+
+    private boolean isHealthy() {
+        if (!isConnected()) {
+            return false;
+        }
+        long last = lastEventAt;
+        return last == 0 || System.nanoTime() - last < TimeUnit.MILLISECONDS.toNanos(eslConfig.getHeartbeatTimeout());
+    }
+
+    /**
+     * 检查事件连接健康，失效且退避时间已到时重连；返回新建立的事件连接（调用方据此通知监听器），否则返回 null
+     */
+    Client supervise() {
+        Client connected = null;
+        if (!isHealthy()) {
+            if (eventClient != null) {
+                log.warn("FreeSWITCH ESL connection lost, reconnecting: node={}", name());
+                // socket 可能仍显示可写（半开连接），先主动断开再重连
+                disconnect();
+            }
+            if (System.nanoTime() - nextAttemptAt >= 0) {
+                connected = connect();
+            }
+        }
+        commandPool.maintain();
+        return connected;
+    }
+
+    /**
+     * 距下次需要检查的时间（毫秒），不超过健康检查间隔
+     */
+    long millisUntilNextCheck() {
+        if (isConnected()) {
+            return eslConfig.getHealthCheckInterval();
+        }
+        long wait = TimeUnit.NANOSECONDS.toMillis(nextAttemptAt - System.nanoTime());
+        return Math.max(0, Math.min(wait, eslConfig.getHealthCheckInterval()));
+    }
+
+    synchronized Client connect() {
+        if (isConnected()) {
+            return null;
+        }
+        closeQuietly(eventClient);
+        eventClient = null;
+        Client client = null;
+        try {
+            log.info("Connecting to FreeSWITCH ESL: node={}, {}:{}", name(), node.getHost(), node.getPort());
+            client = openClient();
+            client.addEventListener(new LivenessListener());
+            // HEARTBEAT 用于发现半开连接，event / filter 命令是累加的，不影响其他订阅
+            client.setEventSubscriptions("plain", "HEARTBEAT");
+            client.addEventFilter("Event-Name", "HEARTBEAT");
+            lastEventAt = 0;
+            eventClient = client;
+            lastConnectedAt = LocalDateTime.now();
+            consecutiveFailures = 0;
+            connects.increment();
+            log.info("Connected to FreeSWITCH ESL successfully: node={}", name());
+            return client;
+        } catch (Exception e) {
+            closeQuietly(client);
+            consecutiveFailures++;
+            connectFailures.increment();
+            nextAttemptAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffDelay(consecutiveFailures));
+            log.warn("Failed to connect to FreeSWITCH ESL: node={}, {} - {}", name(), e.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    synchronized void disconnect() {
+        Client client = eventClient;
+        eventClient = null;
+        if (client != null) {
+            log.info("Disconnecting from FreeSWITCH ESL: node={}", name());
+            closeQuietly(client);
+        }
+    }
+
+    void close() {
+        commandPool.closeAll();
+        disconnect();
+    }
+
+    /**
+     * 在本节点最空闲的命令连接上执行；命令连接池为空或全部断开时退回事件连接，事件连接也不可用时抛出 IllegalStateException
+     */
+    <T> T execute(ClientCall<T> call) throws Exception {
+        EslCommandPool.Slot slot = commandPool.acquire();
+        if (slot == null) {
+            Client client = eventClient;
+            if (client == null || !client.canSend()) {
+                throw new IllegalStateException("FreeSWITCH ESL not connected: node=" + name());
+            }
+            if (commandPool.size() > 0) {
+                commandPool.recordFallback();
+            }
+            return call.call(client);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.call(slot.client());
+            success = true;
+            return result;
+        } finally {
+            slot.release(start, success);
+        }
+    }
+
+    /**
+     * 建立并认证一条新的 ESL 连接，不订阅任何事件
+     */
+    private Client openClient() throws Exception {
+        Client client = new Client();
+        try {
+            // Client.connect 的超时单位是秒
+            int timeoutSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(eslConfig.getTimeout()));
+            client.connect(node.getHost(), node.getPort(), node.getPassword(), timeoutSeconds);
+            return client;
+        } catch (Exception e) {
+            closeQuietly(client);
+            throw e;
+        }
+    }
+
+    /**
+     * 指数退避 + 抖动：在 [上限/2, 上限] 内随机取值，上限为 min(max, initial * 2^failures)，避免多实例同时重连
+     */
+    private long backoffDelay(long failures) {
+        int exponent = (int) Math.min(failures, 16);
+        long ceiling = Math.min(eslConfig.getReconnectMaxDelay(), eslConfig.getReconnectInitialDelay() << exponent);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private void closeQuietly(Client client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.debug("Failed to close ESL client: {}", e.getMessage());
+        }
+    }
+
+    EslConnectionStats getStats(int liveChannels) {
+        long last = lastEventAt;
+        return EslConnectionStats.builder()
+                .node(name())
+                .weight(weight())
+                .liveChannels(liveChannels)
+                .pendingOriginates(pendingOriginates.get())
+                .connected(isConnected())
+                .connects(connects.sum())
+                .connectFailures(connectFailures.sum())
+                .consecutiveFailures(consecutiveFailures)
+                .lastConnectedAt(lastConnectedAt)
+                .lastEventAgeMs(last == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last))
+                .commandPool(commandPool.getStats())
+                .build();
+    }
+
+    /**
+     * 记录事件连接最近一次收到事件的时间，用于发现 socket 仍可写但对端已无响应的半开连接
+     */
+    private class LivenessListener implements IEslEventListener {
+
+        @Override
+        public void eventReceived(EslEvent event) {
+            lastEventAt = System.nanoTime();
+        }
+
+        @Override
+        public void backgroundJobResultReceived(EslEvent event) {
+            lastEventAt = System.nanoTime();
+        }
+    }
+}
@@ -41,9 +41,11 @@ CREATE TABLE IF NOT EXISTS ivr_option (
 
 CREATE INDEX IF NOT EXISTS idx_ivr_option_menu ON ivr_option(ivr_menu_id);
 
+-- 按 start_time 月度范围分区；分区由应用按月预建（见 call_record_ensure_partition），
+-- 尚未建分区的月份写入默认分区，建分区时迁出
 CREATE TABLE IF NOT EXISTS call_record (
-    id BIGSERIAL PRIMARY KEY,
-    call_id VARCHAR(100) NOT NULL UNIQUE,
+    id BIGSERIAL,
+    call_id VARCHAR(100) NOT NULL,
     caller_number VARCHAR(50) NOT NULL,
     callee_number VARCHAR(50) NOT NULL,
     direction VARCHAR(10) NOT NULL,
@@ -54,12 +56,158 @@ CREATE TABLE IF NOT EXISTS call_record (
     duration_seconds INT DEFAULT 0,
     extension_id BIGINT REFERENCES extension(id),
     recording_url VARCHAR(500),
+    node VARCHAR(64),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-);
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, start_time)
+) PARTITION BY RANGE (start_time);
+
+CREATE TABLE IF NOT EXISTS call_record_default PARTITION OF call_record DEFAULT;
 
 CREATE INDEX IF NOT EXISTS idx_call_record_call_id ON call_record(call_id);
 CREATE INDEX IF NOT EXISTS idx_call_record_caller ON call_record(caller_number);
 CREATE INDEX IF NOT EXISTS idx_call_record_callee ON call_record(callee_number);
 CREATE INDEX IF NOT EXISTS idx_call_record_start_time ON call_record(start_time DESC);
 CREATE INDEX IF NOT EXISTS idx_call_record_extension ON call_record(extension_id);
+CREATE INDEX IF NOT EXISTS idx_call_record_node ON call_record(node);
+-- 通话记录列表按 (created_at, id) 倒序游标分页
+CREATE INDEX IF NOT EXISTS idx_call_record_created_id ON call_record(created_at DESC, id DESC);
+
+-- 分区表的唯一约束必须包含分区键，call_id 的全局唯一由 call_record_key 保证：
+-- 插入前登记 call_id（重复时与唯一约束一样报 23505），删除时注销，start_time 随记录同步，
+-- 按 call_id 更新时先查出 start_time，使更新只落到一个分区
+CREATE TABLE IF NOT EXISTS call_record_key (
+    call_id VARCHAR(100) PRIMARY KEY,
+    start_time TIMESTAMP NOT NULL
+);
+
+CREATE OR REPLACE FUNCTION call_record_key_claim() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO call_record_key (call_id, start_time) VALUES (NEW.call_id, NEW.start_time)
+    ON CONFLICT (call_id) DO NOTHING;
+    IF NOT FOUND THEN
+        RAISE unique_violation USING CONSTRAINT = 'call_record_key_pkey',
+            MESSAGE = format('duplicate key value violates unique constraint "call_record_key_pkey": call_id=%s', NEW.call_id);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 跨分区的 UPDATE 会先删除再插入，所以在 BEFORE DELETE 中注销，随后的插入重新登记
+CREATE OR REPLACE FUNCTION call_record_key_release() RETURNS trigger AS $$
+BEGIN
+    DELETE FROM call_record_key WHERE call_id = OLD.call_id;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION call_record_key_sync() RETURNS trigger AS $$
+BEGIN
+    UPDATE call_record_key SET call_id = NEW.call_id, start_time = NEW.start_time WHERE call_id = OLD.call_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_call_record_key_claim ON call_record;
+CREATE TRIGGER trg_call_record_key_claim BEFORE INSERT ON call_record
+    FOR EACH ROW EXECUTE FUNCTION call_record_key_claim();
+DROP TRIGGER IF EXISTS trg_call_record_key_release ON call_record;
+CREATE TRIGGER trg_call_record_key_release BEFORE DELETE ON call_record
+    FOR EACH ROW EXECUTE FUNCTION call_record_key_release();
+DROP TRIGGER IF EXISTS trg_call_record_key_sync ON call_record;
+CREATE TRIGGER trg_call_record_key_sync AFTER UPDATE OF call_id, start_time ON call_record
+    FOR EACH ROW WHEN (OLD.call_id IS DISTINCT FROM NEW.call_id OR OLD.start_time IS DISTINCT FROM NEW.start_time)
+    EXECUTE FUNCTION call_record_key_sync();
+
+-- 建立 p_month 所在月份的分区，已存在时返回 false。
+-- 默认分区中属于该月的记录先迁入新表再挂载；直接操作分区不会触发 call_record 上的语句级汇总触发器，
+-- 迁移时 call_record_key 被注销的 call_id 在迁入后重新登记
+CREATE OR REPLACE FUNCTION call_record_ensure_partition(p_month DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    v_from TIMESTAMP := date_trunc('month', p_month);
+    v_to TIMESTAMP := date_trunc('month', p_month) + INTERVAL '1 month';
+    v_name TEXT := 'call_record_p' || to_char(p_month, 'YYYYMM');
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('call_record_ensure_partition'));
+    IF to_regclass(v_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE call_record INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_name);
+    EXECUTE format('WITH moved AS (DELETE FROM call_record_default WHERE start_time >= %L AND start_time < %L RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', v_from, v_to, v_name);
+    EXECUTE format('INSERT INTO call_record_key (call_id, start_time) SELECT call_id, start_time FROM %I '
+                   'ON CONFLICT (call_id) DO UPDATE SET start_time = EXCLUDED.start_time', v_name);
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (start_time >= %L AND start_time < %L)',
+                   v_name, v_name || '_range', v_from, v_to);
+    EXECUTE format('ALTER TABLE call_record ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', v_name, v_from, v_to);
+    EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', v_name, v_name || '_range');
+    RETURN TRUE;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 通话统计小时汇总：按 (start_time 所在小时, 分机, 方向, 状态) 累计通话数和时长，extension_id 为 0 表示未关联分机
+CREATE TABLE IF NOT EXISTS call_stats_hourly (
+    bucket TIMESTAMP NOT NULL,
+    extension_id BIGINT NOT NULL DEFAULT 0,
+    direction VARCHAR(10) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    calls BIGINT NOT NULL DEFAULT 0,
+    total_duration BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket, extension_id, direction, status)
+);
+
+-- call_stats_hourly 的待合并增量：只追加、不更新，没有主键，由 CallStatsRollupService 定期合并后删除
+CREATE TABLE IF NOT EXISTS call_stats_hourly_delta (
+    bucket TIMESTAMP NOT NULL,
+    extension_id BIGINT NOT NULL,
+    direction VARCHAR(10) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    calls BIGINT NOT NULL,
+    total_duration BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_call_stats_hourly_delta_bucket ON call_stats_hourly_delta(bucket);
+
+-- call_record 的任何写入路径（ESL 批量写入、CDR upsert、COPY 合并）都在语句级触发器中按转换表汇总增量，
+-- 只追加到 call_stats_hourly_delta：写入事务不锁共享的汇总行，多语句事务之间不会因汇总行互相等待或死锁
+CREATE OR REPLACE FUNCTION call_stats_hourly_apply() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+               COUNT(*), COALESCE(SUM(duration_seconds), 0)
+        FROM new_rows
+        GROUP BY 1, 2, 3, 4;
+    ELSIF TG_OP = 'UPDATE' THEN
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT bucket, extension_id, direction, status, SUM(calls), SUM(duration)
+        FROM (
+            SELECT date_trunc('hour', start_time) AS bucket, COALESCE(extension_id, 0) AS extension_id, direction, status,
+                   1 AS calls, COALESCE(duration_seconds, 0) AS duration
+            FROM new_rows
+            UNION ALL
+            SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+                   -1, -COALESCE(duration_seconds, 0)
+            FROM old_rows
+        ) delta
+        GROUP BY 1, 2, 3, 4
+        HAVING SUM(calls) <> 0 OR SUM(duration) <> 0;
+    ELSE
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+               -COUNT(*), -COALESCE(SUM(duration_seconds), 0)
+        FROM old_rows
+        GROUP BY 1, 2, 3, 4;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_call_stats_hourly_insert ON call_record;
+CREATE TRIGGER trg_call_stats_hourly_insert AFTER INSERT ON call_record
+    REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION call_stats_hourly_apply();
+DROP TRIGGER IF EXISTS trg_call_stats_hourly_update ON call_record;
+CREATE TRIGGER trg_call_stats_hourly_update AFTER UPDATE ON call_record
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT EXECUTE FUNCTION call_stats_hourly_apply();
+DROP TRIGGER IF EXISTS trg_call_stats_hourly_delete ON call_record;
+CREATE TRIGGER trg_call_stats_hourly_delete AFTER DELETE ON call_record
+    REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT EXECUTE FUNCTION call_stats_hourly_apply();
@@ -0,0 +1,50 @@
+-- 已有库的幂等升级：001-create-tables.sql 只在新库上执行，之后新增的列和索引在这里补齐。
+-- 应用每次启动都会执行（见 DatabaseInitializer），只能包含可重复执行的语句；call_record 是否已分区都适用
+
+-- 多节点：记录通话所在的 FreeSWITCH 节点
+ALTER TABLE call_record ADD COLUMN IF NOT EXISTS node VARCHAR(64);
+CREATE INDEX IF NOT EXISTS idx_call_record_node ON call_record(node);
+
+-- 汇总触发器改为只追加增量，不再在写入事务中更新共享的汇总行；汇总表不存在时不影响写入
+CREATE TABLE IF NOT EXISTS call_stats_hourly_delta (
+    bucket TIMESTAMP NOT NULL,
+    extension_id BIGINT NOT NULL,
+    direction VARCHAR(10) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    calls BIGINT NOT NULL,
+    total_duration BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_call_stats_hourly_delta_bucket ON call_stats_hourly_delta(bucket);
+
+CREATE OR REPLACE FUNCTION call_stats_hourly_apply() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+               COUNT(*), COALESCE(SUM(duration_seconds), 0)
+        FROM new_rows
+        GROUP BY 1, 2, 3, 4;
+    ELSIF TG_OP = 'UPDATE' THEN
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT bucket, extension_id, direction, status, SUM(calls), SUM(duration)
+        FROM (
+            SELECT date_trunc('hour', start_time) AS bucket, COALESCE(extension_id, 0) AS extension_id, direction, status,
+                   1 AS calls, COALESCE(duration_seconds, 0) AS duration
+            FROM new_rows
+            UNION ALL
+            SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+                   -1, -COALESCE(duration_seconds, 0)
+            FROM old_rows
+        ) delta
+        GROUP BY 1, 2, 3, 4
+        HAVING SUM(calls) <> 0 OR SUM(duration) <> 0;
+    ELSE
+        INSERT INTO call_stats_hourly_delta (bucket, extension_id, direction, status, calls, total_duration)
+        SELECT date_trunc('hour', start_time), COALESCE(extension_id, 0), direction, status,
+               -COUNT(*), -COALESCE(SUM(duration_seconds), 0)
+        FROM old_rows
+        GROUP BY 1, 2, 3, 4;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
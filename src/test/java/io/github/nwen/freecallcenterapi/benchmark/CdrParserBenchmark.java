@@ -0,0 +1,94 @@
+package io.github.nwen.freecallcenterapi.benchmark;
+
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.service.CdrParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML CDR 解析对比：StAX 逐元素读取（CdrParser.parseXml） vs 先把整个 XML 转成 Map 再走 CdrParser.parse(Map)。
+ * 两者都包含 base64 解码，输入为 mod_xml_cdr 推送的 cdr 表单字段。
+ *
+ * 运行: mvn test-compile 后执行
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *        io.github.nwen.freecallcenterapi.benchmark.CdrParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CdrParserBenchmark {
+
+    private final CdrParser parser = new CdrParser();
+    private String formField;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream in = CdrParserBenchmark.class.getResourceAsStream("/cdr/sample-cdr.xml")) {
+            formField = Base64.getEncoder().encodeToString(in.readAllBytes());
+        }
+    }
+
+    @Benchmark
+    public CallRecord streamingStax() {
+        return parser.parseXml(parser.decodeFormField(formField));
+    }
+
+    @Benchmark
+    public CallRecord domToMap() throws Exception {
+        byte[] xml = Base64.getMimeDecoder().decode(formField);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+        return parser.parse(toMap(document.getDocumentElement()));
+    }
+
+    /**
+     * 通用的 XML → Map 转换：叶子节点为（URL 解码后的）文本，其余为嵌套 Map
+     */
+    private static Map<String, Object> toMap(Element element) {
+        Map<String, Object> map = new HashMap<>();
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node node = children.item(i);
+            if (!(node instanceof Element child)) {
+                continue;
+            }
+            if (child.getElementsByTagName("*").getLength() == 0) {
+                map.putIfAbsent(child.getTagName(), URLDecoder.decode(child.getTextContent(), StandardCharsets.UTF_8));
+            } else {
+                map.putIfAbsent(child.getTagName(), toMap(child));
+            }
+        }
+        return map;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CdrParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
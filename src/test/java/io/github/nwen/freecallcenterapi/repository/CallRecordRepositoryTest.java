@@ -346,4 +346,41 @@ class CallRecordRepositoryTest {
 
         assertThrows(Exception.class, () -> callRecordRepository.insert(record2));
     }
+
+    @Test
+    void testMarkAnsweredAndHangupAreIdempotent() {
+        String callId = UUID.randomUUID().toString();
+        LocalDateTime startTime = LocalDateTime.now().minusMinutes(2);
+        LocalDateTime answerTime = startTime.plusSeconds(5);
+        LocalDateTime endTime = answerTime.plusSeconds(42);
+
+        CallRecord record = CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("1002")
+                .direction("outbound")
+                .status("INITIATED")
+                .startTime(startTime)
+                .build();
+        assertEquals(1, callRecordRepository.insertIfAbsent(record));
+        assertEquals(0, callRecordRepository.insertIfAbsent(record));
+
+        assertEquals(1, callRecordRepository.markAnswered(callId, answerTime));
+        callRecordRepository.markAnswered(callId, answerTime.plusSeconds(30));
+        assertEquals(1, callRecordRepository.markHangup(callId, endTime));
+        callRecordRepository.markHangup(callId, endTime.plusSeconds(30));
+
+        CallRecord found = callRecordRepository.selectOne(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+        assertEquals("ANSWERED", found.getStatus());
+        assertEquals(answerTime.withNano(0), found.getAnswerTime().withNano(0));
+        assertEquals(endTime.withNano(0), found.getEndTime().withNano(0));
+        assertEquals(42, found.getDurationSeconds());
+    }
+
+    @Test
+    void testMarkUnknownCallIdUpdatesNothing() {
+        assertEquals(0, callRecordRepository.markAnswered("missing", LocalDateTime.now()));
+        assertEquals(0, callRecordRepository.markHangup("missing", LocalDateTime.now()));
+    }
 }
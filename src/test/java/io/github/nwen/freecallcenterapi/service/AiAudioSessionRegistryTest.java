@@ -0,0 +1,139 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import io.github.nwen.freecallcenterapi.dto.AiAudioSessionStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AiAudioSessionRegistryTest {
+
+    private EslService eslService;
+    private AiAudioSessionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        eslService = mock(EslService.class);
+        AiAgentConfig config = new AiAgentConfig();
+        config.setStreamStartRetries(2);
+        config.setStreamRetryDelayMillis(10);
+        registry = new AiAudioSessionRegistry(eslService, config);
+    }
+
+    private static EslBackgroundJob job(String result) {
+        return new EslBackgroundJob("job", CompletableFuture.completedFuture(result));
+    }
+
+    private static EslBackgroundJob timedOut() {
+        return new EslBackgroundJob("job", CompletableFuture.failedFuture(new TimeoutException("bgapi timeout")));
+    }
+
+    private String stateOf(String callId) {
+        return registry.list().stream()
+                .filter(info -> info.getCallId().equals(callId))
+                .map(info -> info.getState())
+                .findFirst().orElse(null);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testUntrackedCallIsIgnored() {
+        registry.start("call-0");
+        registry.stop("call-0");
+
+        verifyNoInteractions(eslService);
+        assertTrue(registry.list().isEmpty());
+    }
+
+    @Test
+    void testStartRetriesUntilSuccess() throws Exception {
+        when(eslService.sendBackgroundCommand(anyString(), any()))
+                .thenReturn(job("-ERR no such channel\n"), timedOut(), job("+OK Success\n"));
+        registry.track("call-1");
+        assertEquals("PENDING", stateOf("call-1"));
+
+        registry.start("call-1");
+        await(() -> "STREAMING".equals(stateOf("call-1")));
+
+        verify(eslService, times(3)).sendBackgroundCommand(startsWith("uuid_audio_stream call-1 start "), any());
+        assertEquals(3, registry.list().get(0).getAttempts());
+        AiAudioSessionStats stats = registry.getStats();
+        assertEquals(1, stats.getStarted());
+        assertEquals(2, stats.getStartFailures());
+        assertEquals(2, stats.getRetries());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    void testStartFailsAfterRetriesExhausted() throws Exception {
+        when(eslService.sendBackgroundCommand(anyString(), any())).thenReturn(timedOut());
+        registry.track("call-2");
+
+        registry.start("call-2");
+        await(() -> "FAILED".equals(stateOf("call-2")));
+
+        verify(eslService, times(3)).sendBackgroundCommand(anyString(), any());
+        assertEquals("bgapi timeout", registry.list().get(0).getLastError());
+        assertEquals(1, registry.getStats().getFailed());
+
+        // 失败的会话挂断时不再发送 stop
+        registry.stop("call-2");
+        verify(eslService, never()).sendBackgroundCommand(eq("uuid_audio_stream call-2 stop"), any());
+        assertTrue(registry.list().isEmpty());
+        assertEquals(0, registry.getStats().getCompletedStreams());
+    }
+
+    @Test
+    void testStopRecordsStreamDuration() throws Exception {
+        when(eslService.sendBackgroundCommand(anyString(), any())).thenReturn(job("+OK Success\n"));
+        registry.track("call-3");
+        registry.start("call-3");
+        await(() -> "STREAMING".equals(stateOf("call-3")));
+
+        registry.stop("call-3");
+        registry.stop("call-3");
+
+        verify(eslService, times(1)).sendBackgroundCommand(eq("uuid_audio_stream call-3 stop"), any());
+        AiAudioSessionStats stats = registry.getStats();
+        assertEquals(0, stats.getActive());
+        assertEquals(1, stats.getCompletedStreams());
+    }
+
+    @Test
+    void testKill() throws Exception {
+        when(eslService.sendBackgroundCommand(anyString(), any())).thenReturn(job("+OK Success\n"));
+        registry.track("call-4");
+        registry.track("call-5");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.kill("missing"));
+        assertThrows(IllegalStateException.class, () -> registry.kill("call-4"));
+
+        registry.start("call-4");
+        await(() -> "STREAMING".equals(stateOf("call-4")));
+        registry.kill("call-4");
+
+        await(() -> stateOf("call-4") == null);
+        AiAudioSessionStats stats = registry.getStats();
+        assertEquals(1, stats.getKilled());
+        assertEquals(1, stats.getCompletedStreams());
+        assertEquals(1, stats.getActive());
+        assertEquals(1L, stats.getByState().get("PENDING"));
+    }
+}
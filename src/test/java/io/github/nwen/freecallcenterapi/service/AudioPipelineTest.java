@@ -0,0 +1,120 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioPipelineTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_SAMPLES = 320;
+
+    @Test
+    void testStagesTransformAndForward() throws Exception {
+        List<short[]> forwarded = new ArrayList<>();
+        List<Integer> rates = new ArrayList<>();
+        AudioSink sink = (stream, samples, sampleRate) -> {
+            short[] copy = new short[samples.remaining()];
+            samples.get(copy);
+            forwarded.add(copy);
+            rates.add(sampleRate);
+        };
+        AudioPipeline pipeline = new AudioPipeline(SAMPLE_RATE, 4096, List.of(
+                AudioStages.vad(new VoiceActivityDetector.Settings(300, 200, 1, 200, 0), List.of()),
+                AudioStages.resample(8000), AudioStages.gain(4.0), AudioStages.forward(List.of(sink))));
+        AudioStream stream = AudioStream.detached("call-1");
+        pipeline.onStart(stream);
+
+        pipeline.process(stream, frame(0, 10));
+        assertTrue(forwarded.isEmpty(), "静音帧应被 vad 拦下");
+
+        AudioFrame speech = frame(0, 10000);
+        pipeline.process(stream, speech);
+        pipeline.process(stream, frame(FRAME_SAMPLES, 10000));
+        assertEquals(2, forwarded.size());
+        assertEquals(List.of(8000, 8000), rates);
+        // 16 kHz → 8 kHz 每帧 160 个样本，跨帧连续
+        assertEquals(FRAME_SAMPLES / 2, forwarded.get(0).length);
+        assertEquals(FRAME_SAMPLES / 2, forwarded.get(1).length);
+        assertEquals(clamp((short) sine(2, 10000) * 4.0), forwarded.get(0)[1]);
+        assertEquals(clamp((short) sine(FRAME_SAMPLES + 2, 10000) * 4.0), forwarded.get(1)[1]);
+        // 下游拿到的视图是只读的，帧本身不被修改
+        assertTrue(speech.samples().isReadOnly());
+        assertEquals((short) sine(5, 10000), speech.samples().get(5));
+        pipeline.onStop(stream);
+    }
+
+    @Test
+    void testResampleKeepsPhaseAcrossFrames() throws Exception {
+        AudioStage stage = AudioStages.resample(8000).create(null, new AudioStage.Format(SAMPLE_RATE, 400));
+        short[] ramp = new short[FRAME_SAMPLES * 3];
+        for (int i = 0; i < ramp.length; i++) {
+            ramp[i] = (short) (i * 10);
+        }
+        List<Short> out = new ArrayList<>();
+        for (int f = 0; f < 3; f++) {
+            ShortBuffer result = stage.process(null, ShortBuffer.wrap(ramp, f * FRAME_SAMPLES, FRAME_SAMPLES).slice());
+            while (result.hasRemaining()) {
+                out.add(result.get());
+            }
+        }
+        assertEquals(ramp.length / 2, out.size());
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals((short) (i * 20), out.get(i));
+        }
+    }
+
+    @Test
+    void testNoAllocationPerFrameAfterWarmUp() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AudioSink sink = (stream, samples, sampleRate) -> {
+        };
+        AudioPipeline pipeline = new AudioPipeline(SAMPLE_RATE, 4096, List.of(AudioStages.resample(8000),
+                AudioStages.vad(new VoiceActivityDetector.Settings(0, 0, 1, 400, 0), List.of()), AudioStages.gain(2.0), AudioStages.echo(), AudioStages.forward(List.of(sink))));
+        AudioStream[] streams = new AudioStream[50];
+        AudioFrame[] frames = new AudioFrame[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = AudioStream.detached("call-" + i);
+            pipeline.onStart(streams[i]);
+            frames[i] = frame(i * 7, 8000);
+        }
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < streams.length; i++) {
+                pipeline.process(streams[i], frames[i]);
+            }
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < streams.length; i++) {
+                pipeline.process(streams[i], frames[i]);
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // 5 万帧，允许测量本身的少量分配
+        assertTrue(allocated < 64 * 1024, "allocated " + allocated + " bytes");
+    }
+
+    private static AudioFrame frame(int offset, int amplitude) {
+        ByteBuffer data = ByteBuffer.allocate(FRAME_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            data.putShort((short) sine(offset + i, amplitude));
+        }
+        return AudioFrame.of(data.flip());
+    }
+
+    private static double sine(int index, int amplitude) {
+        return amplitude * Math.sin(2 * Math.PI * 440 * index / SAMPLE_RATE);
+    }
+
+    private static short clamp(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioPlayoutTest {
+
+    /** 8 kHz、20 ms 一帧 160 个样本，目标延迟 40~100 ms，容量 500 ms */
+    private static final int FRAME = 160;
+
+    private final List<short[]> sent = new ArrayList<>();
+    private final AudioPlayout playout = new AudioPlayout(frame -> {
+        short[] samples = new short[frame.remaining() / 2];
+        frame.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        sent.add(samples);
+        return true;
+    }, 8000, 20, 500, 40, 100);
+
+    @Test
+    void testBurstIsPacedOneFramePerTick() throws Exception {
+        // 一次写入 5 帧，之后每个节拍只发一帧，尾巴在 finish 后照常放完
+        playout.write(ShortBuffer.wrap(ramp(0, FRAME * 5 + 30)));
+        playout.finish();
+        int ticks = 0;
+        while (playout.tick()) {
+            ticks++;
+        }
+        assertEquals(6, ticks);
+        assertEquals(6, sent.size());
+        assertEquals(30, sent.get(5).length);
+        assertEquals(FRAME * 4, sent.get(4)[0]);
+        assertEquals(0, playout.underruns());
+        assertFalse(playout.isPlaying());
+    }
+
+    @Test
+    void testUnderrunRaisesTargetDelay() throws Exception {
+        // 攒够 40 ms 才开始
+        playout.write(ShortBuffer.wrap(ramp(0, FRAME)));
+        assertFalse(playout.tick());
+        playout.write(ShortBuffer.wrap(ramp(FRAME, FRAME)));
+        assertTrue(playout.tick());
+        assertTrue(playout.tick());
+        // 数据没跟上
+        assertFalse(playout.tick());
+        assertEquals(1, playout.underruns());
+        assertEquals(60, playout.targetMillis());
+
+        // 目标延迟上调后需要攒够 60 ms
+        playout.write(ShortBuffer.wrap(ramp(0, FRAME * 2)));
+        assertFalse(playout.tick());
+        playout.write(ShortBuffer.wrap(ramp(0, FRAME)));
+        assertTrue(playout.tick());
+
+        // 平稳回放一段时间后目标延迟回落
+        for (int i = 0; i < AudioPlayout.ADAPT_TICKS + 5; i++) {
+            playout.write(ShortBuffer.wrap(ramp(0, FRAME)));
+            assertTrue(playout.tick());
+        }
+        assertEquals(40, playout.targetMillis());
+    }
+
+    @Test
+    void testOverrunDropsOldestAndFlushOnBargeIn() throws Exception {
+        // 容量 500 ms = 4000 个样本，写入 4200 个，最旧的 200 个被丢弃
+        playout.write(ShortBuffer.wrap(ramp(0, 4000)));
+        playout.write(ShortBuffer.wrap(ramp(4000, 200)));
+        assertEquals(1, playout.overruns());
+        assertEquals(200, playout.overrunSamples());
+        assertEquals(500, playout.bufferedMillis());
+        assertTrue(playout.tick());
+        assertEquals((short) 200, sent.get(0)[0]);
+
+        playout.flush();
+        assertEquals(0, playout.bufferedMillis());
+        assertEquals(1, playout.bargeIns());
+        assertFalse(playout.tick());
+    }
+
+    @Test
+    void testLittleEndianBytesAreDecoded() throws Exception {
+        ByteBuffer pcm = ByteBuffer.allocate(FRAME * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAME * 2; i++) {
+            pcm.putShort((short) (i - 100));
+        }
+        // 默认大端的视图也按小端 PCM 解析
+        playout.write(ByteBuffer.wrap(pcm.array()));
+        assertTrue(playout.tick());
+        assertEquals(-100, sent.get(0)[0]);
+        assertEquals(59, sent.get(0)[FRAME - 1]);
+    }
+
+    @Test
+    void testSchedulerPacesRegisteredStreamsAndBargesIn() throws Exception {
+        AiAgentConfig config = new AiAgentConfig();
+        config.setSampleRate(8000);
+        AudioPlayoutScheduler scheduler = new AudioPlayoutScheduler(config);
+        AudioStream stream = AudioStream.detached("call-1");
+        AudioPlayout paced = scheduler.register(stream);
+        stream.playout = paced;
+        paced.write(ShortBuffer.wrap(new short[FRAME * 10]));
+        paced.finish();
+
+        scheduler.start();
+        try {
+            long start = System.nanoTime();
+            while (paced.framesPlayed() < 10 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+                Thread.sleep(5);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(10, paced.framesPlayed());
+            // 10 帧 × 20 ms，不会一次性发完
+            assertTrue(elapsedMillis >= 150, "elapsed " + elapsedMillis + " ms");
+
+            paced.write(ShortBuffer.wrap(new short[FRAME * 20]));
+            while (!paced.isPlaying()) {
+                Thread.sleep(5);
+            }
+            scheduler.onSpeechStart(stream);
+            assertEquals(1, paced.bargeIns());
+            assertEquals(0, paced.bufferedMillis());
+        } finally {
+            scheduler.stop();
+            scheduler.unregister(paced);
+        }
+        assertEquals(0, scheduler.activePlayouts());
+    }
+
+    @Test
+    void testBargeInFlushesAudioStillPrebuffering() {
+        AiAgentConfig config = new AiAgentConfig();
+        config.setSampleRate(8000);
+        AudioPlayoutScheduler scheduler = new AudioPlayoutScheduler(config);
+        AudioStream stream = AudioStream.detached("call-1");
+        AudioPlayout pending = scheduler.register(stream);
+        stream.playout = pending;
+        // 不足抖动缓冲下限，还没开始播放
+        pending.write(ShortBuffer.wrap(new short[FRAME]));
+        assertFalse(pending.isPlaying());
+
+        scheduler.onSpeechStart(stream);
+        assertEquals(1, pending.bargeIns());
+        assertEquals(0, pending.bufferedMillis());
+        scheduler.unregister(pending);
+    }
+
+    private static short[] ramp(int from, int count) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (from + i);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,195 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.AiAgentConfig;
+import io.github.nwen.freecallcenterapi.dto.AudioServerStats;
+import io.github.nwen.freecallcenterapi.dto.AudioStreamStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AudioStreamServerTest {
+
+    @Test
+    void testEchoReassemblesPartialFrames() throws Exception {
+        AudioStreamServer server = server(config(8, 64, 4), Map.of("echoProcessor", new EchoAudioProcessor()));
+        List<byte[]> sent = new CopyOnWriteArrayList<>();
+        WebSocketSession session = session("s1", "ws://springboot:8081/api/audio/call-1");
+        doAnswer(invocation -> {
+            ByteBuffer payload = invocation.<BinaryMessage>getArgument(0).getPayload();
+            byte[] copy = new byte[payload.remaining()];
+            payload.get(copy);
+            sent.add(copy);
+            return null;
+        }).when(session).sendMessage(any());
+
+        server.afterConnectionEstablished(session);
+        server.handleMessage(session, new BinaryMessage(new byte[]{1, 2, 3}, false));
+        server.handleMessage(session, new BinaryMessage(new byte[]{4, 5}, true));
+        server.handleMessage(session, new BinaryMessage(new byte[]{6}, true));
+        await(() -> sent.size() == 2);
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, sent.get(0));
+        assertArrayEquals(new byte[]{6}, sent.get(1));
+        AudioStreamStats stats = server.getStats().getStreams().get(0);
+        assertEquals("call-1", stats.getCallId());
+        assertEquals(2, stats.getFramesReceived());
+        assertEquals(6, stats.getBytesReceived());
+        assertEquals(0, stats.getFramesDropped());
+
+        server.afterConnectionClosed(session, CloseStatus.NORMAL);
+        AudioServerStats serverStats = server.getStats();
+        assertEquals(0, serverStats.getActiveStreams());
+        assertEquals(2, serverStats.getFramesReceived());
+        await(() -> server.getStats().getBuffersAvailable() == 8);
+    }
+
+    @Test
+    void testSlowProcessorDropsFramesWithoutBlockingReceiver() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AudioProcessor blocking = (stream, frame) -> release.await();
+        AudioStreamServer server = server(config(4, 16, 2), Map.of("echoProcessor", blocking));
+        WebSocketSession session = session("s2", "ws://springboot:8081/api/audio");
+
+        server.afterConnectionEstablished(session);
+        server.handleMessage(session, new BinaryMessage(new byte[8], true));
+        await(() -> server.getStats().getStreams().get(0).getQueuedFrames() == 0);
+        for (int i = 0; i < 5; i++) {
+            server.handleMessage(session, new BinaryMessage(new byte[8], true));
+        }
+        // 缓冲池由所有通话共享：另一路通话占住最后一个缓冲区后本通话的新帧拿不到缓冲区
+        WebSocketSession other = session("s3", "ws://springboot:8081/api/audio/call-3");
+        server.afterConnectionEstablished(other);
+        server.handleMessage(other, new BinaryMessage(new byte[4], false));
+        server.handleMessage(session, new BinaryMessage(new byte[8], true));
+        server.handleMessage(other, new BinaryMessage(new byte[32], true));
+
+        AudioStreamStats stats = stats(server, "s2");
+        assertEquals("s2", stats.getCallId());
+        assertEquals(7, stats.getFramesReceived());
+        assertEquals(2, stats.getQueuedFrames());
+        assertEquals(3, stats.getDroppedQueueFull());
+        assertEquals(1, stats.getDroppedNoBuffer());
+        assertEquals(1, stats(server, "s3").getDroppedOversize());
+        assertEquals(1, server.getStats().getBuffersAvailable());
+
+        release.countDown();
+        await(() -> stats(server, "s2").getFramesProcessed() == 3);
+        assertTrue(stats(server, "s2").getMaxLatencyMicros() > 0);
+
+        server.afterConnectionClosed(session, CloseStatus.NORMAL);
+        server.afterConnectionClosed(other, CloseStatus.NORMAL);
+        await(() -> server.getStats().getBuffersAvailable() == 4);
+        assertEquals(5, server.getStats().getFramesDropped());
+        assertEquals(8, server.getStats().getFramesReceived());
+    }
+
+    @Test
+    void testPlayoutSendDoesNotBlockOnSlowPeer() throws Exception {
+        AtomicReference<AudioStream> captured = new AtomicReference<>();
+        AudioProcessor capture = new AudioProcessor() {
+            @Override
+            public void onStart(AudioStream stream) {
+                captured.set(stream);
+            }
+
+            @Override
+            public void process(AudioStream stream, AudioFrame frame) {
+            }
+        };
+        AudioStreamServer server = server(config(4, 16, 2), Map.of("echoProcessor", capture));
+        WebSocketSession session = session("s4", "ws://springboot:8081/api/audio/call-4");
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<byte[]> sent = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            sending.countDown();
+            // 模拟对端 TCP 窗口已满，发送阻塞
+            release.await();
+            ByteBuffer payload = invocation.<BinaryMessage>getArgument(0).getPayload();
+            byte[] copy = new byte[payload.remaining()];
+            payload.get(copy);
+            sent.add(copy);
+            return null;
+        }).when(session).sendMessage(any());
+
+        server.afterConnectionEstablished(session);
+        await(() -> captured.get() != null);
+        AudioStream stream = captured.get();
+        ByteBuffer frame = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+
+        assertTrue(stream.trySend(frame));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        // 上一帧卡在发送中：节拍线程立即返回，不等待
+        long begin = System.nanoTime();
+        assertFalse(stream.trySend(ByteBuffer.wrap(new byte[]{5, 6, 7, 8})));
+        assertTrue(System.nanoTime() - begin < TimeUnit.MILLISECONDS.toNanos(50));
+
+        release.countDown();
+        await(() -> sent.size() == 1);
+        await(() -> stream.trySend(ByteBuffer.wrap(new byte[]{9, 10, 11, 12})));
+        await(() -> sent.size() == 2);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, sent.get(0));
+        assertArrayEquals(new byte[]{9, 10, 11, 12}, sent.get(1));
+
+        server.afterConnectionClosed(session, CloseStatus.NORMAL);
+        stream.playoutSender.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(stream.playoutSender.isAlive());
+    }
+
+    @Test
+    void testUnknownProcessorFailsFast() {
+        assertThrows(IllegalStateException.class,
+                () -> server(config(1, 16, 1), Map.of("other", new EchoAudioProcessor())));
+    }
+
+    private static AudioStreamStats stats(AudioStreamServer server, String sessionId) {
+        return server.getStats().getStreams().stream()
+                .filter(stats -> stats.getSessionId().equals(sessionId))
+                .findFirst().orElseThrow();
+    }
+
+    private static AudioStreamServer server(AiAgentConfig config, Map<String, AudioProcessor> processors) {
+        return new AudioStreamServer(config, processors, new AudioPlayoutScheduler(config));
+    }
+
+    private static AiAgentConfig config(int poolSize, int frameBytes, int queueFrames) {
+        AiAgentConfig config = new AiAgentConfig();
+        config.setBufferPoolSize(poolSize);
+        config.setMaxFrameBytes(frameBytes);
+        config.setStreamQueueFrames(queueFrames);
+        return config;
+    }
+
+    private static WebSocketSession session(String id, String uri) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getUri()).thenReturn(URI.create(uri));
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.dto.CallRecordQuery;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CallRecordExportServiceTest {
+
+    @Autowired
+    private CallRecordExportService callRecordExportService;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+        LocalDateTime base = LocalDateTime.of(2024, 1, 15, 10, 0);
+        for (int i = 0; i < 5; i++) {
+            callRecordRepository.insert(CallRecord.builder()
+                    .callId("export-" + i)
+                    .callerNumber(i < 3 ? "1001" : "1002")
+                    .calleeNumber("2001")
+                    .direction("outbound")
+                    .status("ANSWERED")
+                    .startTime(base.plusMinutes(i))
+                    .durationSeconds(10 * i)
+                    .recordingUrl(i == 0 ? "/recordings/a,\"b\".wav" : null)
+                    .createdAt(base.plusMinutes(i))
+                    .build());
+        }
+    }
+
+    @Test
+    void testCsvExportAppliesFiltersInCreationOrder() throws Exception {
+        String csv = export(CallRecordQuery.builder().callerNumber("1001").build(), CallRecordExportService.Format.CSV);
+
+        String[] lines = csv.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("id,call_id,"));
+        assertTrue(lines[1].contains(",export-0,"));
+        assertTrue(lines[1].contains(",\"/recordings/a,\"\"b\"\".wav\","));
+        assertTrue(lines[1].contains(",2024-01-15 10:00:00,"));
+        assertTrue(lines[3].contains(",export-2,"));
+    }
+
+    @Test
+    void testNdjsonExportWritesOneObjectPerLine() throws Exception {
+        String ndjson = export(CallRecordQuery.builder().build(), CallRecordExportService.Format.NDJSON);
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(5, lines.length);
+        JsonNode last = objectMapper.readTree(lines[4]);
+        assertEquals("export-4", last.get("callId").asText());
+        assertEquals(40, last.get("durationSeconds").asInt());
+    }
+
+    private String export(CallRecordQuery query, CallRecordExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        callRecordExportService.export(query, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
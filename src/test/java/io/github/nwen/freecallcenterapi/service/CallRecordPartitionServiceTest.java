@@ -0,0 +1,127 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CallRecordPartitionServiceTest {
+
+    private static final YearMonth MONTH = YearMonth.of(2031, 3);
+    private static final String PARTITION = "call_record_p203103";
+
+    @Autowired
+    private CallRecordPartitionService partitionService;
+
+    @Autowired
+    private CallRecordService callRecordService;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        assertTrue(partitionService.isPartitioned());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + PARTITION);
+        jdbcTemplate.update("DELETE FROM call_record WHERE call_id LIKE 'part-%'");
+        jdbcTemplate.update("DELETE FROM call_record_key WHERE call_id LIKE 'part-%'");
+        jdbcTemplate.update("DELETE FROM call_stats_hourly WHERE bucket >= '2031-01-01'");
+        jdbcTemplate.update("DELETE FROM call_stats_hourly_delta WHERE bucket >= '2031-01-01'");
+    }
+
+    @Test
+    void testEnsurePartitionMovesRowsFromDefaultPartition() {
+        insert("part-1", LocalDateTime.of(2031, 3, 10, 9, 30));
+        assertEquals("call_record_default", partitionOf("part-1"));
+
+        partitionService.ensurePartition(MONTH);
+        assertFalse(partitionService.ensurePartition(MONTH));
+        assertEquals(PARTITION, partitionOf("part-1"));
+
+        // 迁移后 call_id 仍全局唯一，按 call_id 的更新仍能定位到记录
+        assertThrows(Exception.class, () -> insert("part-1", LocalDateTime.of(2031, 4, 1, 0, 0)));
+        callRecordService.upsertCdrRecord(CallRecord.builder()
+                .callId("part-1").callerNumber("1001").calleeNumber("2001").direction("inbound")
+                .status("ANSWERED").startTime(LocalDateTime.of(2031, 3, 10, 9, 30)).durationSeconds(42)
+                .build());
+        assertEquals(42, callRecordRepository.selectList(null).stream()
+                .filter(r -> "part-1".equals(r.getCallId())).findFirst().orElseThrow().getDurationSeconds());
+    }
+
+    @Test
+    void testArchivePartitionExportsAndKeepsRollup() throws Exception {
+        insert("part-1", LocalDateTime.of(2031, 3, 10, 9, 30));
+        insert("part-2", LocalDateTime.of(2031, 3, 20, 18, 0));
+        partitionService.ensurePartition(MONTH);
+        long rolledUp = rollupCalls();
+        assertEquals(2, rolledUp);
+
+        Path file = partitionService.archivePartition(PARTITION);
+
+        assertTrue(Files.exists(file));
+        String csv;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            csv = out.toString(StandardCharsets.UTF_8);
+        }
+        assertTrue(csv.startsWith("id,call_id,"));
+        assertTrue(csv.contains("part-1") && csv.contains("part-2"));
+
+        assertNull(jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, PARTITION));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM call_record_key WHERE call_id LIKE 'part-%'", Long.class));
+        assertEquals(rolledUp, rollupCalls());
+        // 归档后同一 call_id 可以重新写入
+        insert("part-1", LocalDateTime.of(2031, 3, 10, 9, 30));
+    }
+
+    private void insert(String callId, LocalDateTime startTime) {
+        callRecordRepository.insert(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("2001")
+                .direction("inbound")
+                .status("INITIATED")
+                .startTime(startTime)
+                .build());
+    }
+
+    private String partitionOf(String callId) {
+        return jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM call_record WHERE call_id = ?",
+                String.class, callId);
+    }
+
+    private long rollupCalls() {
+        return jdbcTemplate.queryForObject("""
+                SELECT (SELECT COALESCE(SUM(calls), 0) FROM call_stats_hourly WHERE bucket >= '2031-03-01')
+                     + (SELECT COALESCE(SUM(calls), 0) FROM call_stats_hourly_delta WHERE bucket >= '2031-03-01')
+                """, Long.class);
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.dto.CallRecordPage;
+import io.github.nwen.freecallcenterapi.dto.CallRecordQuery;
+import io.github.nwen.freecallcenterapi.dto.CallRecordResponse;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CallRecordServiceTest {
+
+    @Autowired
+    private CallRecordService callRecordService;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+        LocalDateTime base = LocalDateTime.of(2024, 1, 15, 10, 0);
+        for (int i = 0; i < 25; i++) {
+            // 每 5 条共用一个 created_at，验证 id 作为并列时的次序
+            LocalDateTime createdAt = base.plusMinutes(i / 5);
+            callRecordRepository.insert(CallRecord.builder()
+                    .callId("page-" + i)
+                    .callerNumber(i % 2 == 0 ? "1001" : "1002")
+                    .calleeNumber("2001")
+                    .direction("outbound")
+                    .status("ANSWERED")
+                    .startTime(createdAt)
+                    .createdAt(createdAt)
+                    .build());
+        }
+    }
+
+    @Test
+    void testKeysetPaginationWalksAllRecordsOnce() {
+        CallRecordQuery query = CallRecordQuery.builder().build();
+        List<CallRecordResponse> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CallRecordPage page = callRecordService.query(query, cursor, 10, pages == 0);
+            if (pages == 0) {
+                assertEquals(25, page.getTotal());
+            } else {
+                assertNull(page.getTotal());
+            }
+            seen.addAll(page.getItems());
+            cursor = page.getNextCursor();
+            assertEquals(cursor != null, page.isHasMore());
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        assertEquals(25, new HashSet<>(seen.stream().map(CallRecordResponse::getId).toList()).size());
+        for (int i = 1; i < seen.size(); i++) {
+            CallRecordResponse previous = seen.get(i - 1);
+            CallRecordResponse current = seen.get(i);
+            int order = current.getCreatedAt().compareTo(previous.getCreatedAt());
+            assertTrue(order < 0 || (order == 0 && current.getId() < previous.getId()));
+        }
+    }
+
+    @Test
+    void testKeysetPaginationAppliesFilters() {
+        CallRecordQuery query = CallRecordQuery.builder().callerNumber("1002").build();
+
+        CallRecordPage first = callRecordService.query(query, null, 10, true);
+        CallRecordPage second = callRecordService.query(query, first.getNextCursor(), 10, false);
+
+        assertEquals(12, first.getTotal());
+        assertEquals(2, second.getItems().size());
+        assertFalse(second.isHasMore());
+        assertTrue(second.getItems().stream().allMatch(r -> "1002".equals(r.getCallerNumber())));
+    }
+
+    @Test
+    void testInvalidCursorIsRejected() {
+        assertThrows(IllegalStateException.class,
+                () -> callRecordService.query(CallRecordQuery.builder().build(), "not-a-cursor", 10, false));
+    }
+
+    @Test
+    void testUpsertCdrRecordMergesWithEslRecord() {
+        String callId = UUID.randomUUID().toString();
+        LocalDateTime startTime = LocalDateTime.now().minusMinutes(3).withNano(0);
+
+        callRecordRepository.insertIfAbsent(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("unknown")
+                .calleeNumber("1002")
+                .direction("inbound")
+                .status("INITIATED")
+                .startTime(startTime)
+                .build());
+
+        callRecordService.upsertCdrRecord(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("1002")
+                .direction("inbound")
+                .status("ANSWERED")
+                .startTime(startTime)
+                .answerTime(startTime.plusSeconds(3))
+                .endTime(startTime.plusSeconds(63))
+                .durationSeconds(60)
+                .build());
+
+        List<CallRecord> records = callRecordRepository.selectList(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+        assertEquals(1, records.size());
+        CallRecord merged = records.get(0);
+        assertEquals("1001", merged.getCallerNumber());
+        assertEquals("ANSWERED", merged.getStatus());
+        assertEquals(60, merged.getDurationSeconds());
+    }
+
+    @Test
+    void testUpsertCdrRecordInsertsWhenAbsent() {
+        String callId = UUID.randomUUID().toString();
+
+        callRecordService.upsertCdrRecord(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("1003")
+                .direction("outbound")
+                .status("NO_ANSWER")
+                .startTime(LocalDateTime.now())
+                .durationSeconds(0)
+                .build());
+
+        CallRecord found = callRecordRepository.selectOne(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+        assertNotNull(found);
+        assertEquals("NO_ANSWER", found.getStatus());
+    }
+
+    @Test
+    void testUpsertCdrRecordInTransactionSurvivesInsertRace() throws Exception {
+        String callId = UUID.randomUUID().toString();
+        LocalDateTime startTime = LocalDateTime.now().minusMinutes(2).withNano(0);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch eslInserted = new CountDownLatch(1);
+
+        // ESL 创建在另一个事务中插入同一 call_id 并延迟提交：CDR 的插入看不到它，登记触发器等对方提交后报 23505
+        Thread esl = Thread.ofPlatform().start(() -> transaction.executeWithoutResult(status -> {
+            callRecordRepository.insertIfAbsent(CallRecord.builder()
+                    .callId(callId)
+                    .callerNumber("unknown")
+                    .calleeNumber("1002")
+                    .direction("inbound")
+                    .status("INITIATED")
+                    .startTime(startTime)
+                    .build());
+            eslInserted.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(eslInserted.await(5, TimeUnit.SECONDS));
+
+        transaction.executeWithoutResult(status -> {
+            callRecordService.upsertCdrRecord(CallRecord.builder()
+                    .callId(callId)
+                    .callerNumber("1001")
+                    .calleeNumber("1002")
+                    .direction("inbound")
+                    .status("ANSWERED")
+                    .startTime(startTime)
+                    .durationSeconds(45)
+                    .build());
+            // 冲突只回滚了保存点，同一事务仍可继续执行
+            assertEquals(1, callRecordRepository.selectCount(
+                    new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId)));
+        });
+        esl.join();
+
+        CallRecord merged = callRecordRepository.selectOne(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+        assertEquals("ANSWERED", merged.getStatus());
+        assertEquals(45, merged.getDurationSeconds());
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.config.CallRecordWriterConfig;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CallRecordWriterTest {
+
+    @Autowired
+    private CallRecordWriter callRecordWriter;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+    }
+
+    @Test
+    void testCallLifecycleIsWrittenInBatches() throws Exception {
+        String callId = UUID.randomUUID().toString();
+        LocalDateTime startTime = LocalDateTime.now().minusSeconds(90);
+        LocalDateTime answerTime = startTime.plusSeconds(10);
+        LocalDateTime endTime = answerTime.plusSeconds(75);
+        long writtenBefore = callRecordWriter.getStats().getWritten();
+
+        callRecordWriter.submitCreate(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("1002")
+                .direction("outbound")
+                .status("INITIATED")
+                .startTime(startTime)
+                .build());
+        callRecordWriter.submitAnswer(callId, answerTime);
+        callRecordWriter.submitHangup(callId, endTime);
+
+        awaitWritten(writtenBefore + 3);
+
+        CallRecord found = callRecordRepository.selectOne(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+        assertNotNull(found);
+        assertEquals("ANSWERED", found.getStatus());
+        assertNotNull(found.getAnswerTime());
+        assertNotNull(found.getEndTime());
+        assertEquals(75, found.getDurationSeconds());
+    }
+
+    @Test
+    void testDuplicateCreateIsIgnored() throws Exception {
+        String callId = UUID.randomUUID().toString();
+        long writtenBefore = callRecordWriter.getStats().getWritten();
+
+        for (int i = 0; i < 2; i++) {
+            callRecordWriter.submitCreate(CallRecord.builder()
+                    .callId(callId)
+                    .callerNumber("1001")
+                    .calleeNumber("1002")
+                    .direction("outbound")
+                    .status("INITIATED")
+                    .startTime(LocalDateTime.now())
+                    .build());
+        }
+
+        awaitWritten(writtenBefore + 2);
+
+        assertEquals(1, callRecordRepository.selectCount(
+                new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId)));
+        assertEquals(0, callRecordWriter.getStats().getQueueDepth());
+    }
+
+    @Test
+    void testDuplicateKeyOnRowFallbackIsNotCountedAsFailure() {
+        SqlSessionFactory brokenFactory = mock(SqlSessionFactory.class);
+        when(brokenFactory.openSession(any(ExecutorType.class), anyBoolean()))
+                .thenThrow(new IllegalStateException("batch failed"));
+        CallRecordRepository racingRepository = mock(CallRecordRepository.class);
+        when(racingRepository.insertIfAbsent(any()))
+                .thenThrow(new DuplicateKeyException("duplicate key value violates unique constraint \"call_record_key_pkey\""));
+        // 未启动刷盘线程时 submit 直接同步写入
+        CallRecordWriter writer = new CallRecordWriter(brokenFactory, racingRepository, new CallRecordWriterConfig());
+
+        writer.submitCreate(CallRecord.builder().callId(UUID.randomUUID().toString()).startTime(LocalDateTime.now()).build());
+
+        assertEquals(1, writer.getStats().getWritten());
+        assertEquals(0, writer.getStats().getFailed());
+    }
+
+    private void awaitWritten(long expected) throws InterruptedException {
+        for (int i = 0; i < 50 && callRecordWriter.getStats().getWritten() < expected; i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(callRecordWriter.getStats().getWritten() >= expected);
+    }
+}
@@ -0,0 +1,214 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.dto.CallStatsResponse;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.entity.Extension;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import io.github.nwen.freecallcenterapi.repository.CallStatsRollupRepository;
+import io.github.nwen.freecallcenterapi.repository.ExtensionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CallStatsRollupServiceTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 3, 1, 8, 0);
+
+    @Autowired
+    private CallStatsRollupService rollupService;
+
+    @Autowired
+    private CallStatsRollupRepository rollupRepository;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @Autowired
+    private ExtensionRepository extensionRepository;
+
+    @Autowired
+    private CallRecordService callRecordService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long extensionId;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+        jdbcTemplate.update("DELETE FROM call_stats_hourly");
+        jdbcTemplate.update("DELETE FROM call_stats_hourly_delta");
+        Extension extension = extensionRepository.selectOne(
+                new LambdaQueryWrapper<Extension>().eq(Extension::getExtensionNumber, "9917"));
+        if (extension == null) {
+            extension = Extension.builder().extensionNumber("9917").password("rollup").enabled(true).build();
+            extensionRepository.insert(extension);
+        }
+        extensionId = extension.getId();
+
+        // 5 小时内每 7 分钟一通，状态与分机交替，覆盖非整点边界
+        for (int i = 0; i < 43; i++) {
+            LocalDateTime createdAt = BASE.plusMinutes(i * 7L);
+            boolean answered = i % 3 != 0;
+            insert("rollup-" + i, createdAt, i % 2 == 0 ? "outbound" : "inbound",
+                    answered ? "ANSWERED" : "NO_ANSWER", answered ? 10 + i : 0, i % 4 == 0 ? extensionId : null);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+    }
+
+    @Test
+    void testRollupStatsMatchRawScanAfterWrites() {
+        // 更新和删除同样经由触发器反映到汇总表
+        jdbcTemplate.update("UPDATE call_record SET status = 'ANSWERED', duration_seconds = 99 WHERE call_id = 'rollup-3'");
+        jdbcTemplate.update("DELETE FROM call_record WHERE call_id = 'rollup-10'");
+
+        assertMatchesRaw(BASE, BASE.plusHours(6), null);
+        assertMatchesRaw(BASE.plusMinutes(13), BASE.plusHours(3).plusMinutes(41), null);
+        assertMatchesRaw(BASE.plusMinutes(13), BASE.plusMinutes(50), null);
+        assertMatchesRaw(BASE.plusMinutes(20), BASE.plusHours(4).plusMinutes(5), extensionId);
+
+        CallStatsResponse all = rollupService.sumStats(BASE, BASE.plusHours(6), null);
+        assertEquals(42, all.getTotalCalls());
+        assertEquals(all.getTotalCalls() - all.getAnsweredCalls(), all.getMissedCalls());
+    }
+
+    @Test
+    void testFoldMovesDeltasIntoBuckets() {
+        jdbcTemplate.update("UPDATE call_record SET status = 'ANSWERED', duration_seconds = 99 WHERE call_id = 'rollup-3'");
+        CallStatsResponse before = rollupService.sumStats(BASE, BASE.plusHours(6), null);
+
+        assertTrue(rollupService.fold() > 0);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM call_stats_hourly_delta", Long.class));
+        assertEquals(0, rollupService.fold());
+        assertEquals(before, rollupService.sumStats(BASE, BASE.plusHours(6), null));
+
+        // 合并之后的写入继续以增量计入
+        jdbcTemplate.update("DELETE FROM call_record WHERE call_id = 'rollup-10'");
+        assertMatchesRaw(BASE, BASE.plusHours(6), null);
+        assertMatchesRaw(BASE.plusMinutes(20), BASE.plusHours(4).plusMinutes(5), extensionId);
+    }
+
+    @Test
+    void testWritersToSameBucketDoNotWaitForEachOther() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = Thread.ofVirtual().start(() -> transaction.executeWithoutResult(status -> {
+            insert("rollup-hold", BASE.plusMinutes(1), "outbound", "ANSWERED", 30, null);
+            written.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            // 同一小时桶、同一维度的另一个事务：汇总不再锁共享行，无需等持有方提交
+            transaction.executeWithoutResult(status -> {
+                jdbcTemplate.execute("SET LOCAL lock_timeout = '1s'");
+                insert("rollup-other", BASE.plusMinutes(2), "outbound", "ANSWERED", 40, null);
+            });
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        assertMatchesRaw(BASE, BASE.plusHours(1), null);
+    }
+
+    @Test
+    void testBackfillRebuildsDeletedBuckets() {
+        CallStatsResponse before = rollupService.sumStats(BASE, BASE.plusHours(6), null);
+        rollupService.fold();
+        jdbcTemplate.update("DELETE FROM call_stats_hourly");
+        assertEquals(0, rollupService.sumStats(BASE.plusHours(1), BASE.plusHours(4), null).getTotalCalls());
+
+        int buckets = rollupService.backfill(BASE.plusMinutes(30), BASE.plusHours(5).plusMinutes(1));
+        assertTrue(buckets > 0);
+        assertEquals(before, rollupService.sumStats(BASE, BASE.plusHours(6), null));
+        assertMatchesRaw(BASE.plusMinutes(13), BASE.plusHours(3).plusMinutes(41), extensionId);
+    }
+
+    @Test
+    void testDetailedStatsSinglePassWithGroups() {
+        LocalDateTime start = BASE.plusMinutes(13);
+        LocalDateTime end = BASE.plusHours(3).plusMinutes(41);
+        CallStatsResponse rollup = rollupService.sumStats(start, end, null);
+
+        CallStatsResponse detailed = callRecordService.getDetailedStats(start, end, null, null);
+        assertEquals(rollup.getTotalCalls(), detailed.getTotalCalls());
+        assertEquals(rollup.getAnsweredCalls(), detailed.getAnsweredCalls());
+        assertEquals(rollup.getMissedCalls(), detailed.getMissedCalls());
+        assertEquals(rollup.getTotalDuration(), detailed.getTotalDuration());
+        assertEquals(rollup.getAvgDuration(), detailed.getAvgDuration());
+        assertEquals(rollup.getAnswerRate(), detailed.getAnswerRate(), 0.001);
+        assertNotNull(detailed.getP50Duration());
+        assertTrue(detailed.getP50Duration() <= detailed.getP90Duration());
+        assertTrue(detailed.getP99Duration() <= detailed.getMaxDuration());
+        assertNull(detailed.getGroups());
+
+        for (String groupBy : new String[]{"extension", "hour", "direction"}) {
+            CallStatsResponse grouped = callRecordService.getDetailedStats(start, end, null, groupBy);
+            assertEquals(detailed.getTotalCalls(), grouped.getTotalCalls());
+            assertEquals(detailed.getP90Duration(), grouped.getP90Duration());
+            assertEquals(groupBy, grouped.getGroupBy());
+            assertFalse(grouped.getGroups().isEmpty());
+            assertEquals(grouped.getTotalCalls(),
+                    grouped.getGroups().stream().mapToLong(CallStatsResponse::getTotalCalls).sum());
+            assertEquals(grouped.getTotalDuration(),
+                    grouped.getGroups().stream().mapToLong(CallStatsResponse::getTotalDuration).sum());
+            grouped.getGroups().forEach(group -> assertNotNull(group.getGroupKey()));
+        }
+
+        CallStatsResponse byDirection = callRecordService.getDetailedStats(start, end, extensionId, "direction");
+        assertEquals(rollupService.sumStats(start, end, extensionId).getTotalCalls(), byDirection.getTotalCalls());
+        assertThrows(IllegalStateException.class, () -> callRecordService.getDetailedStats(start, end, null, "caller"));
+    }
+
+    private void insert(String callId, LocalDateTime startTime, String direction, String status,
+                        int durationSeconds, Long extensionId) {
+        callRecordRepository.insert(CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("2001")
+                .direction(direction)
+                .status(status)
+                .durationSeconds(durationSeconds)
+                .extensionId(extensionId)
+                .startTime(startTime)
+                .createdAt(startTime)
+                .build());
+    }
+
+    private void assertMatchesRaw(LocalDateTime start, LocalDateTime end, Long extensionId) {
+        CallStatsResponse raw = rollupRepository.sumStatsFromRecords(start, end, extensionId);
+        CallStatsResponse stats = rollupService.sumStats(start, end, extensionId);
+        assertTrue(raw.getTotalCalls() > 0);
+        assertEquals(raw.getTotalCalls(), stats.getTotalCalls());
+        assertEquals(raw.getAnsweredCalls(), stats.getAnsweredCalls());
+        assertEquals(raw.getTotalDuration(), stats.getTotalDuration());
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.config.CdrBulkConfig;
+import io.github.nwen.freecallcenterapi.dto.CdrBulkResponse;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CdrBulkImporterTest {
+
+    @Autowired
+    private CdrBulkImporter cdrBulkImporter;
+
+    @Autowired
+    private CdrBulkConfig cdrBulkConfig;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    private int batchSize;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+        batchSize = cdrBulkConfig.getBatchSize();
+        cdrBulkConfig.setBatchSize(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cdrBulkConfig.setBatchSize(batchSize);
+    }
+
+    @Test
+    void testNdjsonIsImportedInBatchesWithRejects() throws Exception {
+        String body = cdr("bulk-1", "1001", "2001", 30) + "\n"
+                + "{\"variables\":{\"uuid\":\"bulk-bad\"}}\n"
+                + cdr("bulk-2", "1002", "2002", 0) + "\n"
+                + "42\n"
+                + cdr("bulk-3", "1003", "2003", 15) + "\n";
+
+        CdrBulkResponse response = importBody(body);
+
+        assertNull(response.getError());
+        assertEquals(5, response.getReceived());
+        assertEquals(3, response.getAccepted());
+        assertEquals(2, response.getRejected());
+        assertEquals(2, response.getBatches());
+        assertEquals(1, response.getRejects().get(0).getIndex());
+        assertEquals(3, response.getRejects().get(1).getIndex());
+
+        CallRecord first = findByCallId("bulk-1");
+        assertEquals("ANSWERED", first.getStatus());
+        assertEquals(30, first.getDurationSeconds());
+        assertEquals("NO_ANSWER", findByCallId("bulk-2").getStatus());
+    }
+
+    @Test
+    void testJsonArrayMergesWithExistingRecord() throws Exception {
+        callRecordRepository.insert(CallRecord.builder()
+                .callId("bulk-merge")
+                .callerNumber("1001")
+                .calleeNumber("2001")
+                .direction("outbound")
+                .status("INITIATED")
+                .startTime(LocalDateTime.of(2024, 1, 15, 10, 0))
+                .recordingUrl("/recordings/bulk-merge.wav")
+                .build());
+
+        // 同一批内重复的 call_id 以最后一条为准
+        String body = "[" + cdr("bulk-merge", "1001", "2001", 10) + ","
+                + cdr("bulk-merge", "1001", "2001", 45) + "]";
+
+        CdrBulkResponse response = importBody(body);
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(0, response.getRejected());
+        CallRecord merged = findByCallId("bulk-merge");
+        assertEquals(45, merged.getDurationSeconds());
+        assertEquals("/recordings/bulk-merge.wav", merged.getRecordingUrl());
+        assertNotNull(merged.getEndTime());
+    }
+
+    @Test
+    void testMalformedBodyKeepsRecordsReadSoFar() throws Exception {
+        String body = cdr("bulk-ok", "1001", "2001", 5) + "\n{\"variables\": ";
+
+        CdrBulkResponse response = importBody(body);
+
+        assertNotNull(response.getError());
+        assertEquals(1, response.getAccepted());
+        assertNotNull(findByCallId("bulk-ok"));
+    }
+
+    private CdrBulkResponse importBody(String body) throws Exception {
+        return cdrBulkImporter.importStream(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private CallRecord findByCallId(String callId) {
+        return callRecordRepository.selectOne(new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+    }
+
+    private static String cdr(String uuid, String caller, String callee, int duration) {
+        return """
+            {"variables":{"uuid":"%s","caller_number":"%s","destination_number":"%s",\
+            "start_stamp":"2024-01-15 10:00:00","answer_stamp":"2024-01-15 10:00:05",\
+            "end_stamp":"2024-01-15 10:01:00","duration":"%d","call_direction":"inbound"}}"""
+                .formatted(uuid, caller, callee, duration);
+    }
+}
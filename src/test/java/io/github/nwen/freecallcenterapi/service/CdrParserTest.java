@@ -0,0 +1,72 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CdrParserTest {
+
+    private final CdrParser parser = new CdrParser();
+
+    @Test
+    void testParseXmlCdr() throws Exception {
+        CallRecord record = parser.parseXml(sampleXml());
+
+        assertNotNull(record);
+        assertEquals("0f9d6b1e-2c3a-4e5f-8a7b-9c0d1e2f3a4b", record.getCallId());
+        assertEquals("+8613800138000", record.getCallerNumber());
+        assertEquals("1002", record.getCalleeNumber());
+        assertEquals("inbound", record.getDirection());
+        assertEquals("ANSWERED", record.getStatus());
+        assertEquals(65, record.getDurationSeconds());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 0, 0), record.getStartTime());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 0, 5), record.getAnswerTime());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 1, 5), record.getEndTime());
+    }
+
+    @Test
+    void testDecodeBase64FormFieldWithPlusTurnedIntoSpaces() throws Exception {
+        byte[] xml = sampleXml();
+        String base64 = Base64.getEncoder().encodeToString(xml);
+        assertTrue(base64.contains("+"));
+
+        assertArrayEquals(xml, parser.decodeFormField(base64.replace('+', ' ')));
+    }
+
+    @Test
+    void testFallsBackToCallerProfileNumbers() {
+        String xml = """
+                <cdr>
+                  <variables><uuid>abc</uuid><duration>0</duration></variables>
+                  <callflow><caller_profile><caller_id_number>2001</caller_id_number>
+                    <destination_number>2002</destination_number></caller_profile></callflow>
+                  <callflow><caller_profile><caller_id_number>9999</caller_id_number>
+                    <destination_number>9998</destination_number></caller_profile></callflow>
+                </cdr>
+                """;
+
+        CallRecord record = parser.parseXml(parser.decodeFormField(xml));
+
+        assertNotNull(record);
+        assertEquals("2001", record.getCallerNumber());
+        assertEquals("2002", record.getCalleeNumber());
+        assertEquals("NO_ANSWER", record.getStatus());
+    }
+
+    @Test
+    void testInvalidXmlReturnsNull() {
+        assertNull(parser.parseXml("<cdr><variables>".getBytes(StandardCharsets.UTF_8)));
+        assertNull(parser.parseXml(parser.decodeFormField("<cdr><variables/></cdr>")));
+    }
+
+    private byte[] sampleXml() throws Exception {
+        try (var in = getClass().getResourceAsStream("/cdr/sample-cdr.xml")) {
+            return in.readAllBytes();
+        }
+    }
+}
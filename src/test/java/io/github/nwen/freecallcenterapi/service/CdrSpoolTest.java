@@ -0,0 +1,153 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.nwen.freecallcenterapi.config.CdrSpoolConfig;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CdrSpoolTest {
+
+    @Autowired
+    private CdrSpool cdrSpool;
+
+    @Autowired
+    private CdrBulkImporter cdrBulkImporter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @TempDir
+    private Path spoolDir;
+
+    @BeforeEach
+    void setUp() {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+    }
+
+    @Test
+    void testAppendedRecordIsDrainedToDatabase() throws Exception {
+        cdrSpool.append(record("spool-1", 20));
+
+        await(() -> findByCallId("spool-1") != null);
+        assertEquals(20, findByCallId("spool-1").getDurationSeconds());
+        assertEquals(0, cdrSpool.getStats().getPending());
+    }
+
+    @Test
+    void testUndrainedRecordsAreReplayedAfterRestart() throws Exception {
+        CdrSpoolConfig config = new CdrSpoolConfig();
+        config.setDirectory(spoolDir.toString());
+        config.setSegmentBytes(4096);
+        config.setMaxRecordBytes(1024);
+        config.setForceOnAppend(false);
+        config.setDrainIntervalMs(20);
+
+        // 数据库不可用：记录只留在 spool 中，并跨越多个分段
+        CdrBulkImporter unavailable = mock(CdrBulkImporter.class);
+        doThrow(new IllegalStateException("database down")).when(unavailable).merge(anyList());
+        CdrSpool crashed = new CdrSpool(config, objectMapper, unavailable);
+        crashed.start();
+        for (int i = 0; i < 30; i++) {
+            crashed.append(record("replay-" + i, i));
+        }
+        assertTrue(crashed.getStats().getWriteSegment() > 0);
+        crashed.stop();
+
+        CdrSpool restarted = new CdrSpool(config, objectMapper, cdrBulkImporter);
+        restarted.start();
+        try {
+            assertEquals(30, restarted.getStats().getReplayed());
+            await(() -> restarted.getStats().getPending() == 0);
+            assertEquals(30, callRecordRepository.selectCount(
+                    new LambdaQueryWrapper<CallRecord>().likeRight(CallRecord::getCallId, "replay-")));
+            assertEquals(29, findByCallId("replay-29").getDurationSeconds());
+            assertEquals(1, restarted.getStats().getSegments());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    void testRejectedRecordsAreDeadLetteredWithoutBlockingSpool() throws Exception {
+        CdrSpoolConfig config = new CdrSpoolConfig();
+        config.setDirectory(spoolDir.toString());
+        config.setForceOnAppend(false);
+        config.setDrainIntervalMs(20);
+        CdrSpool spool = new CdrSpool(config, objectMapper, cdrBulkImporter);
+        spool.start();
+        try {
+            CallRecord missingStart = record("dead-1", 10);
+            missingStart.setStartTime(null);
+            // 能通过 validate 但超出 status 列长度，整批 COPY 失败后逐条重试时才被识别
+            CallRecord overlongStatus = record("dead-2", 10);
+            overlongStatus.setStatus("X".repeat(30));
+
+            spool.append(record("alive-1", 10));
+            spool.append(missingStart);
+            spool.append(overlongStatus);
+            spool.append(record("alive-2", 20));
+
+            await(() -> spool.getStats().getPending() == 0);
+            assertNotNull(findByCallId("alive-1"));
+            assertEquals(20, findByCallId("alive-2").getDurationSeconds());
+            assertNull(findByCallId("dead-2"));
+            assertEquals(2, spool.getStats().getDrained());
+            assertEquals(2, spool.getStats().getDeadLettered());
+            List<String> deadLetters = Files.readAllLines(spoolDir.resolve("dead-letter.ndjson"));
+            assertEquals(2, deadLetters.size());
+            assertTrue(deadLetters.get(0).contains("missing or invalid start_stamp"));
+            assertTrue(deadLetters.get(1).contains("dead-2"));
+        } finally {
+            spool.stop();
+        }
+    }
+
+    private CallRecord findByCallId(String callId) {
+        return callRecordRepository.selectOne(new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+    }
+
+    private static CallRecord record(String callId, int duration) {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 0);
+        return CallRecord.builder()
+                .callId(callId)
+                .callerNumber("1001")
+                .calleeNumber("2001")
+                .direction("inbound")
+                .status(duration > 0 ? "ANSWERED" : "NO_ANSWER")
+                .startTime(start)
+                .endTime(start.plusSeconds(duration))
+                .durationSeconds(duration)
+                .build();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(20);
+        }
+    }
+}
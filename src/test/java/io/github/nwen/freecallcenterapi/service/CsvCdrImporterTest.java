@@ -0,0 +1,132 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.config.CsvCdrImportConfig;
+import io.github.nwen.freecallcenterapi.dto.CsvCdrImportResult;
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import io.github.nwen.freecallcenterapi.repository.CallRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CsvCdrImporterTest {
+
+    @Autowired
+    private CdrParser cdrParser;
+
+    @Autowired
+    private CdrBulkImporter cdrBulkImporter;
+
+    @Autowired
+    private CallRecordRepository callRecordRepository;
+
+    @TempDir
+    private Path tempDir;
+
+    private CsvCdrImportConfig config;
+    private CsvCdrImporter importer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        callRecordRepository.delete(new LambdaQueryWrapper<>());
+        Files.createDirectories(tempDir.resolve("cdr-csv"));
+        config = new CsvCdrImportConfig();
+        config.setDirectory(tempDir.resolve("cdr-csv").toString());
+        config.setStateFile(tempDir.resolve("offsets.properties").toString());
+        // 分块足够小，使几行数据也会被拆分到多个 fork-join 任务
+        config.setChunkBytes(64);
+        config.setParallelism(4);
+        importer = new CsvCdrImporter(config, cdrParser, cdrBulkImporter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importer.stop();
+    }
+
+    @Test
+    void testGrowingFileIsImportedIncrementally() throws Exception {
+        Path master = tempDir.resolve("cdr-csv/Master.csv");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append(line("csv-" + i, 30 + i));
+        }
+        content.append("\"broken line without enough columns\"\n");
+        // 未写完的半行
+        String partial = line("csv-tail", 5);
+        content.append(partial, 0, 40);
+        Files.writeString(master, content, StandardCharsets.UTF_8);
+
+        CsvCdrImportResult first = importer.importNow();
+        assertEquals(20, first.getRows());
+        assertEquals(1, first.getRejected());
+        assertEquals(33, findByCallId("csv-3").getDurationSeconds());
+        assertEquals("ANSWERED", findByCallId("csv-3").getStatus());
+        assertNull(findByCallId("csv-tail"));
+
+        Files.writeString(master, partial.substring(40) + line("csv-20", 0), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        CsvCdrImportResult second = importer.importNow();
+        assertEquals(2, second.getRows());
+        assertEquals(5, findByCallId("csv-tail").getDurationSeconds());
+        assertEquals("NO_ANSWER", findByCallId("csv-20").getStatus());
+
+        assertEquals(0, importer.importNow().getRows());
+
+        // 重启后从保存的偏移量继续，不重复导入
+        CsvCdrImporter restarted = new CsvCdrImporter(config, cdrParser, cdrBulkImporter);
+        try {
+            assertEquals(0, restarted.importNow().getRows());
+            assertEquals(1, restarted.getStats().getTrackedFiles());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    void testLineLongerThanWindowIsSkippedToNextLine() throws Exception {
+        config.setWindowBytes(256);
+        Path master = tempDir.resolve("cdr-csv/Master.csv");
+        // 超长行跨越多个窗口，且先写入未写完的部分
+        String oversized = "\"" + "x".repeat(700) + "\"\n";
+        Files.writeString(master, line("csv-before", 10) + oversized.substring(0, 600), StandardCharsets.UTF_8);
+
+        assertEquals(1, importer.importNow().getRows());
+
+        Files.writeString(master, oversized.substring(600) + line("csv-after-1", 11) + line("csv-after-2", 12),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        CsvCdrImportResult result = importer.importNow();
+        assertEquals(2, result.getRows());
+        assertEquals(0, result.getRejected());
+        assertEquals(11, findByCallId("csv-after-1").getDurationSeconds());
+        assertEquals(12, findByCallId("csv-after-2").getDurationSeconds());
+    }
+
+    private CallRecord findByCallId(String callId) {
+        return callRecordRepository.selectOne(new LambdaQueryWrapper<CallRecord>().eq(CallRecord::getCallId, callId));
+    }
+
+    /**
+     * cdr_csv.conf.xml 的 example 模板
+     */
+    private static String line(String uuid, int duration) {
+        String answer = duration > 0 ? "2024-01-15 10:00:05" : "";
+        return String.join(",",
+                "\"Alice \"\"A\"\"\"", "\"1001\"", "\"2001\"", "\"default\"",
+                "\"2024-01-15 10:00:00\"", "\"" + answer + "\"", "\"2024-01-15 10:01:00\"",
+                "\"" + duration + "\"", "\"" + duration + "\"", "\"NORMAL_CLEARING\"",
+                "\"" + uuid + "\"", "\"\"", "\"\"", "\"PCMU\"", "\"PCMU\"") + "\n";
+    }
+}
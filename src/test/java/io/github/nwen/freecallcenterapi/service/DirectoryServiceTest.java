@@ -0,0 +1,106 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.github.nwen.freecallcenterapi.dto.ExtensionRequest;
+import io.github.nwen.freecallcenterapi.dto.ExtensionResponse;
+import io.github.nwen.freecallcenterapi.repository.ExtensionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class DirectoryServiceTest {
+
+    @Autowired
+    private DirectoryService directoryService;
+
+    @Autowired
+    private ExtensionService extensionService;
+
+    @Autowired
+    private ExtensionRepository extensionRepository;
+
+    @BeforeEach
+    void setUp() {
+        extensionRepository.delete(new LambdaQueryWrapper<>());
+        directoryService.invalidateAll();
+    }
+
+    @Test
+    void testUserXmlIsCachedAfterFirstLoad() {
+        extensionService.create(request("2001"));
+        long loadsBefore = directoryService.getStats().getLoads();
+
+        String first = xml("2001");
+        String second = xml("2001");
+
+        assertEquals(first, second);
+        assertTrue(first.contains("<user id=\"2001\">"));
+        assertEquals(loadsBefore + 1, directoryService.getStats().getLoads());
+    }
+
+    @Test
+    void testNegativeEntryIsClearedOnCreate() {
+        assertFalse(xml("2002").contains("<user id="));
+        long negativeHitsBefore = directoryService.getStats().getNegativeHits();
+        assertFalse(xml("2002").contains("<user id="));
+        assertEquals(negativeHitsBefore + 1, directoryService.getStats().getNegativeHits());
+
+        extensionService.create(request("2002"));
+
+        assertTrue(xml("2002").contains("<user id=\"2002\">"));
+    }
+
+    @Test
+    void testDisableInvalidatesCachedUser() {
+        ExtensionResponse created = extensionService.create(request("2003"));
+        assertTrue(xml("2003").contains("<user id=\"2003\">"));
+
+        extensionService.setEnabled(created.getId(), false);
+
+        assertFalse(xml("2003").contains("<user id="));
+    }
+
+    @Test
+    void testFullDomainXmlStreamsEnabledUsersAndEtagTracksChanges() throws Exception {
+        extensionService.create(request("2004"));
+        ExtensionResponse second = extensionService.create(request("2005"));
+        String etag = directoryService.domainEtag("default");
+        assertEquals(etag, directoryService.domainEtag("default"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        directoryService.writeDomainXml("default", out);
+        String xml = out.toString(StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<user id=\"2004\">"));
+        assertTrue(xml.contains("<user id=\"2005\">"));
+        assertTrue(xml.endsWith("</document>\n"));
+
+        extensionService.setEnabled(second.getId(), false);
+
+        assertNotEquals(etag, directoryService.domainEtag("default"));
+        out.reset();
+        directoryService.writeDomainXml("default", out);
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("<user id=\"2005\">"));
+    }
+
+    private String xml(String user) {
+        return new String(directoryService.userXml("default", user), StandardCharsets.UTF_8);
+    }
+
+    private ExtensionRequest request(String number) {
+        return ExtensionRequest.builder()
+                .extensionNumber(number)
+                .password("secret")
+                .displayName("Test " + number)
+                .context("default")
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EslBackgroundJobRegistryTest {
+
+    private final EslBackgroundJobRegistry registry = new EslBackgroundJobRegistry();
+
+    @Test
+    void testResultCompletesRegisteredJob() throws Exception {
+        CompletableFuture<String> future = registry.register("job-1", Duration.ofSeconds(5));
+        registry.complete("job-1", "+OK 1234");
+
+        assertEquals("+OK 1234", future.get(1, TimeUnit.SECONDS));
+        assertEquals(0, registry.pendingCount());
+    }
+
+    @Test
+    void testResultArrivingBeforeRegistrationIsNotLost() throws Exception {
+        registry.complete("job-2", "-ERR NO_ANSWER");
+        CompletableFuture<String> future = registry.register("job-2", Duration.ofSeconds(5));
+
+        assertEquals("-ERR NO_ANSWER", future.get(1, TimeUnit.SECONDS));
+        assertEquals(0, registry.pendingCount());
+    }
+
+    @Test
+    void testJobTimesOut() {
+        CompletableFuture<String> future = registry.register("job-3", Duration.ofMillis(50));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(0, registry.pendingCount());
+    }
+
+    @Test
+    void testCancelledJobIsRemoved() {
+        CompletableFuture<String> future = registry.register("job-4", Duration.ofSeconds(5));
+        future.cancel(false);
+
+        assertEquals(0, registry.pendingCount());
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EslChannelRegistryTest {
+
+    @Test
+    void testTracksOwnerAndLiveChannelsPerNode() {
+        EslChannelRegistry registry = new EslChannelRegistry();
+
+        registry.channelCreated("a", "fs1");
+        registry.channelCreated("b", "fs1");
+        registry.channelCreated("c", "fs2");
+        registry.channelCreated("a", "fs1");
+
+        assertEquals("fs1", registry.ownerOf("a"));
+        assertEquals(2, registry.liveChannels("fs1"));
+        assertEquals(1, registry.liveChannels("fs2"));
+
+        registry.channelDestroyed("a");
+        registry.channelDestroyed("a");
+
+        assertNull(registry.ownerOf("a"));
+        assertEquals(1, registry.liveChannels("fs1"));
+        assertEquals(0, registry.liveChannels("unknown"));
+    }
+
+    @Test
+    void testReplaceNodeOnlyTouchesThatNode() {
+        EslChannelRegistry registry = new EslChannelRegistry();
+        registry.channelCreated("a", "fs1");
+        registry.channelCreated("b", "fs1");
+        registry.channelCreated("c", "fs2");
+
+        registry.replaceNode("fs1", Set.of("b", "d"));
+
+        assertNull(registry.ownerOf("a"));
+        assertEquals("fs1", registry.ownerOf("d"));
+        assertEquals(2, registry.liveChannels("fs1"));
+        assertEquals("fs2", registry.ownerOf("c"));
+        assertEquals(1, registry.liveChannels("fs2"));
+    }
+}
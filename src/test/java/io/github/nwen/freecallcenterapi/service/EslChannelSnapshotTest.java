@@ -0,0 +1,45 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.entity.CallRecord;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EslChannelSnapshotTest {
+
+    @Test
+    void testParseChannels() throws Exception {
+        String json = """
+                {"row_count":2,"rows":[
+                  {"uuid":"a-1","direction":"inbound","created_epoch":"1700000000","cid_num":"1001","dest":"1002","callstate":"ACTIVE"},
+                  {"uuid":"b-2","direction":"outbound","created_epoch":"1700000010","cid_num":"","dest":"9000","callstate":"RINGING"}
+                ]}
+                """;
+
+        List<CallRecord> records = EslChannelSnapshot.parse(json);
+
+        assertEquals(2, records.size());
+        CallRecord first = records.get(0);
+        assertEquals("a-1", first.getCallId());
+        assertEquals("1001", first.getCallerNumber());
+        assertEquals("1002", first.getCalleeNumber());
+        assertEquals("inbound", first.getDirection());
+        assertEquals("ANSWERED", first.getStatus());
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochSecond(1700000000), ZoneId.systemDefault()), first.getStartTime());
+
+        CallRecord second = records.get(1);
+        assertEquals("unknown", second.getCallerNumber());
+        assertEquals("INITIATED", second.getStatus());
+    }
+
+    @Test
+    void testParseEmptySnapshot() throws Exception {
+        assertTrue(EslChannelSnapshot.parse("{\"row_count\":0}").isEmpty());
+        assertTrue(EslChannelSnapshot.parse("").isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.EslDispatcherConfig;
+import io.github.nwen.freecallcenterapi.dto.EslDispatcherStats;
+import io.github.nwen.freecallcenterapi.dto.EslLaneStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EslEventDispatcherTest {
+
+    private EslEventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        EslDispatcherConfig config = new EslDispatcherConfig();
+        config.setLanes(4);
+        config.setQueueCapacity(64);
+        dispatcher = new EslEventDispatcher(config);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.destroy();
+    }
+
+    @Test
+    void testEventsForSameCallStayOrdered() throws Exception {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(10 * 100);
+        for (int i = 0; i < 100; i++) {
+            for (int call = 0; call < 10; call++) {
+                String callId = "call-" + call;
+                int seq = i;
+                dispatcher.dispatch(callId, () -> {
+                    seen.computeIfAbsent(callId, k -> Collections.synchronizedList(new ArrayList<>())).add(seq);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (List<Integer> sequence : seen.values()) {
+            for (int i = 0; i < sequence.size(); i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testSlowCallDoesNotBlockOtherLanes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        String slowCall = "slow";
+        dispatcher.dispatch(slowCall, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        String otherCall = findKeyOnDifferentLane(slowCall);
+        dispatcher.dispatch(otherCall, otherDone::countDown);
+
+        assertTrue(otherDone.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void testStatsReportPerLane() throws Exception {
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch("call-" + i, done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        EslDispatcherStats stats = dispatcher.getStats();
+        assertEquals(4, stats.getLanes());
+        assertEquals(4, stats.getLaneStats().size());
+        long processed = 0;
+        for (int i = 0; i < 50 && processed < 20; i++) {
+            Thread.sleep(20);
+            processed = dispatcher.getStats().getLaneStats().stream().mapToLong(EslLaneStats::getProcessed).sum();
+        }
+        assertEquals(20, processed);
+    }
+
+    private String findKeyOnDifferentLane(String key) throws Exception {
+        // 同一通道的任务会排在慢任务后面，这里找一个确定落在其他通道的 key
+        for (int i = 0; i < 100; i++) {
+            String candidate = "other-" + i;
+            if (laneOf(candidate) != laneOf(key)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("no key on a different lane");
+    }
+
+    private int laneOf(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, 4);
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import org.freeswitch.esl.client.transport.event.EslEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EslEventSubscriptionTest {
+
+    @Test
+    void testSubscriptionMergesHandlerDeclarations() {
+        EslEventSubscription subscription = EslEventSubscription.of(List.of(
+                handler(Set.of("CHANNEL_HANGUP", "CHANNEL_CREATE"), Set.of()),
+                handler(Set.of("CHANNEL_CREATE"), Set.of("sofia::register"))
+        ));
+
+        assertEquals("CHANNEL_CREATE CHANNEL_HANGUP CUSTOM sofia::register", subscription.eventArgument());
+        assertEquals(List.of(
+                Map.entry("Event-Name", "CHANNEL_CREATE"),
+                Map.entry("Event-Name", "CHANNEL_HANGUP"),
+                Map.entry("Event-Subclass", "sofia::register")
+        ), subscription.filters());
+    }
+
+    @Test
+    void testCustomIsOnlySubscribedWithSubclasses() {
+        EslEventSubscription subscription = EslEventSubscription.of(List.of(
+                handler(Set.of("CUSTOM", "CHANNEL_ANSWER"), Set.of())
+        ));
+
+        assertEquals("CHANNEL_ANSWER", subscription.eventArgument());
+        assertFalse(subscription.isEmpty());
+        assertTrue(EslEventSubscription.of(List.of()).isEmpty());
+    }
+
+    private EslEventHandler handler(Set<String> names, Set<String> subclasses) {
+        return new EslEventHandler() {
+            @Override
+            public Set<String> eventNames() {
+                return names;
+            }
+
+            @Override
+            public Set<String> eventSubclasses() {
+                return subclasses;
+            }
+
+            @Override
+            public void handle(String node, EslEvent event) {
+            }
+        };
+    }
+}
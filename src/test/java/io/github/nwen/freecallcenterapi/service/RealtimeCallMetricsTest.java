@@ -0,0 +1,82 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.config.RealtimeCallMetricsConfig;
+import io.github.nwen.freecallcenterapi.dto.RealtimeCallStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RealtimeCallMetricsTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final RealtimeCallMetrics metrics = new RealtimeCallMetrics(new RealtimeCallMetricsConfig(), now::get);
+
+    @Test
+    void testConcurrentCallsAsrAndTalkTime() {
+        metrics.callCreated("a", "1001", "inbound");
+        metrics.callCreated("b", "1001", "inbound");
+        metrics.callCreated("c", "1002", "outbound");
+        metrics.callCreated("a", "1001", "inbound");
+        now.addAndGet(1000);
+        metrics.callAnswered("a");
+        metrics.callAnswered("c");
+        now.addAndGet(30_000);
+        metrics.callEnded("a");
+        metrics.callEnded("b");
+        metrics.callEnded("b");
+
+        RealtimeCallStats overall = metrics.overall(60);
+        assertEquals(1, overall.getConcurrentCalls());
+        assertEquals(3, overall.getCallsInWindow());
+        assertEquals(0.05, overall.getCallsPerSecond());
+        assertEquals(2, overall.getCompletedInWindow());
+        assertEquals(50.0, overall.getAsr());
+        assertEquals(30.0, overall.getAvgTalkSeconds());
+        assertEquals(2, overall.getTotalAnswered());
+        assertEquals(1, overall.getByDirection().get("outbound").getConcurrentCalls());
+
+        RealtimeCallStats ext = metrics.extension("1001", 60);
+        assertEquals(2, ext.getCallsInWindow());
+        assertEquals(0, ext.getConcurrentCalls());
+        assertEquals(50.0, ext.getAsr());
+        assertTrue(ext.getByDirection().containsKey("inbound"));
+
+        List<RealtimeCallStats> extensions = metrics.extensions(60);
+        assertEquals("1002", extensions.get(0).getExtension());
+    }
+
+    @Test
+    void testSlidingWindowExpiresOldSeconds() {
+        metrics.callCreated("a", "1001", "inbound");
+        metrics.callEnded("a");
+        now.addAndGet(10_000);
+        metrics.callCreated("b", "1001", "inbound");
+
+        assertEquals(2, metrics.overall(60).getCallsInWindow());
+        assertEquals(1, metrics.overall(5).getCallsInWindow());
+
+        // 环形缓冲区绕回后，旧槽位被新的秒覆盖
+        now.addAndGet(900_000);
+        metrics.callCreated("c", null, "outbound");
+        RealtimeCallStats stats = metrics.overall(900);
+        assertEquals(1, stats.getCallsInWindow());
+        assertEquals(2, stats.getConcurrentCalls());
+        assertEquals(3, stats.getTotalCreated());
+    }
+
+    @Test
+    void testRecoveredCallsCountAsActiveOnly() {
+        metrics.callRecovered("a", "1001", "inbound", true);
+        now.addAndGet(5000);
+        metrics.callEnded("a");
+
+        RealtimeCallStats stats = metrics.overall(60);
+        assertEquals(0, stats.getCallsInWindow());
+        assertEquals(1, stats.getCompletedInWindow());
+        assertEquals(100.0, stats.getAsr());
+        assertEquals(0, stats.getConcurrentCalls());
+    }
+}
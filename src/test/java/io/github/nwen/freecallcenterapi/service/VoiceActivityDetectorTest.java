@@ -0,0 +1,134 @@
+package io.github.nwen.freecallcenterapi.service;
+
+import io.github.nwen.freecallcenterapi.dto.AudioStreamStats;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_SAMPLES = 320;
+    private static final AudioStage.Format FORMAT = new AudioStage.Format(SAMPLE_RATE, FRAME_SAMPLES);
+
+    private final List<String> events = new ArrayList<>();
+    private final VoiceActivityListener listener = new VoiceActivityListener() {
+        @Override
+        public void onSpeechStart(AudioStream stream) {
+            events.add("start:" + stream.callId());
+        }
+
+        @Override
+        public void onSpeechEnd(AudioStream stream, long speechMillis) {
+            events.add("end:" + speechMillis);
+        }
+    };
+
+    @Test
+    void testGatesSilenceWithHangoverAndEvents() {
+        // 门限 500/300，连续 2 帧才算开始，挂起 200 ms（10 帧）
+        AudioStream stream = AudioStream.detached("call-1");
+        AudioStage vad = detector(new VoiceActivityDetector.Settings(500, 300, 2, 200, 0), stream);
+
+        assertEquals(0, feed(vad, stream, 20, 50));
+        // 单帧咔哒声不触发
+        assertEquals(0, feed(vad, stream, 1, 4000));
+        assertEquals(0, feed(vad, stream, 1, 50));
+        assertTrue(events.isEmpty());
+
+        // 第一帧语音暂存待确认，第二帧确认开始时连同暂存帧一起转发，词首不丢
+        assertEquals(5, feed(vad, stream, 5, 4000));
+        assertEquals(List.of("start:call-1"), events);
+        assertTrue(stream.isSpeaking());
+        // 低于开始门限但高于结束门限的帧仍算语音
+        assertEquals(3, feed(vad, stream, 3, 400));
+        // 静音先转发 10 帧挂起，第 11 帧判定结束
+        assertEquals(10, feed(vad, stream, 30, 50));
+        assertFalse(stream.isSpeaking());
+        assertEquals(List.of("start:call-1", "end:" + 18 * 20), events);
+
+        AudioStreamStats stats = stream.getStats();
+        assertEquals(60, stats.getVadFrames());
+        // 咔哒声那一帧暂存后未能确认，计入静音
+        assertEquals(60 - 18, stats.getSuppressedFrames());
+        assertEquals(Math.round(10000.0 * 42 / 60) / 10000.0, stats.getSuppressedRatio());
+        assertEquals(1, stats.getSpeechSegments());
+
+        // 第二段语音
+        feed(vad, stream, 3, 4000);
+        assertEquals(2, stream.getStats().getSpeechSegments());
+    }
+
+    @Test
+    void testPreRollKeepsSpeechOnset() throws Exception {
+        AudioStream stream = AudioStream.detached("call-3");
+        AudioStage vad = detector(new VoiceActivityDetector.Settings(500, 300, 3, 200, 0), stream);
+        short[] onset = new short[FRAME_SAMPLES];
+        for (int i = 0; i < onset.length; i++) {
+            onset[i] = (short) (i % 2 == 0 ? 1000 + i : -1000 - i);
+        }
+
+        assertNull(vad.process(stream, ShortBuffer.wrap(onset).asReadOnlyBuffer()));
+        assertEquals(0, feed(vad, stream, 1, 4000));
+        ShortBuffer started = vad.process(stream, ShortBuffer.wrap(onset).asReadOnlyBuffer());
+
+        // 两帧暂存 + 当前帧，首帧原样保留
+        assertEquals(3 * FRAME_SAMPLES, started.remaining());
+        assertEquals(onset[0], started.get(0));
+        assertEquals(onset[FRAME_SAMPLES - 1], started.get(FRAME_SAMPLES - 1));
+        assertEquals(onset[5], started.get(2 * FRAME_SAMPLES + 5));
+        assertEquals(0, stream.getStats().getSuppressedFrames());
+        // 输出格式按 pre-roll 放大，下游阶段据此预分配缓冲区
+        assertEquals(3 * FRAME_SAMPLES, AudioStages.vad(new VoiceActivityDetector.Settings(500, 300, 3, 200, 0), List.of())
+                .output(FORMAT).maxSamples());
+    }
+
+    @Test
+    void testNoiseFloorRaisesStartThreshold() {
+        AudioStream stream = AudioStream.detached("call-2");
+        AudioStage vad = detector(new VoiceActivityDetector.Settings(500, 300, 1, 200, 3.0), stream);
+
+        // 背景噪声 RMS 约 400，门限抬到约 1200
+        assertEquals(0, feed(vad, stream, 50, 400));
+        assertEquals(0, feed(vad, stream, 5, 800));
+        assertTrue(events.isEmpty());
+        assertEquals(3, feed(vad, stream, 3, 3000));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testSumOfSquares() {
+        short[] samples = {3, -4, Short.MIN_VALUE, 0};
+        assertEquals(9 + 16 + 32768L * 32768L, VoiceActivityDetector.sumOfSquares(samples, 3));
+    }
+
+    private AudioStage detector(VoiceActivityDetector.Settings settings, AudioStream stream) {
+        return AudioStages.vad(settings, List.of(listener)).create(stream, FORMAT);
+    }
+
+    /**
+     * 送入 frames 帧 RMS 为 rms 的方波，返回被转发的样本折合的帧数（语音开始时的一次输出含 pre-roll）
+     */
+    private static int feed(AudioStage vad, AudioStream stream, int frames, int rms) {
+        short[] data = new short[FRAME_SAMPLES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (short) (i % 2 == 0 ? rms : -rms);
+        }
+        int forwarded = 0;
+        for (int f = 0; f < frames; f++) {
+            try {
+                ShortBuffer out = vad.process(stream, ShortBuffer.wrap(data).asReadOnlyBuffer());
+                if (out != null) {
+                    forwarded += out.remaining();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return forwarded / FRAME_SAMPLES;
+    }
+}